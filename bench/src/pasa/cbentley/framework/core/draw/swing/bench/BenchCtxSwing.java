@@ -0,0 +1,76 @@
+/*
+ * (c) 2018-2020 Charles-Philip Bentley
+ * This code is licensed under MIT license (see LICENSE.txt for details)
+ */
+package pasa.cbentley.framework.core.draw.swing.bench;
+
+import pasa.cbentley.byteobjects.src4.ctx.BOCtx;
+import pasa.cbentley.core.j2se.ctx.J2seCtx;
+import pasa.cbentley.core.src4.ctx.UCtx;
+import pasa.cbentley.core.swing.ctx.SwingCoreCtx;
+import pasa.cbentley.framework.core.draw.swing.ctx.CoreDrawSwingCtx;
+import pasa.cbentley.framework.core.draw.swing.engine.GraphicsSwing;
+import pasa.cbentley.framework.core.draw.swing.engine.ImageSwing;
+import pasa.cbentley.framework.coredraw.src4.interfaces.ITechGraphics;
+
+/**
+ * Headless {@link CoreDrawSwingCtx} and drawing surfaces shared by the benchmarks.
+ * <br>
+ * Benchmarks run in forks started with java.awt.headless=true, see {@link BenchMainSwing}.
+ *
+ * @author Charles-Philip Bentley
+ */
+public class BenchCtxSwing {
+
+   /**
+    * Width and height of the destination images
+    */
+   public static final int SURFACE = 512;
+
+   /**
+    * Default ctx, as created by an application
+    * @return
+    */
+   public static CoreDrawSwingCtx createCtx() {
+      System.setProperty("java.awt.headless", "true");
+      UCtx uc = new UCtx();
+      J2seCtx j2c = new J2seCtx(uc);
+      SwingCoreCtx sc = new SwingCoreCtx(j2c);
+      BOCtx boc = new BOCtx(uc);
+      return new CoreDrawSwingCtx(sc, boc);
+   }
+
+   /**
+    * Graphics of a new opaque {@link BenchCtxSwing#SURFACE} image, with shape and text anti alias set to isAA
+    * @param cdc
+    * @param isAA
+    * @return
+    */
+   public static GraphicsSwing createSurface(CoreDrawSwingCtx cdc, boolean isAA) {
+      ImageSwing img = (ImageSwing) cdc.getImageFactorySwing().createImage(SURFACE, SURFACE, 0xFFFFFFFF);
+      GraphicsSwing g = img.getGraphics();
+      int mode = isAA ? ITechGraphics.MODSET_APP_ALIAS_1_ON : ITechGraphics.MODSET_APP_ALIAS_2_OFF;
+      g.applySettingsAlias(mode);
+      g.applySettingsAliasText(mode);
+      return g;
+   }
+
+   /**
+    * Image of w x h with an opaque or translucent gradient
+    * @param cdc
+    * @param w
+    * @param h
+    * @param isAlpha
+    * @return
+    */
+   public static ImageSwing createSource(CoreDrawSwingCtx cdc, int w, int h, boolean isAlpha) {
+      int[] rgb = new int[w * h];
+      for (int y = 0; y < h; y++) {
+         for (int x = 0; x < w; x++) {
+            int a = isAlpha ? (x * 255 / w) : 0xFF;
+            rgb[y * w + x] = (a << 24) | ((x * 7) & 0xFF) << 16 | ((y * 5) & 0xFF) << 8 | ((x + y) & 0xFF);
+         }
+      }
+      return (ImageSwing) cdc.getImageFactorySwing().createRGBImage(rgb, w, h, isAlpha);
+   }
+}
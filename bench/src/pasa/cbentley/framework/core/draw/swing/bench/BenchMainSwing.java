@@ -0,0 +1,43 @@
+/*
+ * (c) 2018-2020 Charles-Philip Bentley
+ * This code is licensed under MIT license (see LICENSE.txt for details)
+ */
+package pasa.cbentley.framework.core.draw.swing.bench;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks of this package with the GC profiler, so that the allocation rate of each benchmark,
+ * gc.alloc.rate.norm in bytes per operation, is reported next to its throughput.
+ * <br>
+ * <br>
+ * Arguments are optional
+ * <li> a regexp of the benchmarks to run, default all of this package
+ * <li> a file for the results in JSON, to compare runs
+ *
+ * @author Charles-Philip Bentley
+ */
+public class BenchMainSwing {
+
+   public static void main(String[] args) throws RunnerException {
+      String include = BenchMainSwing.class.getPackage().getName() + ".*";
+      if (args.length > 0) {
+         include = args[0];
+      }
+      OptionsBuilder ob = new OptionsBuilder();
+      ob.include(include);
+      ob.addProfiler(GCProfiler.class);
+      ob.jvmArgsAppend("-Djava.awt.headless=true");
+      if (args.length > 1) {
+         ob.resultFormat(ResultFormatType.JSON);
+         ob.result(args[1]);
+      }
+      Options opt = ob.build();
+      new Runner(opt).run();
+   }
+}
@@ -0,0 +1,72 @@
+/*
+ * (c) 2018-2020 Charles-Philip Bentley
+ * This code is licensed under MIT license (see LICENSE.txt for details)
+ */
+package pasa.cbentley.framework.core.draw.swing.bench;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import javax.imageio.ImageIO;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import pasa.cbentley.framework.core.draw.swing.ctx.CoreDrawSwingCtx;
+import pasa.cbentley.framework.core.draw.swing.engine.ImageFactorySwing;
+import pasa.cbentley.framework.core.draw.swing.engine.ImageSwing;
+import pasa.cbentley.framework.coredraw.src4.interfaces.IImage;
+
+/**
+ * Image decoding by {@link ImageFactorySwing#createImage(byte[], int, int)} of encoded bytes held in memory.
+ *
+ * @author Charles-Philip Bentley
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DecodeBenchSwing {
+
+   private byte[]           data;
+
+   private ImageFactorySwing factory;
+
+   /**
+    * ImageIO format name
+    */
+   @Param({ "png", "jpg", "gif" })
+   public String            format;
+
+   @Param({ "64", "512" })
+   public int               size;
+
+   @Benchmark
+   public IImage decode() {
+      return factory.createImage(data, 0, data.length);
+   }
+
+   @Setup
+   public void setup() throws IOException {
+      CoreDrawSwingCtx cdc = BenchCtxSwing.createCtx();
+      factory = cdc.getImageFactorySwing();
+      ImageSwing img = BenchCtxSwing.createSource(cdc, size, size, false);
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      if (!ImageIO.write(img.getImageSwing(), format, out)) {
+         throw new IOException("No ImageIO writer for " + format);
+      }
+      data = out.toByteArray();
+   }
+}
@@ -0,0 +1,440 @@
+/*
+ * (c) 2018-2020 Charles-Philip Bentley
+ * This code is licensed under MIT license (see LICENSE.txt for details)
+ */
+package pasa.cbentley.framework.core.draw.swing.bench;
+
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.util.Random;
+
+import pasa.cbentley.framework.core.draw.swing.ctx.CoreDrawSwingCtx;
+import pasa.cbentley.framework.core.draw.swing.engine.GraphicsSwing;
+import pasa.cbentley.framework.core.draw.swing.engine.ImageSwing;
+import pasa.cbentley.framework.core.draw.swing.engine.RasterOpsSwing;
+import pasa.cbentley.framework.core.draw.swing.engine.StrokeRegistrySwing;
+import pasa.cbentley.framework.coredraw.src4.interfaces.IImage;
+import pasa.cbentley.framework.coredraw.src4.interfaces.ITechGraphics;
+
+/**
+ * Headless check that the direct raster paths of {@link GraphicsSwing} write the same pixels as Java2D.
+ * <br>
+ * <br>
+ * Each check draws random operations into an {@link ImageSwing}, where {@link GraphicsSwing} writes the int raster itself,
+ * and the same operations with Java2D into another image. Raw ints of the rasters are compared.
+ * <br>
+ * Java2D leaves the high byte of {@link BufferedImage#TYPE_INT_RGB} pixels at 0 when it blits images, but writes 0xFF when it fills.
+ * Blits must match on all bits, fills on the color bits.
+ * <li> drawRegion with the 8 {@link IImage} TRANSFORM_* values, against a Java2D drawImage with the quadrant rotation and mirror of MIDP
+ * <li> {@link RasterOpsSwing#blendSrcOver(int, int)} and its 8 bits tables, against a Java2D SrcOver blit for all source and destination alphas
+ * <li> fillRect, drawLine, drawRect and drawImage into {@link BufferedImage#TYPE_INT_ARGB} and {@link BufferedImage#TYPE_INT_RGB} rasters
+ * <li> lines and rectangles of the strokes of the {@link StrokeRegistrySwing}, shapes anti aliased or not
+ * <br>
+ * <br>
+ * Prints the mismatching pixels of each check and exits with status 1 when there is any.
+ *
+ * <pre>java -Djava.awt.headless=true -cp &lt;classpath&gt; pasa.cbentley.framework.core.draw.swing.bench.EquivalenceCheckSwing [rounds]</pre>
+ *
+ * @author Charles-Philip Bentley
+ */
+public class EquivalenceCheckSwing {
+
+   private static final int   HEIGHT = 120;
+
+   private static final int[] TYPES  = { BufferedImage.TYPE_INT_ARGB, BufferedImage.TYPE_INT_RGB };
+
+   private static final int   WIDTH  = 160;
+
+   private final CoreDrawSwingCtx cdc;
+
+   private final int              rounds;
+
+   public EquivalenceCheckSwing(CoreDrawSwingCtx cdc, int rounds) {
+      this.cdc = cdc;
+      this.rounds = rounds;
+   }
+
+   /**
+    * Mismatching pixels of {@link RasterOpsSwing#blendSrcOver(int, int)} against a Java2D SrcOver blit.
+    * <br>
+    * Source alpha varies along x and destination alpha along y, with random colors.
+    * @return
+    */
+   public int checkBlend() {
+      int bad = 0;
+      BufferedImage src = new BufferedImage(256, 256, BufferedImage.TYPE_INT_ARGB);
+      BufferedImage dst = new BufferedImage(256, 256, BufferedImage.TYPE_INT_ARGB);
+      int[] srcData = RasterOpsSwing.getData(src);
+      int[] dstData = RasterOpsSwing.getData(dst);
+      int[] before = new int[dstData.length];
+      for (int round = 0; round < rounds; round++) {
+         Random r = new Random(round);
+         for (int y = 0; y < 256; y++) {
+            for (int x = 0; x < 256; x++) {
+               srcData[y * 256 + x] = (x << 24) | (r.nextInt() & 0xFFFFFF);
+               dstData[y * 256 + x] = (y << 24) | (r.nextInt() & 0xFFFFFF);
+            }
+         }
+         System.arraycopy(dstData, 0, before, 0, before.length);
+         Graphics2D g = dst.createGraphics();
+         g.drawImage(src, 0, 0, null);
+         g.dispose();
+         for (int i = 0; i < before.length; i++) {
+            if (RasterOpsSwing.blendSrcOver(srcData[i], before[i]) != dstData[i]) {
+               bad++;
+            }
+         }
+      }
+      return bad;
+   }
+
+   /**
+    * Mismatching pixels of fillRect, drawLine, drawRect and drawImage, opaque and translucent sources, clipped and translated.
+    * <br>
+    * The high byte of {@link BufferedImage#TYPE_INT_RGB} pixels is not compared, see {@link EquivalenceCheckSwing#checkRegions()} for blits.
+    * @return
+    */
+   public int checkOps() {
+      int bad = 0;
+      ImageSwing[] sources = createSources();
+      for (int t = 0; t < TYPES.length; t++) {
+         int mask = (TYPES[t] == BufferedImage.TYPE_INT_RGB) ? 0x00FFFFFF : 0xFFFFFFFF;
+         for (int round = 0; round < rounds; round++) {
+            Random r = new Random(round);
+            BufferedImage ref = createBackground(TYPES[t], r.nextInt());
+            BufferedImage direct = copy(ref);
+            Graphics2D g2 = ref.createGraphics();
+            GraphicsSwing gr = new GraphicsSwing(cdc, g2);
+            GraphicsSwing gd = new ImageSwing(cdc, direct, true).getGraphics();
+            setAlias(gr, false);
+            setAlias(gd, false);
+            int tx = r.nextInt(20) - 10;
+            int ty = r.nextInt(20) - 10;
+            gr.setTranslate(tx, ty);
+            gd.setTranslate(tx, ty);
+            int cx = r.nextInt(60) - 10;
+            int cy = r.nextInt(60) - 10;
+            int cw = r.nextInt(WIDTH);
+            int ch = r.nextInt(HEIGHT);
+            gr.setClip(cx, cy, cw, ch);
+            gd.setClip(cx, cy, cw, ch);
+            for (int k = 0; k < 20; k++) {
+               int color = r.nextInt();
+               gr.setColor(color);
+               gd.setColor(color);
+               int x = r.nextInt(WIDTH + 40) - 20;
+               int y = r.nextInt(HEIGHT + 40) - 20;
+               int w = r.nextInt(60) - 3;
+               int h = r.nextInt(60) - 3;
+               switch (r.nextInt(4)) {
+                  case 0:
+                     gr.fillRect(x, y, w, h);
+                     gd.fillRect(x, y, w, h);
+                     break;
+                  case 1:
+                     //horizontal or vertical
+                     int x2 = r.nextBoolean() ? x + w : x;
+                     int y2 = (x2 == x) ? y + h : y;
+                     gr.drawLine(x, y, x2, y2);
+                     gd.drawLine(x, y, x2, y2);
+                     break;
+                  case 2:
+                     gr.drawRect(x, y, w, h);
+                     gd.drawRect(x, y, w, h);
+                     break;
+                  default:
+                     ImageSwing src = sources[r.nextInt(sources.length)];
+                     gr.drawImage(src, x, y, 0);
+                     gd.drawImage(src, x, y, 0);
+                     break;
+               }
+            }
+            g2.dispose();
+            bad += diff(ref, direct, mask);
+         }
+      }
+      return bad;
+   }
+
+   /**
+    * Mismatching pixels of drawRegion with the 8 transforms, against Java2D.
+    * <br>
+    * Regions are drawn several times at random places, so that copies of the region cache are also compared.
+    * All bits are compared, the high byte of {@link BufferedImage#TYPE_INT_RGB} pixels included.
+    * @return
+    */
+   public int checkRegions() {
+      int bad = 0;
+      ImageSwing[] sources = createSources();
+      for (int t = 0; t < TYPES.length; t++) {
+         for (int round = 0; round < rounds; round++) {
+            Random r = new Random(round);
+            BufferedImage ref = createBackground(TYPES[t], r.nextInt());
+            BufferedImage direct = copy(ref);
+            Graphics2D g2 = ref.createGraphics();
+            GraphicsSwing gd = new ImageSwing(cdc, direct, true).getGraphics();
+            int tx = r.nextInt(20) - 10;
+            int ty = r.nextInt(20) - 10;
+            g2.translate(tx, ty);
+            gd.setTranslate(tx, ty);
+            int cx = r.nextInt(60) - 10;
+            int cy = r.nextInt(60) - 10;
+            int cw = r.nextInt(WIDTH);
+            int ch = r.nextInt(HEIGHT);
+            g2.setClip(cx, cy, cw, ch);
+            gd.setClip(cx, cy, cw, ch);
+            for (int k = 0; k < 20; k++) {
+               ImageSwing src = sources[r.nextInt(sources.length)];
+               BufferedImage bi = src.getImageSwing();
+               int sw = r.nextInt(bi.getWidth() - 1) + 1;
+               int sh = r.nextInt(bi.getHeight() - 1) + 1;
+               int sx = r.nextInt(bi.getWidth() - sw + 1);
+               int sy = r.nextInt(bi.getHeight() - sh + 1);
+               int transform = r.nextInt(8);
+               int x = r.nextInt(WIDTH + 40) - 20;
+               int y = r.nextInt(HEIGHT + 40) - 20;
+               g2.drawImage(bi.getSubimage(sx, sy, sw, sh), getTransformMIDP(transform, sw, sh, x, y), null);
+               gd.drawRegion(src, sx, sy, sw, sh, transform, x, y, 0);
+            }
+            g2.dispose();
+            bad += diff(ref, direct);
+         }
+      }
+      return bad;
+   }
+
+   /**
+    * Mismatching pixels of lines and rectangles drawn with the strokes of the {@link StrokeRegistrySwing}, against Java2D
+    * with the same {@link BasicStroke}, shapes anti aliased or not.
+    * @return
+    */
+   public int checkStrokes() {
+      int bad = 0;
+      StrokeRegistrySwing registry = cdc.getStrokeRegistrySwing();
+      float[] widths = { 0.5f, 1f, 1.5f, 2f, 3f };
+      int[] ids = new int[widths.length * 3 * 2];
+      int n = 0;
+      for (int i = 0; i < widths.length; i++) {
+         for (int cap = 0; cap < 3; cap++) {
+            ids[n++] = registry.register(widths[i], cap, BasicStroke.JOIN_MITER, null);
+            ids[n++] = registry.register(widths[i], cap, BasicStroke.JOIN_MITER, new float[] { 3f, 2f });
+         }
+      }
+      for (int aa = 0; aa < 2; aa++) {
+         boolean isAA = aa == 1;
+         for (int round = 0; round < rounds; round++) {
+            Random r = new Random(round);
+            BufferedImage ref = createBackground(BufferedImage.TYPE_INT_ARGB, r.nextInt());
+            BufferedImage direct = copy(ref);
+            Graphics2D g2 = ref.createGraphics();
+            g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, isAA ? RenderingHints.VALUE_ANTIALIAS_ON : RenderingHints.VALUE_ANTIALIAS_OFF);
+            GraphicsSwing gd = new ImageSwing(cdc, direct, true).getGraphics();
+            setAlias(gd, isAA);
+            int tx = r.nextInt(20) - 10;
+            int ty = r.nextInt(20) - 10;
+            g2.translate(tx, ty);
+            gd.setTranslate(tx, ty);
+            for (int k = 0; k < 15; k++) {
+               int id = ids[r.nextInt(ids.length)];
+               g2.setStroke(registry.getStroke(id));
+               gd.setStrokeStyle(id);
+               int color = r.nextInt();
+               g2.setColor(new Color(color));
+               gd.setColor(color);
+               int x = r.nextInt(WIDTH + 40) - 20;
+               int y = r.nextInt(HEIGHT + 40) - 20;
+               int w = r.nextInt(60) - 3;
+               int h = r.nextInt(60) - 3;
+               switch (r.nextInt(3)) {
+                  case 0:
+                     int x2 = r.nextBoolean() ? x + w : x;
+                     int y2 = (x2 == x) ? y + h : y;
+                     g2.drawLine(x, y, x2, y2);
+                     gd.drawLine(x, y, x2, y2);
+                     break;
+                  case 1:
+                     g2.drawRect(x, y, w, h);
+                     gd.drawRect(x, y, w, h);
+                     break;
+                  default:
+                     g2.drawLine(x, y, x + w, y + h);
+                     gd.drawLine(x, y, x + w, y + h);
+                     break;
+               }
+            }
+            g2.dispose();
+            bad += diff(ref, direct);
+         }
+      }
+      return bad;
+   }
+
+   private BufferedImage copy(BufferedImage bi) {
+      BufferedImage copy = new BufferedImage(bi.getWidth(), bi.getHeight(), bi.getType());
+      int[] src = RasterOpsSwing.getData(bi);
+      System.arraycopy(src, 0, RasterOpsSwing.getData(copy), 0, src.length);
+      return copy;
+   }
+
+   /**
+    * Background pattern written by Java2D, so that the high byte of {@link BufferedImage#TYPE_INT_RGB} is as Java2D leaves it
+    * @param type
+    * @param seed
+    * @return
+    */
+   private BufferedImage createBackground(int type, int seed) {
+      BufferedImage bi = new BufferedImage(WIDTH, HEIGHT, type);
+      for (int y = 0; y < HEIGHT; y++) {
+         for (int x = 0; x < WIDTH; x++) {
+            bi.setRGB(x, y, ((x * 7 + y * 13) * 0x010203) ^ seed);
+         }
+      }
+      return bi;
+   }
+
+   /**
+    * Immutable sources: translucent, opaque with alpha, opaque without alpha, and a sub image
+    * @return
+    */
+   private ImageSwing[] createSources() {
+      Random r = new Random(5);
+      BufferedImage alpha = new BufferedImage(40, 30, BufferedImage.TYPE_INT_ARGB);
+      BufferedImage rgb = new BufferedImage(40, 30, BufferedImage.TYPE_INT_RGB);
+      BufferedImage opaque = new BufferedImage(40, 30, BufferedImage.TYPE_INT_ARGB);
+      for (int y = 0; y < 30; y++) {
+         for (int x = 0; x < 40; x++) {
+            int v = r.nextInt();
+            if (r.nextInt(4) == 0) {
+               v &= 0x00FFFFFF;
+            }
+            alpha.setRGB(x, y, v);
+            rgb.setRGB(x, y, v);
+            opaque.setRGB(x, y, 0xFF000000 | v);
+         }
+      }
+      ImageSwing[] sources = new ImageSwing[4];
+      sources[0] = new ImageSwing(cdc, alpha, false);
+      sources[1] = new ImageSwing(cdc, rgb, false);
+      sources[2] = new ImageSwing(cdc, opaque, false);
+      sources[3] = new ImageSwing(cdc, alpha.getSubimage(3, 4, 20, 15), false);
+      return sources;
+   }
+
+   private int diff(BufferedImage a, BufferedImage b) {
+      return diff(a, b, 0xFFFFFFFF);
+   }
+
+   /**
+    * Number of pixels of a and b that differ on the bits of mask
+    * @param a
+    * @param b
+    * @param mask
+    * @return
+    */
+   private int diff(BufferedImage a, BufferedImage b, int mask) {
+      int[] da = RasterOpsSwing.getData(a);
+      int[] db = RasterOpsSwing.getData(b);
+      int count = 0;
+      for (int i = 0; i < da.length; i++) {
+         if (((da[i] ^ db[i]) & mask) != 0) {
+            count++;
+         }
+      }
+      return count;
+   }
+
+   /**
+    * Java2D transform drawing a w,h region with its top left at x,y after the MIDP transform: mirror first, then rotate clockwise.
+    * <br>
+    * Built from the MIDP definition and not from the tables of {@link GraphicsSwing}.
+    * @param transform
+    * @param w
+    * @param h
+    * @param x
+    * @param y
+    * @return
+    */
+   private static AffineTransform getTransformMIDP(int transform, int w, int h, int x, int y) {
+      boolean isMirror;
+      int quadrants;
+      switch (transform) {
+         case IImage.TRANSFORM_1_FLIP_H_MIRROR_ROT180:
+            isMirror = true;
+            quadrants = 2;
+            break;
+         case IImage.TRANSFORM_2_FLIP_V_MIRROR:
+            isMirror = true;
+            quadrants = 0;
+            break;
+         case IImage.TRANSFORM_3_ROT_180:
+            isMirror = false;
+            quadrants = 2;
+            break;
+         case IImage.TRANSFORM_4_MIRROR_ROT270:
+            isMirror = true;
+            quadrants = 3;
+            break;
+         case IImage.TRANSFORM_5_ROT_90:
+            isMirror = false;
+            quadrants = 1;
+            break;
+         case IImage.TRANSFORM_6_ROT_270:
+            isMirror = false;
+            quadrants = 3;
+            break;
+         case IImage.TRANSFORM_7_MIRROR_ROT90:
+            isMirror = true;
+            quadrants = 1;
+            break;
+         default:
+            isMirror = false;
+            quadrants = 0;
+            break;
+      }
+      AffineTransform rotation = AffineTransform.getQuadrantRotateInstance(quadrants);
+      if (isMirror) {
+         rotation.scale(-1, 1);
+      }
+      Rectangle2D bounds = rotation.createTransformedShape(new Rectangle2D.Double(0, 0, w, h)).getBounds2D();
+      AffineTransform at = AffineTransform.getTranslateInstance(x - bounds.getX(), y - bounds.getY());
+      at.concatenate(rotation);
+      return at;
+   }
+
+   private static void setAlias(GraphicsSwing g, boolean isAA) {
+      int mode = isAA ? ITechGraphics.MODSET_APP_ALIAS_1_ON : ITechGraphics.MODSET_APP_ALIAS_2_OFF;
+      g.applySettingsAlias(mode);
+      g.applySettingsAliasText(mode);
+   }
+
+   /**
+    * Runs all checks
+    * @param args optional number of rounds of each check, default 100
+    */
+   public static void main(String[] args) {
+      int rounds = 100;
+      if (args.length > 0) {
+         rounds = Integer.parseInt(args[0]);
+      }
+      EquivalenceCheckSwing check = new EquivalenceCheckSwing(BenchCtxSwing.createCtx(), rounds);
+      int bad = 0;
+      int regions = check.checkRegions();
+      System.out.println("drawRegion transforms: " + regions + " pixels differ");
+      bad += regions;
+      int blend = check.checkBlend();
+      System.out.println("blendSrcOver: " + blend + " pixels differ");
+      bad += blend;
+      int ops = check.checkOps();
+      System.out.println("fillRect, drawLine, drawRect, drawImage: " + ops + " pixels differ");
+      bad += ops;
+      int strokes = check.checkStrokes();
+      System.out.println("strokes: " + strokes + " pixels differ");
+      bad += strokes;
+      System.exit(bad == 0 ? 0 : 1);
+   }
+}
@@ -0,0 +1,110 @@
+/*
+ * (c) 2018-2020 Charles-Philip Bentley
+ * This code is licensed under MIT license (see LICENSE.txt for details)
+ */
+package pasa.cbentley.framework.core.draw.swing.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import pasa.cbentley.framework.core.draw.swing.ctx.CoreDrawSwingCtx;
+import pasa.cbentley.framework.core.draw.swing.engine.GraphicsSwing;
+
+/**
+ * Fills and outlines of {@link GraphicsSwing}, with and without anti alias.
+ * <br>
+ * Each call changes the color, as a UI drawing many small widgets does.
+ *
+ * @author Charles-Philip Bentley
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FillBenchSwing {
+
+   private static final int BATCH = 64;
+
+   private int              color;
+
+   private GraphicsSwing    g;
+
+   @Param({ "false", "true" })
+   public boolean           isAA;
+
+   private int[]            rects;
+
+   @Param({ "8", "100" })
+   public int               size;
+
+   @Benchmark
+   public void drawLine() {
+      g.setColor(color++);
+      g.drawLine(10, 10, 10 + size, 10 + size / 3);
+   }
+
+   @Benchmark
+   public void drawRect() {
+      g.setColor(color++);
+      g.drawRect(10, 10, size, size);
+   }
+
+   @Benchmark
+   public void fillArc() {
+      g.setColor(color++);
+      g.fillArc(10, 10, size, size, 0, 270);
+   }
+
+   @Benchmark
+   public void fillRect() {
+      g.setColor(color++);
+      g.fillRect(10, 10, size, size);
+   }
+
+   /**
+    * {@link FillBenchSwing#BATCH} rectangles per operation
+    */
+   @Benchmark
+   public void fillRects() {
+      g.setColor(color++);
+      g.fillRects(rects, null, 0, BATCH);
+   }
+
+   @Benchmark
+   public void fillRoundRect() {
+      g.setColor(color++);
+      g.fillRoundRect(10, 10, size, size, 8, 8);
+   }
+
+   @Benchmark
+   public void fillTriangle() {
+      g.setColor(color++);
+      g.fillTriangle(10, 10, 10 + size, 10, 10, 10 + size);
+   }
+
+   @Setup
+   public void setup() {
+      CoreDrawSwingCtx cdc = BenchCtxSwing.createCtx();
+      g = BenchCtxSwing.createSurface(cdc, isAA);
+      rects = new int[BATCH * 4];
+      for (int i = 0; i < BATCH; i++) {
+         rects[i * 4] = (i * 37) % (BenchCtxSwing.SURFACE - size);
+         rects[i * 4 + 1] = (i * 53) % (BenchCtxSwing.SURFACE - size);
+         rects[i * 4 + 2] = size;
+         rects[i * 4 + 3] = size;
+      }
+   }
+}
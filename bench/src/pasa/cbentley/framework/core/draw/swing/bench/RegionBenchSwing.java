@@ -0,0 +1,71 @@
+/*
+ * (c) 2018-2020 Charles-Philip Bentley
+ * This code is licensed under MIT license (see LICENSE.txt for details)
+ */
+package pasa.cbentley.framework.core.draw.swing.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import pasa.cbentley.framework.core.draw.swing.ctx.CoreDrawSwingCtx;
+import pasa.cbentley.framework.core.draw.swing.engine.GraphicsSwing;
+import pasa.cbentley.framework.core.draw.swing.engine.ImageSwing;
+
+/**
+ * {@link GraphicsSwing#drawRegion(pasa.cbentley.framework.coredraw.src4.interfaces.IImage, int, int, int, int, int, int, int, int)}
+ * for each of the 8 transforms, and {@link GraphicsSwing#drawImage(pasa.cbentley.framework.coredraw.src4.interfaces.IImage, int, int, int)}.
+ *
+ * @author Charles-Philip Bentley
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RegionBenchSwing {
+
+   private GraphicsSwing g;
+
+   @Param({ "false", "true" })
+   public boolean        isAlpha;
+
+   /**
+    * Width and height of the region
+    */
+   @Param({ "32", "128" })
+   public int            size;
+
+   private ImageSwing    src;
+
+   @Param({ "0", "1", "2", "3", "4", "5", "6", "7" })
+   public int            transform;
+
+   @Benchmark
+   public void drawImage() {
+      g.drawImage(src, 20, 30, 0);
+   }
+
+   @Benchmark
+   public void drawRegion() {
+      g.drawRegion(src, 4, 4, size, size, transform, 20, 30, 0);
+   }
+
+   @Setup
+   public void setup() {
+      CoreDrawSwingCtx cdc = BenchCtxSwing.createCtx();
+      g = BenchCtxSwing.createSurface(cdc, false);
+      src = BenchCtxSwing.createSource(cdc, size + 8, size + 8, isAlpha);
+   }
+}
@@ -0,0 +1,67 @@
+/*
+ * (c) 2018-2020 Charles-Philip Bentley
+ * This code is licensed under MIT license (see LICENSE.txt for details)
+ */
+package pasa.cbentley.framework.core.draw.swing.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import pasa.cbentley.framework.core.draw.swing.ctx.CoreDrawSwingCtx;
+import pasa.cbentley.framework.core.draw.swing.engine.GraphicsSwing;
+
+/**
+ * {@link GraphicsSwing#drawRGB(int[], int, int, int, int, int, int, boolean)} of an int array, drawn into an image
+ * and partly clipped.
+ *
+ * @author Charles-Philip Bentley
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RgbBenchSwing {
+
+   private GraphicsSwing g;
+
+   @Param({ "false", "true" })
+   public boolean        processAlpha;
+
+   private int[]         rgb;
+
+   @Param({ "16", "128", "400" })
+   public int            size;
+
+   @Benchmark
+   public void drawRGB() {
+      g.drawRGB(rgb, 0, size, 20, 30, size, size, processAlpha);
+   }
+
+   @Benchmark
+   public void drawRGBClipped() {
+      g.drawRGB(rgb, 0, size, BenchCtxSwing.SURFACE - size / 2, -size / 2, size, size, processAlpha);
+   }
+
+   @Setup
+   public void setup() {
+      CoreDrawSwingCtx cdc = BenchCtxSwing.createCtx();
+      g = BenchCtxSwing.createSurface(cdc, false);
+      rgb = new int[size * size];
+      for (int i = 0; i < rgb.length; i++) {
+         rgb[i] = ((i * 31) << 24) | (i * 0x010203);
+      }
+   }
+}
@@ -0,0 +1,74 @@
+/*
+ * (c) 2018-2020 Charles-Philip Bentley
+ * This code is licensed under MIT license (see LICENSE.txt for details)
+ */
+package pasa.cbentley.framework.core.draw.swing.bench;
+
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import pasa.cbentley.framework.core.draw.swing.ctx.CoreDrawSwingCtx;
+import pasa.cbentley.framework.core.draw.swing.engine.ScalerSwing;
+
+/**
+ * {@link ScalerSwing#getScaledInstance(BufferedImage, int, int, Object, boolean)} from a 1024 pixels square image
+ * down to several sizes, and up from it to twice its size.
+ *
+ * @author Charles-Philip Bentley
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ScaleBenchSwing {
+
+   private static final int SOURCE = 1024;
+
+   /**
+    * Multi step down scaling
+    */
+   @Param({ "false", "true" })
+   public boolean           higherQuality;
+
+   private ScalerSwing      scaler;
+
+   private BufferedImage    src;
+
+   /**
+    * Width and height of the scaled image
+    */
+   @Param({ "32", "128", "512", "2048" })
+   public int               target;
+
+   @Benchmark
+   public BufferedImage scaleBilinear() {
+      return scaler.getScaledInstance(src, target, target, RenderingHints.VALUE_INTERPOLATION_BILINEAR, higherQuality);
+   }
+
+   @Benchmark
+   public BufferedImage scaleNearest() {
+      return scaler.getScaledInstance(src, target, target, RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR, higherQuality);
+   }
+
+   @Setup
+   public void setup() {
+      CoreDrawSwingCtx cdc = BenchCtxSwing.createCtx();
+      scaler = (ScalerSwing) cdc.getScaler();
+      src = BenchCtxSwing.createSource(cdc, SOURCE, SOURCE, false).getImageSwing();
+   }
+}
@@ -0,0 +1,101 @@
+/*
+ * (c) 2018-2020 Charles-Philip Bentley
+ * This code is licensed under MIT license (see LICENSE.txt for details)
+ */
+package pasa.cbentley.framework.core.draw.swing.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import pasa.cbentley.framework.core.draw.swing.ctx.CoreDrawSwingCtx;
+import pasa.cbentley.framework.core.draw.swing.ctx.ITechHostFeatureDrawSwing;
+import pasa.cbentley.framework.core.draw.swing.engine.FontFactorySwing;
+import pasa.cbentley.framework.core.draw.swing.engine.FontSwing;
+import pasa.cbentley.framework.core.draw.swing.engine.GraphicsSwing;
+import pasa.cbentley.framework.coredraw.src4.interfaces.ITechFont;
+
+/**
+ * Text drawing and measuring with {@link GraphicsSwing} and {@link FontSwing}.
+ *
+ * @author Charles-Philip Bentley
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TextBenchSwing {
+
+   private char[]        chars;
+
+   private FontSwing     font;
+
+   private GraphicsSwing g;
+
+   /**
+    * Draw through the glyph atlas instead of Java2D text
+    */
+   @Param({ "false", "true" })
+   public boolean        isAtlas;
+
+   @Param({ "false", "true" })
+   public boolean        isAA;
+
+   @Param({ "8", "64" })
+   public int            length;
+
+   private String        text;
+
+   @Setup
+   public void setup() {
+      CoreDrawSwingCtx cdc = BenchCtxSwing.createCtx();
+      cdc.getHostFeatureDrawSwing().setHostFeatureEnabled(ITechHostFeatureDrawSwing.SUP_ID_100_TEXT_GLYPH_ATLAS, isAtlas);
+      g = BenchCtxSwing.createSurface(cdc, isAA);
+      font = (FontSwing) ((FontFactorySwing) cdc.getFontFactory()).getFont("SansSerif", ITechFont.STYLE_0_PLAIN, 14);
+      g.setFont(font);
+      g.setColor(0xFF102030);
+      StringBuilder sb = new StringBuilder(length);
+      for (int i = 0; i < length; i++) {
+         sb.append((char) ('a' + (i * 7) % 26));
+      }
+      text = sb.toString();
+      chars = text.toCharArray();
+   }
+
+   @Benchmark
+   public void drawChars() {
+      g.drawChars(chars, 0, length, 10, 100, 0);
+   }
+
+   @Benchmark
+   public void drawString() {
+      g.drawString(text, 10, 100, 0);
+   }
+
+   @Benchmark
+   public int measureChars() {
+      return font.charsWidth(chars, 0, length);
+   }
+
+   @Benchmark
+   public int measureString() {
+      return font.stringWidth(text);
+   }
+
+   @Benchmark
+   public int measureSubstring() {
+      return font.substringWidth(text, 1, length - 2);
+   }
+}
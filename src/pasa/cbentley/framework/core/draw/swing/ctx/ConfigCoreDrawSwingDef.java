@@ -9,6 +9,15 @@ import pasa.cbentley.core.src4.logging.Dctx;
 import pasa.cbentley.framework.core.draw.j2se.ctx.ConfigCoreDrawJ2seDef;
 import pasa.cbentley.framework.coredraw.src4.interfaces.ITechGraphics;
 
+/**
+ * Default configuration of {@link CoreDrawSwingCtx}.
+ * <br>
+ * The tunables of the Swing engine are declared here and not in {@link IConfigCoreDrawSwing}, so that existing implementations
+ * of the interface still compile. The ctx reads them with {@link CoreDrawSwingCtx#getConfigCoreDrawSwingDef()}:
+ * a config extending this class overrides them, any other config gets these defaults.
+ *
+ * @author Charles-Philip Bentley
+ */
 public class ConfigCoreDrawSwingDef extends ConfigCoreDrawJ2seDef implements IConfigCoreDrawSwing {
 
    public ConfigCoreDrawSwingDef(UCtx uc) {
@@ -23,6 +32,114 @@ public class ConfigCoreDrawSwingDef extends ConfigCoreDrawJ2seDef implements ICo
       return ITechGraphics.MODSET_APP_ALIAS_0_BEST;
    }
 
+   /**
+    * Number of rectangles a {@link pasa.cbentley.framework.core.draw.swing.engine.DamageTrackerSwing} keeps
+    * before it collapses them into their bounds
+    * @return
+    */
+   public int getDamageMaxRects() {
+      return 16;
+   }
+
+   /**
+    * Cap on the decoded bytes of the images kept by the {@link pasa.cbentley.framework.core.draw.swing.engine.ImageCacheSwing} of the ctx.
+    * <br>
+    * 0 to decode images each time they are created.
+    * <br>
+    * 64 MB
+    * @return
+    */
+   public long getImageCacheBytes() {
+      return 64L * 1024 * 1024;
+   }
+
+   /**
+    * Directories searched, in order and before the classpath, for the names of
+    * {@link pasa.cbentley.framework.core.draw.swing.engine.ImageFactorySwing#createImage(String)}.
+    * <br>
+    * Empty to only search the classpath.
+    * @return
+    */
+   public String[] getImageDirectories() {
+      return new String[0];
+   }
+
+   /**
+    * Number of threads decoding images for {@link pasa.cbentley.framework.core.draw.swing.engine.ImageLoaderSwing}.
+    * <br>
+    * 0 for half the available processors, at least 1.
+    * @return
+    */
+   public int getImageDecodeThreads() {
+      return 0;
+   }
+
+   /**
+    * Cap on the bytes of the images kept by the {@link pasa.cbentley.framework.core.draw.swing.engine.ImagePoolSwing} of the ctx.
+    * <br>
+    * 0 to pool nothing.
+    * <br>
+    * 32 MB
+    * @return
+    */
+   public long getImagePoolBytes() {
+      return 32L * 1024 * 1024;
+   }
+
+   /**
+    * Cap on the decoded bytes of the images kept by name by the {@link pasa.cbentley.framework.core.draw.swing.engine.ImageResourcesSwing} of the ctx.
+    * <br>
+    * 0 to load images each time they are created by name.
+    * <br>
+    * 32 MB
+    * @return
+    */
+   public long getImageResourceCacheBytes() {
+      return 32L * 1024 * 1024;
+   }
+
+   /**
+    * Frame time budget of the {@link pasa.cbentley.framework.core.draw.swing.engine.QualityGovernorSwing}, in microseconds.
+    * <br>
+    * 0 to keep full quality whatever the frame times.
+    * <br>
+    * 0 by default. Frame times come from calls to frameStart and frameEnd made by the host.
+    * 16667 for 60 frames per second
+    * @return
+    */
+   public int getQualityBudgetMicros() {
+      return 0;
+   }
+
+   /**
+    * True to count and time the draw operations of all {@link pasa.cbentley.framework.core.draw.swing.engine.GraphicsSwing}
+    * in a {@link pasa.cbentley.framework.core.draw.swing.engine.RenderMetricsSwing}.
+    * <br>
+    * Read once when the ctx is created.
+    * @return
+    */
+   public boolean isRenderMetrics() {
+      return false;
+   }
+
+   /**
+    * Width and height in pixels of the tiles of {@link pasa.cbentley.framework.core.draw.swing.engine.TiledRendererSwing}
+    * @return
+    */
+   public int getTiledTileSize() {
+      return 256;
+   }
+
+   /**
+    * Number of threads drawing tiles in {@link pasa.cbentley.framework.core.draw.swing.engine.TiledRendererSwing}.
+    * <br>
+    * 0 for the number of available processors.
+    * @return
+    */
+   public int getTiledThreads() {
+      return 0;
+   }
+
    //#mdebug
    public void toString(Dctx dc) {
       dc.root(this, ConfigCoreDrawSwingDef.class, "@line5");
@@ -15,13 +15,21 @@ import pasa.cbentley.framework.core.draw.j2se.engine.FontCustomizerJ2se;
 import pasa.cbentley.framework.core.draw.j2se.engine.HostDataDrawJ2se;
 import pasa.cbentley.framework.core.draw.j2se.engine.HostFeatureDrawJ2se;
 import pasa.cbentley.framework.core.draw.j2se.engine.HostServiceDrawJ2se;
+import pasa.cbentley.framework.core.draw.swing.engine.ColorCacheSwing;
 import pasa.cbentley.framework.core.draw.swing.engine.FontCustomizerSwing;
 import pasa.cbentley.framework.core.draw.swing.engine.FontFactorySwing;
+import pasa.cbentley.framework.core.draw.swing.engine.GraphicsRegistrySwing;
 import pasa.cbentley.framework.core.draw.swing.engine.HostDataDrawSwing;
 import pasa.cbentley.framework.core.draw.swing.engine.HostFeatureDrawSwing;
 import pasa.cbentley.framework.core.draw.swing.engine.HostServiceDrawSwing;
 import pasa.cbentley.framework.core.draw.swing.engine.ImageFactorySwing;
+import pasa.cbentley.framework.core.draw.swing.engine.QualityGovernorSwing;
+import pasa.cbentley.framework.core.draw.swing.engine.RegionCacheSwing;
+import pasa.cbentley.framework.core.draw.swing.engine.RenderMetricsSwing;
 import pasa.cbentley.framework.core.draw.swing.engine.ScalerSwing;
+import pasa.cbentley.framework.core.draw.swing.engine.ScratchRasterPoolSwing;
+import pasa.cbentley.framework.core.draw.swing.engine.StrokeRegistrySwing;
+import pasa.cbentley.framework.core.draw.swing.engine.TiledRendererSwing;
 import pasa.cbentley.framework.coredraw.src4.ctx.IToStringFlagsCoreDraw;
 import pasa.cbentley.framework.coredraw.src4.interfaces.IFontCustomizer;
 import pasa.cbentley.framework.coredraw.src4.interfaces.IFontFactory;
@@ -42,14 +50,20 @@ public class CoreDrawSwingCtx extends CoreDrawJ2seCtx {
 
    public static final int      CTX_ID = 103;
 
+   private ColorCacheSwing      colorCache;
+
    private IConfigCoreDrawSwing configDrawSwing;
 
+   private ConfigCoreDrawSwingDef configDrawSwingDef;
+
    private FontFactorySwing     factoryFont;
 
    private ImageFactorySwing    factoryImage;
 
    private FontCustomizerSwing  fontCustomizerSwing;
 
+   private GraphicsRegistrySwing graphicsRegistry;
+
    private HostDataDrawSwing    hostDataDrawSwing;
 
    private HostFeatureDrawSwing hostFeatureDrawSwing;
@@ -58,8 +72,20 @@ public class CoreDrawSwingCtx extends CoreDrawJ2seCtx {
 
    protected final SwingCoreCtx sc;
 
+   private QualityGovernorSwing qualityGovernor;
+
+   private RegionCacheSwing     regionCache;
+
+   private RenderMetricsSwing   renderMetrics;
+
    private ScalerSwing          scaler;
 
+   private ScratchRasterPoolSwing scratchPool;
+
+   private StrokeRegistrySwing  strokes;
+
+   private TiledRendererSwing   tiledRenderer;
+
    /**
     * 
     * @param config when null ConfigCoreDrawSwingDefault is used
@@ -69,9 +95,23 @@ public class CoreDrawSwingCtx extends CoreDrawJ2seCtx {
       super(config == null ? new ConfigCoreDrawSwingDef(boc.getUC()) : config, sc, boc);
       this.sc = sc;
       this.configDrawSwing = (IConfigCoreDrawSwing) getConfig(); //use getter in case null parameter we get the default config
+      if (configDrawSwing instanceof ConfigCoreDrawSwingDef) {
+         configDrawSwingDef = (ConfigCoreDrawSwingDef) configDrawSwing;
+      } else {
+         configDrawSwingDef = new ConfigCoreDrawSwingDef(boc.getUC());
+      }
       factoryFont = new FontFactorySwing(this);
       factoryImage = new ImageFactorySwing(this);
       scaler = new ScalerSwing(this);
+      colorCache = new ColorCacheSwing(this);
+      scratchPool = new ScratchRasterPoolSwing(this);
+      regionCache = new RegionCacheSwing(this);
+      strokes = new StrokeRegistrySwing(this);
+      graphicsRegistry = new GraphicsRegistrySwing(this);
+      qualityGovernor = new QualityGovernorSwing(this, configDrawSwingDef.getQualityBudgetMicros());
+      if (configDrawSwingDef.isRenderMetrics()) {
+         renderMetrics = new RenderMetricsSwing(this);
+      }
 
       hostDataDrawSwing = new HostDataDrawSwing(this);
       hostFeatureDrawSwing = new HostFeatureDrawSwing(this);
@@ -121,10 +161,52 @@ public class CoreDrawSwingCtx extends CoreDrawJ2seCtx {
       }
    }
 
+   /**
+    * Ends the frame started by {@link CoreDrawSwingCtx#frameStart()}.
+    * <br>
+    * Feeds its duration to the {@link QualityGovernorSwing} and the {@link RenderMetricsSwing} when enabled.
+    */
+   public void frameEnd() {
+      if (renderMetrics != null) {
+         renderMetrics.frameEnd();
+      }
+      qualityGovernor.frameEnd();
+   }
+
+   /**
+    * Optionally called by the host thread drawing the frames, before painting a frame.
+    * <br>
+    * Settings changes are applied when their event arrives. This pushes any still pending to the
+    * {@link pasa.cbentley.framework.core.draw.swing.engine.GraphicsSwing} of this ctx, and starts the frame measures.
+    */
+   public void frameStart() {
+      graphicsRegistry.flush();
+      qualityGovernor.frameStart();
+      if (renderMetrics != null) {
+         renderMetrics.frameStart();
+      }
+   }
+
+   /**
+    * Shared {@link java.awt.Color} objects for all {@link pasa.cbentley.framework.core.draw.swing.engine.GraphicsSwing} of this ctx
+    * @return
+    */
+   public ColorCacheSwing getColorCacheSwing() {
+      return colorCache;
+   }
+
    public IConfigCoreDrawSwing getConfigCoreDrawSwing() {
       return configDrawSwing;
    }
 
+   /**
+    * Tunables of the engine: the config of this ctx when it extends {@link ConfigCoreDrawSwingDef}, the defaults otherwise
+    * @return
+    */
+   public ConfigCoreDrawSwingDef getConfigCoreDrawSwingDef() {
+      return configDrawSwingDef;
+   }
+
    public int getCtxID() {
       return CTX_ID;
    }
@@ -167,6 +249,14 @@ public class CoreDrawSwingCtx extends CoreDrawJ2seCtx {
       return factoryFont;
    }
 
+   /**
+    * Settings changes of the ctx for all its {@link pasa.cbentley.framework.core.draw.swing.engine.GraphicsSwing}
+    * @return
+    */
+   public GraphicsRegistrySwing getGraphicsRegistrySwing() {
+      return graphicsRegistry;
+   }
+
    public HostDataDrawJ2se getHostDataDrawJ2SE() {
       return hostDataDrawSwing;
    }
@@ -179,6 +269,10 @@ public class CoreDrawSwingCtx extends CoreDrawJ2seCtx {
       return hostFeatureDrawSwing;
    }
 
+   public HostFeatureDrawSwing getHostFeatureDrawSwing() {
+      return hostFeatureDrawSwing;
+   }
+
    public HostServiceDrawJ2se getHostServiceDrawJ2se() {
       return hostServiceDrawSwing;
    }
@@ -191,14 +285,65 @@ public class CoreDrawSwingCtx extends CoreDrawJ2seCtx {
       return factoryImage;
    }
 
+   /**
+    * Rendering hints of all {@link pasa.cbentley.framework.core.draw.swing.engine.GraphicsSwing} of this ctx, lowered when frames are over budget
+    * @return
+    */
+   public QualityGovernorSwing getQualityGovernorSwing() {
+      return qualityGovernor;
+   }
+
+   /**
+    * Transformed copies of image regions shared by all {@link pasa.cbentley.framework.core.draw.swing.engine.GraphicsSwing} of this ctx
+    * @return
+    */
+   public RegionCacheSwing getRegionCacheSwing() {
+      return regionCache;
+   }
+
+   /**
+    * Counters of the draw operations of all {@link pasa.cbentley.framework.core.draw.swing.engine.GraphicsSwing} of this ctx
+    * @return null when {@link IConfigCoreDrawSwing#isRenderMetrics()} is false
+    */
+   public RenderMetricsSwing getRenderMetricsSwing() {
+      return renderMetrics;
+   }
+
    public IScaler getScaler() {
       return scaler;
    }
 
+   /**
+    * Temporary rasters for draw operations of all {@link pasa.cbentley.framework.core.draw.swing.engine.GraphicsSwing} of this ctx
+    * @return
+    */
+   public ScratchRasterPoolSwing getScratchRasterPoolSwing() {
+      return scratchPool;
+   }
+
+   /**
+    * Strokes of the styles of {@link pasa.cbentley.framework.core.draw.swing.engine.GraphicsSwing#setStrokeStyle(int)}, shared by all of this ctx
+    * @return
+    */
+   public StrokeRegistrySwing getStrokeRegistrySwing() {
+      return strokes;
+   }
+
    public SwingCoreCtx getSwingCoreCtx() {
       return sc;
    }
 
+   /**
+    * Created on first use with the tile size and thread count of {@link IConfigCoreDrawSwing}
+    * @return
+    */
+   public synchronized TiledRendererSwing getTiledRendererSwingLazy() {
+      if (tiledRenderer == null) {
+         tiledRenderer = new TiledRendererSwing(this, configDrawSwingDef.getTiledTileSize(), configDrawSwingDef.getTiledThreads());
+      }
+      return tiledRenderer;
+   }
+
    protected void matchConfig(IConfigBO config, ByteObject settings) {
       super.matchConfig(config, settings);
    }
@@ -213,6 +358,14 @@ public class CoreDrawSwingCtx extends CoreDrawJ2seCtx {
       dc.nlLvl(factoryFont, "factoryFont");
       dc.nlLvl(factoryImage, "factoryImage");
       dc.nlLvl(scaler, "scaler");
+      dc.nlLvl(colorCache, "colorCache");
+      dc.nlLvl(scratchPool, "scratchPool");
+      dc.nlLvl(regionCache, "regionCache");
+      dc.nlLvl(strokes, "strokes");
+      dc.nlLvl(graphicsRegistry, "graphicsRegistry");
+      dc.nlLvl(qualityGovernor, "qualityGovernor");
+      dc.nlLvl(renderMetrics, "renderMetrics");
+      dc.nlLvl(tiledRenderer, "tiledRenderer");
    }
 
    public void toString1Line(Dctx dc) {
@@ -0,0 +1,34 @@
+/*
+ * (c) 2018-2020 Charles-Philip Bentley
+ * This code is licensed under MIT license (see LICENSE.txt for details)
+ */
+package pasa.cbentley.framework.core.draw.swing.ctx;
+
+import pasa.cbentley.framework.core.draw.swing.engine.HostDataDrawSwing;
+import pasa.cbentley.framework.coredraw.src4.interfaces.ITechHostDataDraw;
+
+/**
+ * Host data only available in the Swing draw backend.
+ * <br>
+ * Managed by {@link HostDataDrawSwing}
+ * 
+ * @author Charles-Philip Bentley
+ *
+ */
+public interface ITechHostDataDrawSwing extends ITechHostDataDraw {
+
+   /**
+    * A new {@link pasa.cbentley.framework.core.draw.swing.engine.RenderMetricsSnapshotSwing} of the draw operations of the ctx.
+    * <br>
+    * null when {@link IConfigCoreDrawSwing#isRenderMetrics()} is false.
+    */
+   public static final int DATA_ID_OBJ_100_RENDER_METRICS = 100;
+
+   /**
+    * Duration in microseconds of the last frame measured by {@link pasa.cbentley.framework.core.draw.swing.engine.RenderMetricsSwing}.
+    * <br>
+    * 0 when {@link IConfigCoreDrawSwing#isRenderMetrics()} is false.
+    */
+   public static final int DATA_ID_INT_101_RENDER_FRAME_MICROS = 101;
+
+}
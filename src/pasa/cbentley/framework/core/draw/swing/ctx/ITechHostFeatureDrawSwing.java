@@ -0,0 +1,28 @@
+/*
+ * (c) 2018-2020 Charles-Philip Bentley
+ * This code is licensed under MIT license (see LICENSE.txt for details)
+ */
+package pasa.cbentley.framework.core.draw.swing.ctx;
+
+import pasa.cbentley.framework.core.draw.swing.engine.HostFeatureDrawSwing;
+import pasa.cbentley.framework.coredraw.src4.interfaces.ITechHostFeatureDraw;
+
+/**
+ * Host features only available in the Swing draw backend.
+ * <br>
+ * Managed by {@link HostFeatureDrawSwing}
+ * 
+ * @author Charles-Philip Bentley
+ *
+ */
+public interface ITechHostFeatureDrawSwing extends ITechHostFeatureDraw {
+
+   /**
+    * Untransformed text is drawn by blitting glyphs rasterized once in a
+    * {@link pasa.cbentley.framework.core.draw.swing.engine.GlyphAtlasSwing} instead of Java2D text rendering.
+    * <br>
+    * Disabled by default. Glyph pixels may differ by a few levels of alpha from Java2D text.
+    */
+   public static final int SUP_ID_100_TEXT_GLYPH_ATLAS = 100;
+
+}
@@ -0,0 +1,102 @@
+/*
+ * (c) 2018-2020 Charles-Philip Bentley
+ * This code is licensed under MIT license (see LICENSE.txt for details)
+ */
+package pasa.cbentley.framework.core.draw.swing.engine;
+
+import java.awt.Color;
+
+import pasa.cbentley.core.src4.logging.Dctx;
+import pasa.cbentley.framework.core.draw.swing.ctx.CoreDrawSwingCtx;
+import pasa.cbentley.framework.coredraw.src4.ctx.ObjectCDC;
+
+/**
+ * Bounded intern cache of AWT {@link Color} objects keyed by their ARGB int value.
+ * <br>
+ * <br>
+ * The cache is direct mapped. A slot holds the last {@link Color} created for the hash of its ARGB value.
+ * A collision simply replaces the slot. The memory used by the cache never grows beyond {@link ColorCacheSwing#SIZE} entries.
+ * <br>
+ * <br>
+ * {@link Color} is immutable, so instances can be shared by all {@link GraphicsSwing} of a {@link CoreDrawSwingCtx}.
+ * The cache is safe to use from several threads without locking. A race only creates a duplicate {@link Color}.
+ *
+ * @author Charles-Philip Bentley
+ *
+ */
+public class ColorCacheSwing extends ObjectCDC {
+
+   /**
+    * Number of slots. Must be a power of 2.
+    */
+   public static final int SIZE   = 1024;
+
+   private final Color[]   colors = new Color[SIZE];
+
+   private int             countCreate;
+
+   public ColorCacheSwing(CoreDrawSwingCtx cdc) {
+      super(cdc);
+   }
+
+   /**
+    * Returns a shared opaque {@link Color}. The alpha byte of rgb is ignored, as in {@link Color#Color(int)}.
+    * @param rgb
+    * @return
+    */
+   public Color getColor(int rgb) {
+      return getColorAlpha(0xFF000000 | rgb);
+   }
+
+   /**
+    * Returns a shared {@link Color} with the alpha of argb, as in {@link Color#Color(int, boolean)}
+    * @param argb
+    * @return
+    */
+   public Color getColorAlpha(int argb) {
+      int index = hash(argb) & (SIZE - 1);
+      Color c = colors[index];
+      if (c == null || c.getRGB() != argb) {
+         c = new Color(argb, true);
+         colors[index] = c;
+         countCreate++;
+      }
+      return c;
+   }
+
+   /**
+    * Number of {@link Color} objects created by this cache since its creation.
+    * <br>
+    * Not exact when used from several threads.
+    * @return
+    */
+   public int getCountCreate() {
+      return countCreate;
+   }
+
+   private int hash(int argb) {
+      int h = argb * 0x9E3779B9;
+      return h ^ (h >>> 16);
+   }
+
+   //#mdebug
+   public void toString(Dctx dc) {
+      dc.root(this, ColorCacheSwing.class, "@line5");
+      toStringPrivate(dc);
+      super.toString(dc.sup());
+   }
+
+   private void toStringPrivate(Dctx dc) {
+      dc.appendVarWithSpace("size", SIZE);
+      dc.appendVarWithSpace("countCreate", countCreate);
+   }
+
+   public void toString1Line(Dctx dc) {
+      dc.root1Line(this, ColorCacheSwing.class);
+      toStringPrivate(dc);
+      super.toString1Line(dc.sup1Line());
+   }
+
+   //#enddebug
+
+}
@@ -0,0 +1,251 @@
+/*
+ * (c) 2018-2020 Charles-Philip Bentley
+ * This code is licensed under MIT license (see LICENSE.txt for details)
+ */
+package pasa.cbentley.framework.core.draw.swing.engine;
+
+import java.awt.Component;
+
+import pasa.cbentley.core.src4.logging.Dctx;
+import pasa.cbentley.framework.core.draw.swing.ctx.ConfigCoreDrawSwingDef;
+import pasa.cbentley.framework.core.draw.swing.ctx.CoreDrawSwingCtx;
+import pasa.cbentley.framework.coredraw.src4.ctx.ObjectCDC;
+
+/**
+ * Rectangles of a drawing surface modified since the last {@link DamageTrackerSwing#reset()}.
+ * <br>
+ * <br>
+ * Set on a {@link GraphicsSwing} with {@link GraphicsSwing#setDamageTracker(DamageTrackerSwing)}, it receives the bounds of each draw call
+ * not rejected by the clip, translated and clipped to the visible area.
+ * <br>
+ * A new rectangle touching or overlapping recorded ones is merged with them.
+ * When more than {@link ConfigCoreDrawSwingDef#getDamageMaxRects()} rectangles would be needed, all are collapsed into their bounds.
+ * <br>
+ * <br>
+ * Each frame, the host reads the rectangles, repaints them, for instance with {@link DamageTrackerSwing#repaint(Component, int, int)},
+ * and calls {@link DamageTrackerSwing#reset()}.
+ * <br>
+ * Not thread safe. No allocation after construction.
+ *
+ * @author Charles-Philip Bentley
+ */
+public class DamageTrackerSwing extends ObjectCDC {
+
+   private int         count;
+
+   private final int   height;
+
+   private boolean     isCollapsed;
+
+   private final int   maxRects;
+
+   /**
+    * x0,y0,x1,y1 of each rectangle, [x0,x1[ x [y0,y1[
+    */
+   private final int[] rects;
+
+   private final int   width;
+
+   /**
+    *
+    * @param cdc
+    * @param width of the surface, rectangles are clipped to it
+    * @param height
+    */
+   public DamageTrackerSwing(CoreDrawSwingCtx cdc, int width, int height) {
+      this(cdc, width, height, cdc.getConfigCoreDrawSwingDef().getDamageMaxRects());
+   }
+
+   public DamageTrackerSwing(CoreDrawSwingCtx cdc, int width, int height, int maxRects) {
+      super(cdc);
+      this.width = width;
+      this.height = height;
+      this.maxRects = Math.max(1, maxRects);
+      this.rects = new int[this.maxRects * 4];
+   }
+
+   /**
+    * Adds the rectangles of other, for instance drawn by a tile
+    * @param other
+    */
+   public void add(DamageTrackerSwing other) {
+      for (int i = 0; i < other.count; i++) {
+         int k = i * 4;
+         addArea(other.rects[k], other.rects[k + 1], other.rects[k + 2], other.rects[k + 3]);
+      }
+   }
+
+   /**
+    * Damages the whole surface
+    */
+   public void addAll() {
+      addArea(0, 0, width, height);
+   }
+
+   /**
+    * Adds [x0,x1[ x [y0,y1[ in surface coordinates. Empty areas are ignored
+    * @param x0
+    * @param y0
+    * @param x1
+    * @param y1
+    */
+   public void addArea(int x0, int y0, int x1, int y1) {
+      x0 = Math.max(x0, 0);
+      y0 = Math.max(y0, 0);
+      x1 = Math.min(x1, width);
+      y1 = Math.min(y1, height);
+      if (x0 >= x1 || y0 >= y1) {
+         return;
+      }
+      int i = 0;
+      while (i < count) {
+         int k = i * 4;
+         int rx0 = rects[k];
+         int ry0 = rects[k + 1];
+         int rx1 = rects[k + 2];
+         int ry1 = rects[k + 3];
+         if (rx0 <= x0 && ry0 <= y0 && rx1 >= x1 && ry1 >= y1) {
+            //already damaged
+            return;
+         }
+         if (x0 <= rx1 && rx0 <= x1 && y0 <= ry1 && ry0 <= y1) {
+            //touching or overlapping. take the union out and check it again against all the others
+            x0 = Math.min(x0, rx0);
+            y0 = Math.min(y0, ry0);
+            x1 = Math.max(x1, rx1);
+            y1 = Math.max(y1, ry1);
+            removeRect(i);
+            i = 0;
+         } else {
+            i++;
+         }
+      }
+      if (count == maxRects) {
+         for (i = 0; i < count; i++) {
+            int k = i * 4;
+            x0 = Math.min(x0, rects[k]);
+            y0 = Math.min(y0, rects[k + 1]);
+            x1 = Math.max(x1, rects[k + 2]);
+            y1 = Math.max(y1, rects[k + 3]);
+         }
+         count = 0;
+         isCollapsed = true;
+      }
+      int k = count * 4;
+      rects[k] = x0;
+      rects[k + 1] = y0;
+      rects[k + 2] = x1;
+      rects[k + 3] = y1;
+      count++;
+   }
+
+   /**
+    * Number of rectangles
+    * @return
+    */
+   public int getCount() {
+      return count;
+   }
+
+   public int getH(int index) {
+      return rects[index * 4 + 3] - rects[index * 4 + 1];
+   }
+
+   public int getMaxRects() {
+      return maxRects;
+   }
+
+   /**
+    * Sum of the areas of the rectangles, in pixels. They do not overlap
+    * @return
+    */
+   public int getPixels() {
+      int sum = 0;
+      for (int i = 0; i < count; i++) {
+         sum += getW(i) * getH(i);
+      }
+      return sum;
+   }
+
+   public int getW(int index) {
+      return rects[index * 4 + 2] - rects[index * 4];
+   }
+
+   public int getX(int index) {
+      return rects[index * 4];
+   }
+
+   public int getY(int index) {
+      return rects[index * 4 + 1];
+   }
+
+   /**
+    * True when the rectangles were collapsed into their bounds since the last {@link DamageTrackerSwing#reset()}
+    * @return
+    */
+   public boolean isCollapsed() {
+      return isCollapsed;
+   }
+
+   public boolean isEmpty() {
+      return count == 0;
+   }
+
+   private void removeRect(int index) {
+      count--;
+      int last = count * 4;
+      int k = index * 4;
+      rects[k] = rects[last];
+      rects[k + 1] = rects[last + 1];
+      rects[k + 2] = rects[last + 2];
+      rects[k + 3] = rects[last + 3];
+   }
+
+   /**
+    * Calls {@link Component#repaint(int, int, int, int)} for each rectangle.
+    * @param c
+    * @param x position of the surface in c
+    * @param y
+    */
+   public void repaint(Component c, int x, int y) {
+      for (int i = 0; i < count; i++) {
+         c.repaint(x + getX(i), y + getY(i), getW(i), getH(i));
+      }
+   }
+
+   /**
+    * Forgets all rectangles. Called once the frame has been repainted
+    */
+   public void reset() {
+      count = 0;
+      isCollapsed = false;
+   }
+
+   //#mdebug
+   public void toString(Dctx dc) {
+      dc.root(this, DamageTrackerSwing.class, "@line5");
+      toStringPrivate(dc);
+      super.toString(dc.sup());
+      for (int i = 0; i < count; i++) {
+         dc.nl();
+         dc.append("[" + getX(i) + "," + getY(i) + " " + getW(i) + "x" + getH(i) + "]");
+      }
+   }
+
+   private void toStringPrivate(Dctx dc) {
+      dc.appendVarWithSpace("width", width);
+      dc.appendVarWithSpace("height", height);
+      dc.appendVarWithSpace("count", count);
+      dc.appendVarWithSpace("maxRects", maxRects);
+      dc.appendVarWithSpace("isCollapsed", isCollapsed);
+   }
+
+   public void toString1Line(Dctx dc) {
+      dc.root1Line(this, DamageTrackerSwing.class);
+      toStringPrivate(dc);
+      super.toString1Line(dc.sup1Line());
+   }
+
+   //#enddebug
+
+}
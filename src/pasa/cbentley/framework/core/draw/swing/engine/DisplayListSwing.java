@@ -0,0 +1,733 @@
+/*
+ * (c) 2018-2020 Charles-Philip Bentley
+ * This code is licensed under MIT license (see LICENSE.txt for details)
+ */
+package pasa.cbentley.framework.core.draw.swing.engine;
+
+import pasa.cbentley.core.src4.logging.Dctx;
+import pasa.cbentley.core.src4.utils.ColorUtils;
+import pasa.cbentley.framework.core.draw.j2se.engine.GraphicsJ2se;
+import pasa.cbentley.framework.core.draw.swing.ctx.CoreDrawSwingCtx;
+import pasa.cbentley.framework.coredraw.src4.interfaces.IGraphics;
+import pasa.cbentley.framework.coredraw.src4.interfaces.IImage;
+import pasa.cbentley.framework.coredraw.src4.interfaces.IMFont;
+
+/**
+ * {@link IGraphics} that records draw calls as a display list, replayed later onto a {@link GraphicsSwing}
+ * with {@link DisplayListSwing#replay(GraphicsSwing)}.
+ * <br>
+ * <br>
+ * Each call is an opcode followed by its int parameters in a growable int array.
+ * Strings, fonts, images and copies of caller arrays go in a parallel growable Object array.
+ * <br>
+ * <br>
+ * A frame may be recorded on a worker thread and handed to the event thread, which only replays it.
+ * A list may be replayed any number of times, until {@link DisplayListSwing#reset()}.
+ * <br>
+ * Recording and replaying must not happen at the same time. The thread handing the list over must publish it safely,
+ * for instance with {@link java.awt.EventQueue#invokeLater(Runnable)}.
+ * <br>
+ * <br>
+ * Color, font, stroke, clip and translation are tracked while recording, so that getters answer like a {@link GraphicsSwing}.
+ * The clip starts as the width,height area given to the constructor.
+ * <br>
+ * Images are referenced, not copied. A mutable image drawn into after recording is replayed with its new pixels.
+ * Arrays given to {@link DisplayListSwing#drawChars(char[], int, int, int, int, int)} and
+ * {@link DisplayListSwing#drawRGB(int[], int, int, int, int, int, int, boolean)} are copied.
+ *
+ * @author Charles-Philip Bentley
+ *
+ */
+public class DisplayListSwing extends GraphicsJ2se implements IGraphics {
+
+   public static final int OP_00_SET_COLOR       = 0;
+
+   public static final int OP_01_SET_FONT        = 1;
+
+   public static final int OP_02_SET_STROKE      = 2;
+
+   public static final int OP_03_SET_CLIP        = 3;
+
+   public static final int OP_04_CLIP_RECT       = 4;
+
+   public static final int OP_05_TRANSLATE       = 5;
+
+   public static final int OP_06_FILL_RECT       = 6;
+
+   public static final int OP_07_DRAW_RECT       = 7;
+
+   public static final int OP_08_DRAW_LINE       = 8;
+
+   public static final int OP_09_DRAW_ARC        = 9;
+
+   public static final int OP_10_FILL_ARC        = 10;
+
+   public static final int OP_11_DRAW_ROUND_RECT = 11;
+
+   public static final int OP_12_FILL_ROUND_RECT = 12;
+
+   public static final int OP_13_FILL_TRIANGLE   = 13;
+
+   public static final int OP_14_DRAW_STRING     = 14;
+
+   public static final int OP_15_DRAW_SUBSTRING  = 15;
+
+   public static final int OP_16_DRAW_CHAR       = 16;
+
+   public static final int OP_17_DRAW_CHARS      = 17;
+
+   public static final int OP_18_DRAW_IMAGE      = 18;
+
+   public static final int OP_19_DRAW_REGION     = 19;
+
+   public static final int OP_20_DRAW_RGB        = 20;
+
+   public static final int OP_21_COPY_AREA       = 21;
+
+   public static final int OP_22_FEATURE         = 22;
+
+   /**
+    * {@link DisplayListSwing#stateSet} bit when the color was set
+    */
+   static final int        SET_1_COLOR           = 1 << 0;
+
+   /**
+    * {@link DisplayListSwing#stateSet} bit when the font was set
+    */
+   static final int        SET_2_FONT            = 1 << 1;
+
+   /**
+    * {@link DisplayListSwing#stateSet} bit when the stroke was set
+    */
+   static final int        SET_3_STROKE          = 1 << 2;
+
+   private int             clipH;
+
+   private int             clipW;
+
+   private int             clipX;
+
+   private int             clipY;
+
+   private int             color;
+
+   private IMFont          font;
+
+   private final int       height;
+
+   /**
+    * True when a copyArea was recorded. It reads pixels drawn by previous calls
+    */
+   private boolean         isCopyArea;
+
+   /**
+    * Lines, arcs, round rects and triangles recorded. Antialiased, their pixels depend on the clip.
+    */
+   private int             numPaths;
+
+   /**
+    * SET_ bits of the color, font and stroke set at least once
+    */
+   private int             stateSet;
+
+   /**
+    * Number of draw calls recorded, state changes excluded
+    */
+   private int             numDraws;
+
+   private Object[]        objs;
+
+   private int             objsSize;
+
+   private int[]           ops;
+
+   private int             opsSize;
+
+   private int             stroke;
+
+   private int             translateX;
+
+   private int             translateY;
+
+   private final int       width;
+
+   /**
+    *
+    * @param cdc
+    * @param width width of the area being recorded, initial clip
+    * @param height height of the area being recorded, initial clip
+    */
+   public DisplayListSwing(CoreDrawSwingCtx cdc, int width, int height) {
+      super(cdc);
+      this.width = width;
+      this.height = height;
+      ops = new int[256];
+      objs = new Object[32];
+      reset();
+   }
+
+   private void addObj(Object o) {
+      if (objsSize == objs.length) {
+         Object[] n = new Object[objs.length * 2];
+         System.arraycopy(objs, 0, n, 0, objsSize);
+         objs = n;
+      }
+      objs[objsSize++] = o;
+   }
+
+   /**
+    * Makes room for an opcode and its n parameters, and writes the opcode.
+    * @param op
+    * @param n
+    * @return index of the first parameter
+    */
+   private int addOp(int op, int n) {
+      if (opsSize + n + 1 > ops.length) {
+         int[] o = new int[Math.max(ops.length * 2, opsSize + n + 1)];
+         System.arraycopy(ops, 0, o, 0, opsSize);
+         ops = o;
+      }
+      ops[opsSize] = op;
+      int index = opsSize + 1;
+      opsSize += n + 1;
+      return index;
+   }
+
+   private void addOp4(int op, int a, int b, int c, int d) {
+      int i = addOp(op, 4);
+      ops[i] = a;
+      ops[i + 1] = b;
+      ops[i + 2] = c;
+      ops[i + 3] = d;
+   }
+
+   private void addOp6(int op, int a, int b, int c, int d, int e, int f) {
+      int i = addOp(op, 6);
+      ops[i] = a;
+      ops[i + 1] = b;
+      ops[i + 2] = c;
+      ops[i + 3] = d;
+      ops[i + 4] = e;
+      ops[i + 5] = f;
+   }
+
+   public void clipRect(int x, int y, int w, int h) {
+      addOp4(OP_04_CLIP_RECT, x, y, w, h);
+      int x0 = Math.max(x, clipX);
+      int y0 = Math.max(y, clipY);
+      int x1 = Math.min(x + w, clipX + clipW);
+      int y1 = Math.min(y + h, clipY + clipH);
+      clipX = x0;
+      clipY = y0;
+      clipW = Math.max(0, x1 - x0);
+      clipH = Math.max(0, y1 - y0);
+   }
+
+   /**
+    * Sets on g the color, font and stroke the list leaves when replayed, without drawing anything
+    * @param g
+    */
+   public void applyState(IGraphics g) {
+      if ((stateSet & SET_1_COLOR) != 0) {
+         g.setColor(color);
+      }
+      if ((stateSet & SET_2_FONT) != 0) {
+         g.setFont(font);
+      }
+      if ((stateSet & SET_3_STROKE) != 0) {
+         g.setStrokeStyle(stroke);
+      }
+   }
+
+   public void copyArea(int x_src, int y_src, int w, int h, int x_dest, int y_dest, int anchor) {
+      isCopyArea = true;
+      int i = addOp(OP_21_COPY_AREA, 7);
+      ops[i] = x_src;
+      ops[i + 1] = y_src;
+      ops[i + 2] = w;
+      ops[i + 3] = h;
+      ops[i + 4] = x_dest;
+      ops[i + 5] = y_dest;
+      ops[i + 6] = anchor;
+      numDraws++;
+   }
+
+   public void drawArc(int x, int y, int w, int h, int sa, int aa) {
+      addOp6(OP_09_DRAW_ARC, x, y, w, h, sa, aa);
+      numDraws++;
+      numPaths++;
+   }
+
+   public void drawChar(char c, int x, int y, int anchor) {
+      addOp4(OP_16_DRAW_CHAR, c, x, y, anchor);
+      numDraws++;
+   }
+
+   public void drawChars(char[] data, int offset, int length, int x, int y, int anchor) {
+      char[] copy = new char[length];
+      System.arraycopy(data, offset, copy, 0, length);
+      int i = addOp(OP_17_DRAW_CHARS, 3);
+      ops[i] = x;
+      ops[i + 1] = y;
+      ops[i + 2] = anchor;
+      addObj(copy);
+      numDraws++;
+   }
+
+   public void drawImage(IImage img, int x, int y, int anchor) {
+      int i = addOp(OP_18_DRAW_IMAGE, 3);
+      ops[i] = x;
+      ops[i + 1] = y;
+      ops[i + 2] = anchor;
+      addObj(img);
+      numDraws++;
+   }
+
+   public void drawLine(int x1, int y1, int x2, int y2) {
+      addOp4(OP_08_DRAW_LINE, x1, y1, x2, y2);
+      numDraws++;
+      numPaths++;
+   }
+
+   public void drawRect(int x, int y, int w, int h) {
+      addOp4(OP_07_DRAW_RECT, x, y, w, h);
+      numDraws++;
+   }
+
+   public void drawRegion(IImage src, int x_src, int y_src, int w, int h, int transform, int x_dst, int y_dst, int anchor) {
+      int i = addOp(OP_19_DRAW_REGION, 8);
+      ops[i] = x_src;
+      ops[i + 1] = y_src;
+      ops[i + 2] = w;
+      ops[i + 3] = h;
+      ops[i + 4] = transform;
+      ops[i + 5] = x_dst;
+      ops[i + 6] = y_dst;
+      ops[i + 7] = anchor;
+      addObj(src);
+      numDraws++;
+   }
+
+   /**
+    * Rows of the area are copied, so rgbData may be reused by the caller right away
+    */
+   public void drawRGB(int[] rgbData, int offset, int scanlength, int x, int y, int w, int h, boolean processAlpha) {
+      if (rgbData == null)
+         throw new NullPointerException();
+      if (w <= 0 || h <= 0) {
+         return;
+      }
+      int[] copy = new int[w * h];
+      RasterOpsSwing.copyRows(rgbData, offset, scanlength, copy, 0, w, w, h);
+      int i = addOp(OP_20_DRAW_RGB, 5);
+      ops[i] = x;
+      ops[i + 1] = y;
+      ops[i + 2] = w;
+      ops[i + 3] = h;
+      ops[i + 4] = processAlpha ? 1 : 0;
+      addObj(copy);
+      numDraws++;
+   }
+
+   public void drawRoundRect(int x, int y, int w, int h, int r1, int r2) {
+      addOp6(OP_11_DRAW_ROUND_RECT, x, y, w, h, r1, r2);
+      numDraws++;
+      numPaths++;
+   }
+
+   public void drawString(String str, int x, int y, int anchor) {
+      int i = addOp(OP_14_DRAW_STRING, 3);
+      ops[i] = x;
+      ops[i + 1] = y;
+      ops[i + 2] = anchor;
+      addObj(str);
+      numDraws++;
+   }
+
+   public void drawSubstring(String str, int offset, int len, int x, int y, int anchor) {
+      int i = addOp(OP_15_DRAW_SUBSTRING, 5);
+      ops[i] = offset;
+      ops[i + 1] = len;
+      ops[i + 2] = x;
+      ops[i + 3] = y;
+      ops[i + 4] = anchor;
+      addObj(str);
+      numDraws++;
+   }
+
+   /**
+    * Recorded and applied to the {@link GraphicsSwing} on replay.
+    * @return always true, the outcome is only known on replay
+    */
+   public boolean featureEnable(int featureID, boolean enable) {
+      int i = addOp(OP_22_FEATURE, 2);
+      ops[i] = featureID;
+      ops[i + 1] = enable ? 1 : 0;
+      return true;
+   }
+
+   public void fillArc(int x, int y, int w, int h, int sa, int aa) {
+      addOp6(OP_10_FILL_ARC, x, y, w, h, sa, aa);
+      numDraws++;
+      numPaths++;
+   }
+
+   public void fillRect(int x, int y, int w, int h) {
+      addOp4(OP_06_FILL_RECT, x, y, w, h);
+      numDraws++;
+   }
+
+   public void fillRoundRect(int x, int y, int w, int h, int r1, int r2) {
+      addOp6(OP_12_FILL_ROUND_RECT, x, y, w, h, r1, r2);
+      numDraws++;
+      numPaths++;
+   }
+
+   public void fillTriangle(int x1, int y1, int x2, int y2, int x3, int y3) {
+      addOp6(OP_13_FILL_TRIANGLE, x1, y1, x2, y2, x3, y3);
+      numDraws++;
+      numPaths++;
+   }
+
+   public int getBlueComponent() {
+      return color & 0xFF;
+   }
+
+   public int getClipHeight() {
+      return clipH;
+   }
+
+   public int getClipWidth() {
+      return clipW;
+   }
+
+   public int getClipX() {
+      return clipX;
+   }
+
+   public int getClipY() {
+      return clipY;
+   }
+
+   public int getColor() {
+      return 0xFF000000 | color;
+   }
+
+   public int getDisplayColor(int color) {
+      return color;
+   }
+
+   public IMFont getFont() {
+      return font;
+   }
+
+   public int getGrayScale() {
+      return color;
+   }
+
+   public int getGreenComponent() {
+      return (color >> 8) & 0xFF;
+   }
+
+   public int getHeight() {
+      return height;
+   }
+
+   /**
+    * Number of draw calls recorded since the last {@link DisplayListSwing#reset()}
+    * @return
+    */
+   public int getNumDraws() {
+      return numDraws;
+   }
+
+   public int getRedComponent() {
+      return (color >> 16) & 0xFF;
+   }
+
+   public int getStrokeStyle() {
+      return stroke;
+   }
+
+   public int getTranslateX() {
+      return translateX;
+   }
+
+   public int getTranslateY() {
+      return translateY;
+   }
+
+   public int getWidth() {
+      return width;
+   }
+
+   /**
+    * The recorder does not know the features of the {@link GraphicsSwing} it will be replayed on
+    * @return false
+    */
+   public boolean hasFeatureEnabled(int featureID) {
+      return false;
+   }
+
+   public boolean hasImplementationFlag(int flag) {
+      return false;
+   }
+
+   /**
+    * True when lines, arcs, round rects or triangles were recorded.
+    * <br>
+    * Java2D clips such paths to the clip before antialiasing them, so their edge pixels
+    * change when the same list is replayed with a smaller clip.
+    * @return
+    */
+   public boolean hasPaths() {
+      return numPaths != 0;
+   }
+
+   public boolean isEmpty() {
+      return numDraws == 0;
+   }
+
+   /**
+    * True when replaying onto a {@link GraphicsSwing} of img reads pixels of img: a copyArea was recorded, or img itself is drawn.
+    * <br>
+    * Such a list cannot be replayed in parallel tiles.
+    * @param img
+    * @return
+    */
+   public boolean isReadingTarget(IImage img) {
+      if (isCopyArea) {
+         return true;
+      }
+      for (int i = 0; i < objsSize; i++) {
+         if (objs[i] == img) {
+            return true;
+         }
+      }
+      return false;
+   }
+
+   /**
+    * Runs the recorded calls on g.
+    * <br>
+    * Calls are relative to the translation of g when this method is called.
+    * Translation and clip of g are restored when it returns. Color, font and stroke are left as last recorded.
+    * <br>
+    * No allocation, except when g allocates.
+    * @param g
+    */
+   public void replay(GraphicsSwing g) {
+      int tx = g.getTranslateX();
+      int ty = g.getTranslateY();
+      int cx = g.getClipX();
+      int cy = g.getClipY();
+      int cw = g.getClipWidth();
+      int ch = g.getClipHeight();
+      int[] ops = this.ops;
+      Object[] objs = this.objs;
+      int o = 0;
+      int i = 0;
+      while (i < opsSize) {
+         int op = ops[i++];
+         switch (op) {
+            case OP_00_SET_COLOR:
+               g.setColor(ops[i]);
+               i += 1;
+               break;
+            case OP_01_SET_FONT:
+               g.setFont((IMFont) objs[o++]);
+               break;
+            case OP_02_SET_STROKE:
+               g.setStrokeStyle(ops[i]);
+               i += 1;
+               break;
+            case OP_03_SET_CLIP:
+               g.setClip(ops[i], ops[i + 1], ops[i + 2], ops[i + 3]);
+               i += 4;
+               break;
+            case OP_04_CLIP_RECT:
+               g.clipRect(ops[i], ops[i + 1], ops[i + 2], ops[i + 3]);
+               i += 4;
+               break;
+            case OP_05_TRANSLATE:
+               g.setTranslate(ops[i], ops[i + 1]);
+               i += 2;
+               break;
+            case OP_06_FILL_RECT:
+               g.fillRect(ops[i], ops[i + 1], ops[i + 2], ops[i + 3]);
+               i += 4;
+               break;
+            case OP_07_DRAW_RECT:
+               g.drawRect(ops[i], ops[i + 1], ops[i + 2], ops[i + 3]);
+               i += 4;
+               break;
+            case OP_08_DRAW_LINE:
+               g.drawLine(ops[i], ops[i + 1], ops[i + 2], ops[i + 3]);
+               i += 4;
+               break;
+            case OP_09_DRAW_ARC:
+               g.drawArc(ops[i], ops[i + 1], ops[i + 2], ops[i + 3], ops[i + 4], ops[i + 5]);
+               i += 6;
+               break;
+            case OP_10_FILL_ARC:
+               g.fillArc(ops[i], ops[i + 1], ops[i + 2], ops[i + 3], ops[i + 4], ops[i + 5]);
+               i += 6;
+               break;
+            case OP_11_DRAW_ROUND_RECT:
+               g.drawRoundRect(ops[i], ops[i + 1], ops[i + 2], ops[i + 3], ops[i + 4], ops[i + 5]);
+               i += 6;
+               break;
+            case OP_12_FILL_ROUND_RECT:
+               g.fillRoundRect(ops[i], ops[i + 1], ops[i + 2], ops[i + 3], ops[i + 4], ops[i + 5]);
+               i += 6;
+               break;
+            case OP_13_FILL_TRIANGLE:
+               g.fillTriangle(ops[i], ops[i + 1], ops[i + 2], ops[i + 3], ops[i + 4], ops[i + 5]);
+               i += 6;
+               break;
+            case OP_14_DRAW_STRING:
+               g.drawString((String) objs[o++], ops[i], ops[i + 1], ops[i + 2]);
+               i += 3;
+               break;
+            case OP_15_DRAW_SUBSTRING:
+               g.drawSubstring((String) objs[o++], ops[i], ops[i + 1], ops[i + 2], ops[i + 3], ops[i + 4]);
+               i += 5;
+               break;
+            case OP_16_DRAW_CHAR:
+               g.drawChar((char) ops[i], ops[i + 1], ops[i + 2], ops[i + 3]);
+               i += 4;
+               break;
+            case OP_17_DRAW_CHARS: {
+               char[] chars = (char[]) objs[o++];
+               g.drawChars(chars, 0, chars.length, ops[i], ops[i + 1], ops[i + 2]);
+               i += 3;
+               break;
+            }
+            case OP_18_DRAW_IMAGE:
+               g.drawImage((IImage) objs[o++], ops[i], ops[i + 1], ops[i + 2]);
+               i += 3;
+               break;
+            case OP_19_DRAW_REGION:
+               g.drawRegion((IImage) objs[o++], ops[i], ops[i + 1], ops[i + 2], ops[i + 3], ops[i + 4], ops[i + 5], ops[i + 6], ops[i + 7]);
+               i += 8;
+               break;
+            case OP_20_DRAW_RGB: {
+               int w = ops[i + 2];
+               g.drawRGB((int[]) objs[o++], 0, w, ops[i], ops[i + 1], w, ops[i + 3], ops[i + 4] == 1);
+               i += 5;
+               break;
+            }
+            case OP_21_COPY_AREA:
+               g.copyArea(ops[i], ops[i + 1], ops[i + 2], ops[i + 3], ops[i + 4], ops[i + 5], ops[i + 6]);
+               i += 7;
+               break;
+            case OP_22_FEATURE:
+               g.featureEnable(ops[i], ops[i + 1] == 1);
+               i += 2;
+               break;
+            default:
+               throw new IllegalStateException("Bad opcode " + op + " at " + (i - 1));
+         }
+      }
+      g.setTranslate(tx - g.getTranslateX(), ty - g.getTranslateY());
+      g.setClip(cx, cy, cw, ch);
+   }
+
+   /**
+    * Clears the list and the tracked state. Buffers are kept for the next frame.
+    */
+   public void reset() {
+      for (int i = 0; i < objsSize; i++) {
+         objs[i] = null;
+      }
+      objsSize = 0;
+      opsSize = 0;
+      numDraws = 0;
+      numPaths = 0;
+      isCopyArea = false;
+      stateSet = 0;
+      clipX = 0;
+      clipY = 0;
+      clipW = width;
+      clipH = height;
+      translateX = 0;
+      translateY = 0;
+      color = 0;
+      stroke = SOLID;
+      font = cdc.getFontFactory().getDefaultFont();
+   }
+
+   public void setClip(int x, int y, int w, int h) {
+      addOp4(OP_03_SET_CLIP, x, y, w, h);
+      clipX = x;
+      clipY = y;
+      clipW = Math.max(0, w);
+      clipH = Math.max(0, h);
+   }
+
+   public void setColor(int rgb) {
+      color = rgb;
+      stateSet |= SET_1_COLOR;
+      int i = addOp(OP_00_SET_COLOR, 1);
+      ops[i] = rgb;
+   }
+
+   public void setColor(int red, int green, int blue) {
+      setColor(ColorUtils.getRGBInt(red, green, blue));
+   }
+
+   public void setFont(IMFont font) {
+      this.font = font;
+      stateSet |= SET_2_FONT;
+      addOp(OP_01_SET_FONT, 0);
+      addObj(font);
+   }
+
+   public void setGrayScale(int v) {
+
+   }
+
+   public void setStrokeStyle(int style) {
+      stroke = style;
+      stateSet |= SET_3_STROKE;
+      int i = addOp(OP_02_SET_STROKE, 1);
+      ops[i] = style;
+   }
+
+   /**
+    * Relative, like {@link GraphicsSwing#setTranslate(int, int)}. The tracked clip moves with the translation.
+    */
+   public void setTranslate(int x, int y) {
+      int i = addOp(OP_05_TRANSLATE, 2);
+      ops[i] = x;
+      ops[i + 1] = y;
+      translateX += x;
+      translateY += y;
+      clipX -= x;
+      clipY -= y;
+   }
+
+   //#mdebug
+   public void toString(Dctx dc) {
+      dc.root(this, DisplayListSwing.class, "@line5");
+      toStringPrivate(dc);
+      super.toString(dc.sup());
+   }
+
+   private void toStringPrivate(Dctx dc) {
+      dc.appendVarWithSpace("width", width);
+      dc.appendVarWithSpace("height", height);
+      dc.appendVarWithSpace("numDraws", numDraws);
+      dc.appendVarWithSpace("opsSize", opsSize);
+      dc.appendVarWithSpace("objsSize", objsSize);
+   }
+
+   public void toString1Line(Dctx dc) {
+      dc.root1Line(this, DisplayListSwing.class);
+      toStringPrivate(dc);
+      super.toString1Line(dc.sup1Line());
+   }
+
+   //#enddebug
+
+}
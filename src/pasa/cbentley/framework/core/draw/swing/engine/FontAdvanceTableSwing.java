@@ -0,0 +1,176 @@
+/*
+ * (c) 2018-2020 Charles-Philip Bentley
+ * This code is licensed under MIT license (see LICENSE.txt for details)
+ */
+package pasa.cbentley.framework.core.draw.swing.engine;
+
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.font.FontRenderContext;
+import java.awt.font.GlyphVector;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import pasa.cbentley.core.src4.logging.Dctx;
+import pasa.cbentley.framework.core.draw.swing.ctx.CoreDrawSwingCtx;
+import pasa.cbentley.framework.coredraw.src4.ctx.ObjectCDC;
+
+/**
+ * Advances of the chars of one AWT {@link Font}, as measured by its {@link FontMetrics}.
+ * <br>
+ * <br>
+ * Advances are stored in one float page per Unicode block, c &gt;&gt; 8, filled the first time a char of the block is measured.
+ * Widths of strings are the rounded sum of float advances, which is what {@link FontMetrics#stringWidth(String)} computes
+ * for text without layout. {@link FontAdvanceTableSwing#charWidth(char)} rounds a single advance, like {@link FontMetrics#charWidth(char)}.
+ * <br>
+ * <br>
+ * Fonts with layout attributes (kerning, ligatures) and chars that need text layout are measured by the {@link FontMetrics}.
+ * <br>
+ * One table is shared by all {@link FontSwing} of the same AWT {@link Font}. See {@link FontFactorySwing#getAdvanceTable(Font, FontMetrics)}.
+ * <br>
+ * Thread safe. Measuring simple text does not allocate once its pages are filled.
+ *
+ * @author Charles-Philip Bentley
+ *
+ */
+public class FontAdvanceTableSwing extends ObjectCDC {
+
+   private final Font                 font;
+
+   private final FontMetrics          fontMetrics;
+
+   /**
+    * True when the {@link FontMetrics} must measure all the text
+    */
+   private final boolean              isLayout;
+
+   /**
+    * float[256] for each Unicode block
+    */
+   private final AtomicReferenceArray pages = new AtomicReferenceArray(256);
+
+   public FontAdvanceTableSwing(CoreDrawSwingCtx cdc, Font font, FontMetrics fontMetrics) {
+      super(cdc);
+      this.font = font;
+      this.fontMetrics = fontMetrics;
+      this.isLayout = font.hasLayoutAttributes();
+   }
+
+   public int charWidth(char c) {
+      if (isLayout || !GlyphAtlasSwing.isSimpleChar(c)) {
+         return fontMetrics.charWidth(c);
+      }
+      return (int) (0.5 + getPage(c)[c & 0xFF]);
+   }
+
+   /**
+    * @throws NullPointerException if chars is null
+    */
+   public int charsWidth(char[] chars, int offset, int length) {
+      if (isLayout) {
+         return fontMetrics.charsWidth(chars, offset, length);
+      }
+      float width = 0;
+      int end = offset + length;
+      for (int i = offset; i < end; i++) {
+         char c = chars[i];
+         if (!GlyphAtlasSwing.isSimpleChar(c)) {
+            return fontMetrics.charsWidth(chars, offset, length);
+         }
+         width += getPage(c)[c & 0xFF];
+      }
+      return (int) (0.5 + width);
+   }
+
+   public Font getFont() {
+      return font;
+   }
+
+   /**
+    * Advances of the block of c
+    * @param c
+    * @return
+    */
+   private float[] getPage(char c) {
+      int block = c >> 8;
+      float[] page = (float[]) pages.get(block);
+      if (page == null) {
+         //a race only measures the block twice
+         page = createPage(block);
+         if (!pages.compareAndSet(block, null, page)) {
+            page = (float[]) pages.get(block);
+         }
+      }
+      return page;
+   }
+
+   private float[] createPage(int block) {
+      char[] chars = new char[256];
+      for (int i = 0; i < 256; i++) {
+         chars[i] = (char) ((block << 8) | i);
+      }
+      FontRenderContext frc = fontMetrics.getFontRenderContext();
+      GlyphVector gv = font.createGlyphVector(frc, chars);
+      float[] page = new float[256];
+      for (int i = 0; i < 256; i++) {
+         page[i] = gv.getGlyphMetrics(i).getAdvanceX();
+      }
+      return page;
+   }
+
+   /**
+    * Number of Unicode blocks measured so far
+    * @return
+    */
+   public int getPageCount() {
+      int count = 0;
+      for (int i = 0; i < pages.length(); i++) {
+         if (pages.get(i) != null) {
+            count++;
+         }
+      }
+      return count;
+   }
+
+   public int stringWidth(String s) {
+      return substringWidth(s, 0, s.length());
+   }
+
+   public int substringWidth(String s, int offset, int length) {
+      if (isLayout) {
+         return fontMetrics.stringWidth(s.substring(offset, offset + length));
+      }
+      float width = 0;
+      int end = offset + length;
+      for (int i = offset; i < end; i++) {
+         char c = s.charAt(i);
+         if (!GlyphAtlasSwing.isSimpleChar(c)) {
+            return fontMetrics.stringWidth(s.substring(offset, offset + length));
+         }
+         width += getPage(c)[c & 0xFF];
+      }
+      return (int) (0.5 + width);
+   }
+
+   //#mdebug
+   public void toString(Dctx dc) {
+      dc.root(this, FontAdvanceTableSwing.class, "@line5");
+      toStringPrivate(dc);
+      super.toString(dc.sup());
+   }
+
+   private void toStringPrivate(Dctx dc) {
+      dc.appendVarWithSpace("font", font.getFontName());
+      dc.appendVarWithSpace("size", font.getSize());
+      dc.appendVarWithSpace("isLayout", isLayout);
+      dc.appendVarWithSpace("pages", getPageCount());
+   }
+
+   public void toString1Line(Dctx dc) {
+      dc.root1Line(this, FontAdvanceTableSwing.class);
+      toStringPrivate(dc);
+      super.toString1Line(dc.sup1Line());
+   }
+
+   //#enddebug
+
+}
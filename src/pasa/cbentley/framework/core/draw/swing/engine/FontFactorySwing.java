@@ -6,6 +6,7 @@ package pasa.cbentley.framework.core.draw.swing.engine;
 
 import java.awt.Font;
 import java.awt.FontFormatException;
+import java.awt.FontMetrics;
 import java.awt.GraphicsEnvironment;
 import java.awt.RenderingHints;
 import java.awt.font.FontRenderContext;
@@ -14,6 +15,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
 
 import pasa.cbentley.core.src4.logging.Dctx;
 import pasa.cbentley.core.swing.stringables.StringableFontAwt;
@@ -38,6 +40,11 @@ import pasa.cbentley.framework.coredraw.src4.interfaces.ITechFont;
  */
 public class FontFactorySwing extends FontFactoryJ2se {
 
+   /**
+    * {@link FontAdvanceTableSwing} by AWT {@link Font}
+    */
+   private final ConcurrentHashMap  advanceTables = new ConcurrentHashMap();
+
    protected final CoreDrawSwingCtx scc;
 
    public FontFactorySwing(CoreDrawSwingCtx scc) {
@@ -52,6 +59,26 @@ public class FontFactorySwing extends FontFactoryJ2se {
       loadFont(is, path);
    }
 
+   /**
+    * Returns the {@link FontAdvanceTableSwing} shared by all {@link FontSwing} of font.
+    * <br>
+    * Thread safe.
+    * @param font
+    * @param fontMetrics metrics of font, used when the table is created
+    * @return
+    */
+   public FontAdvanceTableSwing getAdvanceTable(Font font, FontMetrics fontMetrics) {
+      FontAdvanceTableSwing table = (FontAdvanceTableSwing) advanceTables.get(font);
+      if (table == null) {
+         table = new FontAdvanceTableSwing(scc, font, fontMetrics);
+         FontAdvanceTableSwing previous = (FontAdvanceTableSwing) advanceTables.putIfAbsent(font, table);
+         if (previous != null) {
+            table = previous;
+         }
+      }
+      return table;
+   }
+
    public StringableFontAwt getFontD(Font font) {
       return new StringableFontAwt(scc.getSwingCoreCtx(), font);
    }
@@ -144,7 +171,7 @@ public class FontFactorySwing extends FontFactoryJ2se {
    }
 
    private void toStringPrivate(Dctx dc) {
-
+      dc.appendVarWithSpace("advanceTables", advanceTables.size());
    }
    //#enddebug
 
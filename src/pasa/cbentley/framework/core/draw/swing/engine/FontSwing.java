@@ -26,17 +26,37 @@ import pasa.cbentley.framework.coredraw.src4.interfaces.ITechFont;
  */
 public class FontSwing extends FontJ2se {
 
+   /**
+    * Most {@link GlyphAtlasSwing} kept by a font, all anti alias and color combinations together
+    */
+   public static final int            GLYPH_ATLAS_MAX = 8;
+
    /** 
     * Reference to an AWT Font object, created based on the MIDP font properties requested
     */
-   private Font                     fontAwt;
+   private Font                       fontAwt;
 
    /** 
     * FontMetrics object does most of the font width and height stuff for us
     */
-   private FontMetrics              fontMetrics;
+   private FontMetrics                fontMetrics;
+
+   /**
+    * Widths of chars and strings, shared with the other {@link FontSwing} of {@link FontSwing#fontAwt}
+    */
+   private FontAdvanceTableSwing      advanceTable;
 
-   protected final CoreDrawSwingCtx cdcSwing;
+   protected final CoreDrawSwingCtx   cdcSwing;
+
+   /**
+    * Atlases of this font by anti alias and color. Copied on write. When full, the least recently used is replaced
+    */
+   private volatile GlyphAtlasSwing[] glyphAtlases = new GlyphAtlasSwing[0];
+
+   /**
+    * Ticks on each atlas lookup. Unsynchronized: a lost tick only blurs the least recently used order
+    */
+   private int                        glyphAtlasClock;
 
    /**
     * Font face is divided into 2 big families
@@ -60,6 +80,16 @@ public class FontSwing extends FontJ2se {
       //points are initialized by upper constructor
       this.fontAwt = new java.awt.Font(fontNameInit, fontAwtStyle, points);
       this.fontMetrics = Toolkit.getDefaultToolkit().getFontMetrics(this.fontAwt);
+      this.advanceTable = createAdvanceTable();
+   }
+
+   private FontAdvanceTableSwing createAdvanceTable() {
+      FontFactorySwing factory = (FontFactorySwing) cdc.getFontFactory();
+      if (factory == null) {
+         //font created while the factory itself is being built
+         return new FontAdvanceTableSwing(cdcSwing, fontAwt, fontMetrics);
+      }
+      return factory.getAdvanceTable(fontAwt, fontMetrics);
    }
 
    private int getMapStyle(int style) {
@@ -82,6 +112,7 @@ public class FontSwing extends FontJ2se {
       this.points = fontPoints + cdc.getFontFactory().getFontPointExtraShift();
       this.fontAwt = new java.awt.Font(fontNameInit, fontAwtStyle, points);
       this.fontMetrics = Toolkit.getDefaultToolkit().getFontMetrics(this.fontAwt);
+      this.advanceTable = createAdvanceTable();
 
       this.style = style;
 
@@ -115,15 +146,72 @@ public class FontSwing extends FontJ2se {
       return fontAwt;
    }
 
+   /**
+    * Returns the {@link GlyphAtlasSwing} of this font for the anti alias setting and opaque color.
+    * <br>
+    * Lock free when the atlas exists. Up to {@link FontSwing#GLYPH_ATLAS_MAX} atlases are kept, the least recently used is replaced.
+    * <br>
+    * Returns null when the font uses kerning, ligatures or other layout attributes that glyph blitting cannot honour.
+    * @param isAntiAlias
+    * @param rgb alpha is ignored
+    * @return
+    */
+   public GlyphAtlasSwing getGlyphAtlas(boolean isAntiAlias, int rgb) {
+      if (fontAwt.hasLayoutAttributes()) {
+         return null;
+      }
+      int argb = 0xFF000000 | rgb;
+      int clock = ++glyphAtlasClock;
+      GlyphAtlasSwing[] atlases = glyphAtlases;
+      for (int i = 0; i < atlases.length; i++) {
+         GlyphAtlasSwing atlas = atlases[i];
+         if (atlas.getColor() == argb && atlas.isAntiAlias() == isAntiAlias) {
+            atlas.lastUse = clock;
+            return atlas;
+         }
+      }
+      return createGlyphAtlas(isAntiAlias, argb, clock);
+   }
+
+   private synchronized GlyphAtlasSwing createGlyphAtlas(boolean isAntiAlias, int argb, int clock) {
+      GlyphAtlasSwing[] old = glyphAtlases;
+      for (int i = 0; i < old.length; i++) {
+         //created by another thread meanwhile
+         if (old[i].getColor() == argb && old[i].isAntiAlias() == isAntiAlias) {
+            return old[i];
+         }
+      }
+      GlyphAtlasSwing atlas = new GlyphAtlasSwing(cdcSwing, fontAwt, isAntiAlias, argb);
+      atlas.lastUse = clock;
+      GlyphAtlasSwing[] atlases;
+      if (old.length < GLYPH_ATLAS_MAX) {
+         atlases = new GlyphAtlasSwing[old.length + 1];
+         System.arraycopy(old, 0, atlases, 0, old.length);
+         atlases[old.length] = atlas;
+      } else {
+         atlases = (GlyphAtlasSwing[]) old.clone();
+         int lru = 0;
+         for (int i = 1; i < atlases.length; i++) {
+            //differences survive the clock wrapping around
+            if (clock - atlases[i].lastUse > clock - atlases[lru].lastUse) {
+               lru = i;
+            }
+         }
+         atlases[lru] = atlas;
+      }
+      glyphAtlases = atlases;
+      return atlas;
+   }
+
    public int charWidth(char c) {
-      return fontMetrics.charWidth(c);
+      return advanceTable.charWidth(c);
    }
 
    /**
     * @throws NullPointerException if c is null
     */
    public int charsWidth(char[] c, int ofs, int len) {
-      return fontMetrics.charsWidth(c, ofs, len);
+      return advanceTable.charsWidth(c, ofs, len);
    }
 
    public int getBaselinePosition() {
@@ -135,11 +223,15 @@ public class FontSwing extends FontJ2se {
    }
 
    public int stringWidth(String s) {
-      return fontMetrics.stringWidth(s);
+      return advanceTable.stringWidth(s);
    }
 
    public int substringWidth(String s, int offset, int length) {
-      return fontMetrics.stringWidth(s.substring(offset, offset + length));
+      return advanceTable.substringWidth(s, offset, length);
+   }
+
+   public FontAdvanceTableSwing getAdvanceTable() {
+      return advanceTable;
    }
 
    public boolean isSupported(int flag) {
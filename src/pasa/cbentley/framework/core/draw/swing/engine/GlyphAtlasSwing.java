@@ -0,0 +1,288 @@
+/*
+ * (c) 2018-2020 Charles-Philip Bentley
+ * This code is licensed under MIT license (see LICENSE.txt for details)
+ */
+package pasa.cbentley.framework.core.draw.swing.engine;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+
+import pasa.cbentley.core.src4.logging.Dctx;
+import pasa.cbentley.framework.core.draw.swing.ctx.CoreDrawSwingCtx;
+import pasa.cbentley.framework.coredraw.src4.ctx.ObjectCDC;
+
+/**
+ * Glyphs of one AWT {@link Font}, for one anti alias setting and one color, rasterized into packed ARGB pages.
+ * <br>
+ * <br>
+ * A page holds the 256 chars of a Unicode block, c &gt;&gt; 8. Pages are created the first time a char of their block is drawn.
+ * Glyph cells are packed in shelves of {@link GlyphAtlasSwing#PAGE_WIDTH} pixels.
+ * Each cell is the advance of the glyph, plus {@link GlyphAtlasSwing#getPad()} pixels on each side for ink overhang.
+ * <br>
+ * <br>
+ * Glyphs are placed at integer advances measured with the rendering context of the page,
+ * which is what Java2D does when fractional metrics are off.
+ * <br>
+ * Thread safe. Pages are immutable once published.
+ *
+ * @author Charles-Philip Bentley
+ * @see GraphicsSwing#drawString(String, int, int, int)
+ */
+public class GlyphAtlasSwing extends ObjectCDC {
+
+   /**
+    * Pixels data of one Unicode block
+    */
+   static final class Page {
+
+      final int[]         advances;
+
+      final int[]         cellX;
+
+      final int[]         cellY;
+
+      final int[]         data;
+
+      final BufferedImage image;
+
+      /**
+       * False for glyphs without any visible pixel, like space. They are not blitted
+       */
+      final boolean[]     inked;
+
+      Page(BufferedImage image, int[] advances, int[] cellX, int[] cellY, boolean[] inked) {
+         this.image = image;
+         this.advances = advances;
+         this.cellX = cellX;
+         this.cellY = cellY;
+         this.inked = inked;
+         this.data = RasterOpsSwing.getData(image);
+      }
+   }
+
+   public static final int PAGE_WIDTH = 512;
+
+   private final int       ascent;
+
+   private final int       cellH;
+
+   private final int       color;
+
+   private final Font      font;
+
+   private final boolean   isAntiAlias;
+
+   /**
+    * Clock of the {@link FontSwing} when this atlas was last returned by {@link FontSwing#getGlyphAtlas(boolean, int)}
+    */
+   int                     lastUse;
+
+   private final int       pad;
+
+   private final Page[]    pages      = new Page[256];
+
+   private int             pixels;
+
+   public GlyphAtlasSwing(CoreDrawSwingCtx cdc, Font font, boolean isAntiAlias, int color) {
+      super(cdc);
+      this.font = font;
+      this.isAntiAlias = isAntiAlias;
+      this.color = color;
+      BufferedImage bi = new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB);
+      Graphics2D g = createGraphics(bi);
+      FontMetrics fm = g.getFontMetrics();
+      g.dispose();
+      this.pad = Math.max(2, font.getSize() / 4);
+      this.ascent = fm.getMaxAscent();
+      this.cellH = fm.getMaxAscent() + fm.getMaxDescent() + 2 * pad;
+   }
+
+   private Graphics2D createGraphics(BufferedImage bi) {
+      Graphics2D g = bi.createGraphics();
+      Object aa = isAntiAlias ? RenderingHints.VALUE_TEXT_ANTIALIAS_ON : RenderingHints.VALUE_TEXT_ANTIALIAS_OFF;
+      g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, aa);
+      g.setRenderingHint(RenderingHints.KEY_FRACTIONALMETRICS, RenderingHints.VALUE_FRACTIONALMETRICS_OFF);
+      g.setFont(font);
+      g.setColor(new Color(color));
+      return g;
+   }
+
+   private Page createPage(int block) {
+      int[] advances = new int[256];
+      int[] cellX = new int[256];
+      int[] cellY = new int[256];
+      //measure with the rendering context of the page
+      BufferedImage probe = new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB);
+      Graphics2D gp = createGraphics(probe);
+      FontMetrics fm = gp.getFontMetrics();
+      int x = 0;
+      int y = 0;
+      for (int i = 0; i < 256; i++) {
+         char c = (char) ((block << 8) | i);
+         advances[i] = fm.charWidth(c);
+         int cw = advances[i] + 2 * pad;
+         if (x + cw > PAGE_WIDTH) {
+            x = 0;
+            y += cellH;
+         }
+         cellX[i] = x;
+         cellY[i] = y;
+         x += cw;
+      }
+      gp.dispose();
+      BufferedImage image = new BufferedImage(PAGE_WIDTH, y + cellH, BufferedImage.TYPE_INT_ARGB);
+      Graphics2D g = createGraphics(image);
+      char[] one = new char[1];
+      for (int i = 0; i < 256; i++) {
+         one[0] = (char) ((block << 8) | i);
+         //ink outside the cell would bleed into neighbours
+         g.setClip(cellX[i], cellY[i], advances[i] + 2 * pad, cellH);
+         g.drawChars(one, 0, 1, cellX[i] + pad, cellY[i] + pad + ascent);
+      }
+      g.dispose();
+      boolean[] inked = new boolean[256];
+      int[] data = RasterOpsSwing.getData(image);
+      for (int i = 0; i < 256; i++) {
+         int cw = advances[i] + 2 * pad;
+         for (int j = 0; j < cellH && !inked[i]; j++) {
+            int index = (cellY[i] + j) * PAGE_WIDTH + cellX[i];
+            for (int k = 0; k < cw; k++) {
+               if (data[index + k] != 0) {
+                  inked[i] = true;
+                  break;
+               }
+            }
+         }
+      }
+      return new Page(image, advances, cellX, cellY, inked);
+   }
+
+   /**
+    * Distance between the top of a cell and the baseline
+    * @return
+    */
+   public int getCellAscent() {
+      return pad + ascent;
+   }
+
+   public int getCellHeight() {
+      return cellH;
+   }
+
+   public int getColor() {
+      return color;
+   }
+
+   public Font getFont() {
+      return font;
+   }
+
+   /**
+    * Transparent pixels on the left and right of each glyph cell
+    * @return
+    */
+   public int getPad() {
+      return pad;
+   }
+
+   /**
+    * Page of the Unicode block of c, created on first use
+    * @param c
+    * @return
+    */
+   Page getPage(char c) {
+      int block = c >> 8;
+      Page p = pages[block];
+      if (p == null) {
+         synchronized (this) {
+            p = pages[block];
+            if (p == null) {
+               p = createPage(block);
+               pixels += p.image.getWidth() * p.image.getHeight();
+               pages[block] = p;
+            }
+         }
+      }
+      return p;
+   }
+
+   /**
+    * Number of pixels allocated by all pages
+    * @return
+    */
+   public int getPixels() {
+      return pixels;
+   }
+
+   public boolean isAntiAlias() {
+      return isAntiAlias;
+   }
+
+   /**
+    * True when the glyph of c can be drawn from the atlas.
+    * <br>
+    * Surrogates and chars of scripts that need text layout (combining marks, bidi, Indic...) cannot.
+    * @param c
+    * @return
+    */
+   public static boolean isSimpleChar(char c) {
+      if (c < 0x0300) {
+         return true;
+      }
+      if (c <= 0x036F) {
+         //combining diacritical marks
+         return false;
+      }
+      if (c >= 0x0590 && c <= 0x10FF) {
+         //hebrew, arabic, syriac, thaana, indic, thai, lao, tibetan, myanmar
+         return false;
+      }
+      if (c >= 0x1100 && c <= 0x11FF) {
+         //hangul jamo
+         return false;
+      }
+      if (c >= 0x1780 && c <= 0x19FF) {
+         //khmer, mongolian, limbu, tai
+         return false;
+      }
+      if (c >= 0x200C && c <= 0x200F) {
+         //joiners and direction marks
+         return false;
+      }
+      if ((c >= 0x202A && c <= 0x202E) || (c >= 0x206A && c <= 0x206F)) {
+         //bidi controls
+         return false;
+      }
+      if (c >= 0xD800 && c <= 0xDFFF) {
+         return false;
+      }
+      return true;
+   }
+
+   //#mdebug
+   public void toString(Dctx dc) {
+      dc.root(this, GlyphAtlasSwing.class, "@line5");
+      toStringPrivate(dc);
+      super.toString(dc.sup());
+   }
+
+   private void toStringPrivate(Dctx dc) {
+      dc.appendVarWithSpace("font", font.getFontName());
+      dc.appendVarWithSpace("isAntiAlias", isAntiAlias);
+      dc.appendColorWithSpace("color", color);
+      dc.appendVarWithSpace("pixels", pixels);
+   }
+
+   public void toString1Line(Dctx dc) {
+      dc.root1Line(this, GlyphAtlasSwing.class);
+      toStringPrivate(dc);
+      super.toString1Line(dc.sup1Line());
+   }
+
+   //#enddebug
+
+}
@@ -0,0 +1,211 @@
+/*
+ * (c) 2018-2020 Charles-Philip Bentley
+ * This code is licensed under MIT license (see LICENSE.txt for details)
+ */
+package pasa.cbentley.framework.core.draw.swing.engine;
+
+import java.util.WeakHashMap;
+
+import pasa.cbentley.byteobjects.src4.core.ByteObject;
+import pasa.cbentley.byteobjects.src4.ctx.IEventsBO;
+import pasa.cbentley.core.src4.event.BusEvent;
+import pasa.cbentley.core.src4.event.IEventConsumer;
+import pasa.cbentley.core.src4.interfaces.ITechThread;
+import pasa.cbentley.core.src4.logging.Dctx;
+import pasa.cbentley.framework.core.draw.swing.ctx.CoreDrawSwingCtx;
+import pasa.cbentley.framework.coredraw.src4.ctx.IBOCtxSettingsCoreDraw;
+import pasa.cbentley.framework.coredraw.src4.ctx.IEventsCoreDraw;
+import pasa.cbentley.framework.coredraw.src4.ctx.ObjectCDC;
+import pasa.cbentley.framework.coredraw.src4.interfaces.ITechGraphics;
+
+/**
+ * Settings of the ctx for all its {@link GraphicsSwing}, and the {@link GraphicsSwing} that follow their changes.
+ * <br>
+ * <br>
+ * {@link GraphicsSwing#registerForChanges()} adds a {@link GraphicsSwing} here, weakly referenced: a {@link GraphicsSwing}
+ * created for a paint and forgotten is garbage collected without calling {@link GraphicsSwing#destroy()}.
+ * <br>
+ * The registry alone listens to {@link IEventsBO#PID_01_CTX_1_SETTINGS_CHANGE} on the event bus, on the main thread as
+ * {@link ITechThread#THREAD_MODE_1_MAIN_NOW}. Each event is applied at once by {@link GraphicsRegistrySwing#flush()}:
+ * the alias modes of {@link IBOCtxSettingsCoreDraw} are read once and pushed to the live {@link GraphicsSwing}.
+ * <br>
+ * {@link GraphicsRegistrySwing#flush()} adds hints to the {@link java.awt.Graphics2D} of the registered {@link GraphicsSwing}.
+ * It must be called by the thread drawing with them, the one firing the settings events. {@link CoreDrawSwingCtx#frameStart()}
+ * also flushes, as an optional batching point. Tiles of {@link TiledRendererSwing} are not registered and never flush.
+ * <br>
+ * <br>
+ * The hints pushed are the shared immutable {@link java.awt.RenderingHints} of {@link QualityGovernorSwing#getHints(boolean, boolean)}.
+ * <br>
+ * Thread safe.
+ *
+ * @author Charles-Philip Bentley
+ * @see CoreDrawSwingCtx#getGraphicsRegistrySwing()
+ */
+public class GraphicsRegistrySwing extends ObjectCDC implements IEventConsumer {
+
+   private int                 countEvents;
+
+   private int                 countFlushes;
+
+   /**
+    * Keys are the registered {@link GraphicsSwing}. Values are unused
+    */
+   private final WeakHashMap   graphics = new WeakHashMap();
+
+   private boolean             isAlias;
+
+   private boolean             isAliasText;
+
+   /**
+    * Settings changed since they were last read
+    */
+   private boolean             isDirty  = true;
+
+   /**
+    * Settings changed since they were last pushed to the registered {@link GraphicsSwing}
+    */
+   private boolean             isPending;
+
+   public GraphicsRegistrySwing(CoreDrawSwingCtx cdc) {
+      super(cdc);
+      int pid = IEventsBO.PID_01_CTX;
+      int eid = IEventsBO.PID_01_CTX_1_SETTINGS_CHANGE;
+      cdc.getBOC().getEventBus().addConsumer(this, pid, eid, ITechThread.THREAD_MODE_1_MAIN_NOW);
+   }
+
+   /**
+    * Applies settings changes to the registered {@link GraphicsSwing} as they arrive, on the thread firing the event
+    */
+   public void consumeEvent(BusEvent e) {
+      if (e.getPID() == IEventsBO.PID_01_CTX && e.getEventID() == IEventsBO.PID_01_CTX_1_SETTINGS_CHANGE) {
+         int param1 = e.getParam1();
+         if (param1 == IEventsCoreDraw.SETTINGS_0_ALL || param1 == IEventsCoreDraw.SETTINGS_1_ALIAS) {
+            synchronized (this) {
+               countEvents++;
+               isDirty = true;
+               isPending = true;
+            }
+            e.setActed();
+            flush();
+         }
+      }
+   }
+
+   /**
+    * Pushes changed settings to the registered {@link GraphicsSwing}. Does nothing when nothing changed since the last flush.
+    * <br>
+    * Must be called by the thread drawing with the registered {@link GraphicsSwing}: their {@link java.awt.Graphics2D} get new hints.
+    */
+   public void flush() {
+      Object[] live;
+      boolean isA;
+      boolean isAT;
+      synchronized (this) {
+         if (!isPending) {
+            return;
+         }
+         isPending = false;
+         readSettings();
+         isA = isAlias;
+         isAT = isAliasText;
+         live = graphics.keySet().toArray();
+         countFlushes++;
+      }
+      //outside the lock, a GraphicsSwing being pushed may call back
+      for (int i = 0; i < live.length; i++) {
+         ((GraphicsSwing) live[i]).applySettingsAlias(isA, isAT);
+      }
+   }
+
+   public int getCountEvents() {
+      return countEvents;
+   }
+
+   public int getCountFlushes() {
+      return countFlushes;
+   }
+
+   /**
+    * Number of registered {@link GraphicsSwing} not yet garbage collected
+    * @return
+    */
+   public synchronized int getSize() {
+      return graphics.size();
+   }
+
+   /**
+    * Anti alias of shapes in the settings of the ctx
+    * @return
+    */
+   public synchronized boolean isAlias() {
+      readSettings();
+      return isAlias;
+   }
+
+   /**
+    * Anti alias of text in the settings of the ctx
+    * @return
+    */
+   public synchronized boolean isAliasText() {
+      readSettings();
+      return isAliasText;
+   }
+
+   private static boolean isAliasOn(int mode) {
+      return mode == ITechGraphics.MODSET_APP_ALIAS_0_BEST || mode == ITechGraphics.MODSET_APP_ALIAS_1_ON;
+   }
+
+   /**
+    * True when changes wait for {@link GraphicsRegistrySwing#flush()}
+    * @return
+    */
+   public synchronized boolean isPending() {
+      return isPending;
+   }
+
+   private void readSettings() {
+      if (isDirty) {
+         isDirty = false;
+         ByteObject tech = cdc.getBOCtxSettings();
+         isAlias = isAliasOn(tech.get1(IBOCtxSettingsCoreDraw.CTX_COREDRAW_OFFSET_02_MODE_ALIAS1));
+         isAliasText = isAliasOn(tech.get1(IBOCtxSettingsCoreDraw.CTX_COREDRAW_OFFSET_03_MODE_TEXT_ALIAS1));
+      }
+   }
+
+   /**
+    * g follows settings changes until it is garbage collected or unregistered
+    * @param g
+    */
+   public synchronized void register(GraphicsSwing g) {
+      graphics.put(g, Boolean.TRUE);
+   }
+
+   public synchronized void unregister(GraphicsSwing g) {
+      graphics.remove(g);
+   }
+
+   //#mdebug
+   public void toString(Dctx dc) {
+      dc.root(this, GraphicsRegistrySwing.class, "@line5");
+      toStringPrivate(dc);
+      super.toString(dc.sup());
+   }
+
+   private void toStringPrivate(Dctx dc) {
+      dc.appendVarWithSpace("size", getSize());
+      dc.appendVarWithSpace("isAlias", isAlias);
+      dc.appendVarWithSpace("isAliasText", isAliasText);
+      dc.appendVarWithSpace("isPending", isPending);
+      dc.appendVarWithSpace("countEvents", countEvents);
+      dc.appendVarWithSpace("countFlushes", countFlushes);
+   }
+
+   public void toString1Line(Dctx dc) {
+      dc.root1Line(this, GraphicsRegistrySwing.class);
+      toStringPrivate(dc);
+      super.toString1Line(dc.sup1Line());
+   }
+
+   //#enddebug
+
+}
@@ -5,31 +5,25 @@
 package pasa.cbentley.framework.core.draw.swing.engine;
 
 import java.awt.AlphaComposite;
-import java.awt.BasicStroke;
 import java.awt.Color;
 import java.awt.Graphics2D;
 import java.awt.RenderingHints;
 import java.awt.RenderingHints.Key;
-import java.awt.Stroke;
 import java.awt.TexturePaint;
 import java.awt.geom.AffineTransform;
+import java.awt.geom.Path2D;
 import java.awt.geom.Rectangle2D;
 import java.awt.image.BufferedImage;
 import java.util.HashMap;
 import java.util.Map;
 
-import pasa.cbentley.byteobjects.src4.core.ByteObject;
-import pasa.cbentley.byteobjects.src4.ctx.IEventsBO;
-import pasa.cbentley.core.src4.event.BusEvent;
-import pasa.cbentley.core.src4.event.IEventConsumer;
-import pasa.cbentley.core.src4.interfaces.ITechThread;
 import pasa.cbentley.core.src4.logging.Dctx;
 import pasa.cbentley.core.src4.utils.BitUtils;
 import pasa.cbentley.core.src4.utils.ColorUtils;
 import pasa.cbentley.framework.core.draw.j2se.engine.GraphicsJ2se;
 import pasa.cbentley.framework.core.draw.swing.ctx.CoreDrawSwingCtx;
+import pasa.cbentley.framework.core.draw.swing.ctx.ITechHostFeatureDrawSwing;
 import pasa.cbentley.framework.coredraw.src4.ctx.IBOCtxSettingsCoreDraw;
-import pasa.cbentley.framework.coredraw.src4.ctx.IEventsCoreDraw;
 import pasa.cbentley.framework.coredraw.src4.ctx.IToStringFlagsCoreDraw;
 import pasa.cbentley.framework.coredraw.src4.ctx.ToStringStaticCoreDraw;
 import pasa.cbentley.framework.coredraw.src4.interfaces.IGraphics;
@@ -38,23 +32,165 @@ import pasa.cbentley.framework.coredraw.src4.interfaces.IMFont;
 import pasa.cbentley.framework.coredraw.src4.interfaces.ITechGraphics;
 import pasa.cbentley.framework.coredraw.src4.interfaces.ITechHostFeatureDraw;
 
-public class GraphicsSwing extends GraphicsJ2se implements IGraphics, IEventConsumer {
+public class GraphicsSwing extends GraphicsJ2se implements IGraphics {
+
+   /**
+    * {@link GraphicsSwing#validate(int)} bit for the color requested by {@link GraphicsSwing#setColor(int)}
+    */
+   private static final int    STATE_1_COLOR  = 1 << 0;
+
+   /**
+    * {@link GraphicsSwing#validate(int)} bit for the stroke requested by {@link GraphicsSwing#setStrokeStyle(int)}
+    */
+   private static final int    STATE_2_STROKE = 1 << 1;
+
+   /**
+    * {@link GraphicsSwing#validate(int)} bit for the font requested by {@link GraphicsSwing#setFont(IMFont)}
+    */
+   private static final int    STATE_3_FONT   = 1 << 2;
+
+   /**
+    * No paint state needed. Used by image operations
+    */
+   private static final int    STATE_0_NONE   = 0;
+
+   /**
+    * State needed by outline shapes
+    */
+   private static final int    STATE_SHAPE    = STATE_1_COLOR | STATE_2_STROKE;
+
+   /**
+    * State needed by text
+    */
+   private static final int    STATE_TEXT     = STATE_1_COLOR | STATE_3_FONT;
+
+   /**
+    * Bounds of the shadow clip when {@link GraphicsSwing#graphics} has no clip.
+    * <br>
+    * Far enough from {@link Integer} limits to add translations and sizes without overflow.
+    */
+   private static final int    CLIP_NONE_MAX  = Integer.MAX_VALUE >> 2;
+
+   private static final int    CLIP_NONE_MIN  = Integer.MIN_VALUE >> 2;
+
+   /**
+    * Shape of a run of batched primitives of the same color. Reset before each run, its arrays are kept.
+    */
+   private final Path2D.Float  batchPath = new Path2D.Float(Path2D.WIND_NON_ZERO, 64);
+
+   /**
+    * Reused by {@link GraphicsSwing#drawChar(char, int, int, int)}
+    */
+   private final char[]        charOne   = new char[1];
 
    /** 
     * Rectangle for getting the AWT clip information into 
     */
    private java.awt.Rectangle  clip      = new java.awt.Rectangle();
 
+   /**
+    * Device area a tile may write into, in the same space as {@link GraphicsSwing#clipX0}.
+    * <br>
+    * Every clip set is intersected with it. Unbounded except on tiles, see {@link GraphicsSwing#createTile(Graphics2D, int, int, int, int)}
+    */
+   private int                 areaX0    = CLIP_NONE_MIN;
+
+   private int                 areaX1    = CLIP_NONE_MAX;
+
+   private int                 areaY0    = CLIP_NONE_MIN;
+
+   private int                 areaY1    = CLIP_NONE_MAX;
+
+   /**
+    * Shadow of the clip of {@link GraphicsSwing#graphics}, tracked in ints across {@link GraphicsSwing#setClip(int, int, int, int)}
+    * and {@link GraphicsSwing#clipRect(int, int, int, int)}.
+    * <br>
+    * Coordinates are in the space of {@link GraphicsSwing#graphics} without {@link GraphicsSwing#setTranslate(int, int)},
+    * so that a translation does not change them. Only valid when not {@link GraphicsSwing#isTransformUser}.
+    * <br>
+    * [clipX0,clipX1[ x [clipY0,clipY1[. Empty when clipX0 == clipX1 or clipY0 == clipY1.
+    */
+   private int                 clipX0;
+
+   private int                 clipX1;
+
+   private int                 clipY0;
+
+   private int                 clipY1;
+
+   /**
+    * Color requested by the last {@link GraphicsSwing#setColor(int)}.
+    * <br>
+    * It is only pushed to {@link GraphicsSwing#graphics} by {@link GraphicsSwing#validate(int)}
+    */
    private int                 color;
 
+   /**
+    * Opaque ARGB value of the {@link Color} currently set in {@link GraphicsSwing#graphics}.
+    * <br>
+    * 0 when unknown. A fully transparent value can never be set by {@link GraphicsSwing#setColor(int)}
+    */
+   private int                 colorApplied;
+
+   private final ColorCacheSwing colorCache;
+
+   /**
+    * Composite set by {@link GraphicsSwing#setComposite(AlphaComposite)}. null for the default SrcOver
+    */
+   private AlphaComposite      composite;
+
+   /**
+    * Shared hints of {@link QualityGovernorSwing#getHints(boolean, boolean)}. Never modified
+    */
    private RenderingHints computedHints;
 
+   /**
+    * Anti alias of shapes asked by the settings, before the {@link QualityGovernorSwing} level
+    */
+   private boolean             isAliasSettings;
+
+   private boolean             isAliasSettingsText;
+
+   /**
+    * Receives the bounds of draw calls when not null. See {@link GraphicsSwing#setDamageTracker(DamageTrackerSwing)}
+    */
+   private DamageTrackerSwing  damage;
+
    /** 
+    * Font requested by the last {@link GraphicsSwing#setFont(IMFont)}
     */
    private FontSwing           fontSwing = null;
 
+   /**
+    * AWT font currently set in {@link GraphicsSwing#graphics}. null when unknown.
+    */
+   private java.awt.Font       fontApplied;
+
    private int                 fwFlags;
 
+   /**
+    * Image into which this {@link GraphicsSwing} draws. null when drawing to a screen or unknown destination.
+    * <br>
+    * Set by {@link ImageSwing#getGraphics()}.
+    */
+   private ImageSwing          imageTarget;
+
+   /**
+    * True once the transform of {@link GraphicsSwing#graphics} was changed by something else than {@link GraphicsSwing#setTranslate(int, int)}
+    */
+   private boolean             isTransformUser;
+
+   /**
+    * True while a draw call is being measured, so that calls it makes to other public draw methods are not counted twice
+    */
+   private boolean             isMetering;
+
+   /**
+    * null unless {@link pasa.cbentley.framework.core.draw.swing.ctx.ConfigCoreDrawSwingDef#isRenderMetrics()}.
+    * Each draw method checks it once
+    */
+   private final RenderMetricsSwing metrics;
+
    /** 
     * AWT Graphics context.  
     * <br>
@@ -62,20 +198,75 @@ public class GraphicsSwing extends GraphicsJ2se implements IGraphics, IEventCons
     */
    private java.awt.Graphics2D graphics;
 
-   private Stroke              gStroke;
+   /**
+    * Bit flags of requested state not yet pushed to {@link GraphicsSwing#graphics}
+    * <li> {@link GraphicsSwing#STATE_1_COLOR}
+    * <li> {@link GraphicsSwing#STATE_2_STROKE}
+    * <li> {@link GraphicsSwing#STATE_3_FONT}
+    */
+   private int                 stateDirty;
+
+   /**
+    * Bit flags of state explicitly requested at least once. Such state is pushed again to a new {@link Graphics2D}
+    */
+   private int                 stateRequested;
 
+   /**
+    * Stroke style requested by the last {@link GraphicsSwing#setStrokeStyle(int)}
+    */
    private int                 stroke;
 
+   /**
+    * Stroke style currently set in {@link GraphicsSwing#graphics}. -1 when unknown.
+    */
+   private int                 strokeApplied = -1;
+
+   /**
+    * {@link StrokeRegistrySwing#getFlags(int)} of {@link GraphicsSwing#stroke}
+    */
+   private int                 strokeFlags;
+
+   /**
+    * {@link StrokeRegistrySwing#getMargin(int)} of {@link GraphicsSwing#stroke}
+    */
+   private int                 strokeMargin  = 1;
+
+   private StrokeRegistrySwing strokes;
+
    private int                 translate_x;
 
    private int                 translate_y;
 
+   /**
+    * Reused by {@link GraphicsSwing#fillTriangle(int, int, int, int, int, int)}
+    */
+   private final int[]         triX      = new int[3];
+
+   private final int[]         triY      = new int[3];
+
+   /**
+    * Shadow clip intersected with the bounds of {@link GraphicsSwing#imageTarget}.
+    * <br>
+    * Draw calls whose bounds do not touch it are rejected before reaching Java2D. See {@link GraphicsSwing#isClipOut(int, int, int, int)}
+    */
+   private int                 visibleX0;
+
+   private int                 visibleX1;
+
+   private int                 visibleY0;
+
+   private int                 visibleY1;
+
    /**
     * When use, a call to {@link GraphicsSwing#setGraphics2D(Graphics2D)} must be made before using the object.
     * @param scc
     */
    public GraphicsSwing(CoreDrawSwingCtx scc) {
       super(scc);
+      colorCache = scc.getColorCacheSwing();
+      strokes = scc.getStrokeRegistrySwing();
+      metrics = scc.getRenderMetricsSwing();
+      strokeFlags = strokes.getFlags(ITechGraphics.SOLID);
       aInit();
    }
 
@@ -93,6 +284,10 @@ public class GraphicsSwing extends GraphicsJ2se implements IGraphics, IEventCons
     */
    public GraphicsSwing(CoreDrawSwingCtx scc, java.awt.Graphics2D g) {
       super(scc);
+      colorCache = scc.getColorCacheSwing();
+      strokes = scc.getStrokeRegistrySwing();
+      metrics = scc.getRenderMetricsSwing();
+      strokeFlags = strokes.getFlags(ITechGraphics.SOLID);
       setGraphics2D(g);
       aInit();
    }
@@ -105,6 +300,10 @@ public class GraphicsSwing extends GraphicsJ2se implements IGraphics, IEventCons
     */
    public GraphicsSwing(CoreDrawSwingCtx scc, java.awt.Graphics2D g, RenderingHints rendering) {
       super(scc);
+      colorCache = scc.getColorCacheSwing();
+      strokes = scc.getStrokeRegistrySwing();
+      metrics = scc.getRenderMetricsSwing();
+      strokeFlags = strokes.getFlags(ITechGraphics.SOLID);
       //register for ctx events
       setGraphics2D(g);
       aInit();
@@ -122,62 +321,82 @@ public class GraphicsSwing extends GraphicsJ2se implements IGraphics, IEventCons
       applySettingsAlias();
    }
 
+   /**
+    * Takes the alias modes of {@link IBOCtxSettingsCoreDraw}, as read once for all by the {@link GraphicsRegistrySwing},
+    * and applies the hints of the current {@link QualityGovernorSwing} level for them.
+    */
    public void applySettingsAlias() {
+      GraphicsRegistrySwing registry = getCDCSwing().getGraphicsRegistrySwing();
+      applySettingsAlias(registry.isAlias(), registry.isAliasText());
+   }
 
-      computedHints = new RenderingHints(null);
-      ByteObject tech = cdc.getBOCtxSettings();
-
-      int mode = tech.get1(IBOCtxSettingsCoreDraw.CTX_COREDRAW_OFFSET_02_MODE_ALIAS1);
-      applySettingsAlias(mode);
-
-      int modeText = tech.get1(IBOCtxSettingsCoreDraw.CTX_COREDRAW_OFFSET_03_MODE_TEXT_ALIAS1);
-      applySettingsAliasText(modeText);
-
+   /**
+    * Called by {@link GraphicsRegistrySwing#flush()}
+    * @param isAlias
+    * @param isAliasText
+    */
+   void applySettingsAlias(boolean isAlias, boolean isAliasText) {
+      isAliasSettings = isAlias;
+      isAliasSettingsText = isAliasText;
+      applyHints();
    }
 
    public void applySettingsAlias(int mode) {
-      Object hints = null;
       //#debug
       toDLog().pFlow("AliasMode=" + ToStringStaticCoreDraw.aliasMode(mode), this, GraphicsSwing.class, "applySettingsAlias@169", LVL_05_FINE, true);
-      if (mode == ITechGraphics.MODSET_APP_ALIAS_0_BEST || mode == ITechGraphics.MODSET_APP_ALIAS_1_ON) {
-         hints = RenderingHints.VALUE_ANTIALIAS_ON;
-      } else {
-         hints = RenderingHints.VALUE_ANTIALIAS_OFF;
-      }
-      RenderingHints rh = new RenderingHints(RenderingHints.KEY_ANTIALIASING, hints);
-      computedHints.add(rh);
-
+      isAliasSettings = isAliasOn(mode);
+      applyHints();
    }
 
    public void applySettingsAliasText(int mode) {
-      Object hints = null;
       //#debug
       toDLog().pFlow("AliasMode=" + ToStringStaticCoreDraw.aliasMode(mode), this, GraphicsSwing.class, "applySettingsAliasText@182", LVL_05_FINE, true);
-      if (mode == ITechGraphics.MODSET_APP_ALIAS_0_BEST || mode == ITechGraphics.MODSET_APP_ALIAS_1_ON) {
-         hints = RenderingHints.VALUE_TEXT_ANTIALIAS_ON;
-      } else {
-         hints = RenderingHints.VALUE_TEXT_ANTIALIAS_OFF;
+      isAliasSettingsText = isAliasOn(mode);
+      applyHints();
+   }
+
+   /**
+    * Takes the shared {@link RenderingHints} of the {@link QualityGovernorSwing} for the alias settings, and adds them
+    * to {@link GraphicsSwing#graphics} when they changed. No allocation.
+    * <br>
+    * Leaving a speed level, the speed keys are set back to their defaults.
+    */
+   private void applyHints() {
+      QualityGovernorSwing governor = getCDCSwing().getQualityGovernorSwing();
+      RenderingHints hints = governor.getHints(isAliasSettings, isAliasSettingsText);
+      if (hints != computedHints) {
+         RenderingHints previous = computedHints;
+         computedHints = hints;
+         if (graphics != null) {
+            if (previous != null && previous.containsKey(RenderingHints.KEY_RENDERING) && !hints.containsKey(RenderingHints.KEY_RENDERING)) {
+               graphics.addRenderingHints(governor.getHintsSpeedReset());
+            }
+            graphics.addRenderingHints(hints);
+         }
       }
-      RenderingHints textRendering = new RenderingHints(RenderingHints.KEY_TEXT_ANTIALIASING, hints);
-      computedHints.add(textRendering);
    }
 
-   public void clipRect(int x, int y, int width, int height) {
-      graphics.clipRect(x, y, width, height);
+   /**
+    * Adds the user space area x,y,w,h, clipped to the visible area, to {@link GraphicsSwing#damage}.
+    * <br>
+    * With a user transform, its device bounds are unknown and the whole surface is damaged.
+    */
+   private void addDamage(int x, int y, int w, int h) {
+      if (isTransformUser) {
+         damage.addAll();
+         return;
+      }
+      x += translate_x;
+      y += translate_y;
+      damage.addArea(Math.max(x, visibleX0), Math.max(y, visibleY0), Math.min(x + w, visibleX1), Math.min(y + h, visibleY1));
    }
 
-   public void consumeEvent(BusEvent e) {
-      if (e.getPID() == IEventsBO.PID_01_CTX) {
-         if (e.getEventID() == IEventsBO.PID_01_CTX_1_SETTINGS_CHANGE) {
-            int param1 = e.getParam1();
-            if (param1 == IEventsCoreDraw.SETTINGS_0_ALL) {
-               applySettings();
-               e.setActed();
-            } else if (param1 == IEventsCoreDraw.SETTINGS_1_ALIAS) {
-               applySettingsAlias();
-               e.setActed();
-            }
-         }
+   public void clipRect(int x, int y, int width, int height) {
+      graphics.clipRect(x, y, width, height);
+      if (!isTransformUser) {
+         int x0 = x + translate_x;
+         int y0 = y + translate_y;
+         setClipShadow(Math.max(x0, clipX0), Math.max(y0, clipY0), Math.min(x0 + width, clipX1), Math.min(y0 + height, clipY1));
       }
    }
 
@@ -185,6 +404,10 @@ public class GraphicsSwing extends GraphicsJ2se implements IGraphics, IEventCons
     * Copies the contents of a rectangular area (x_src, y_src, width, height) to a destination area, 
     * whose anchor point identified by anchor is located at (x_dest, y_dest).
     * Method is usefull to create repetitive background cheaply
+    * <br>
+    * All anchors of {@link GraphicsSwing#drawImage(IImage, int, int, int)} are supported except {@link ITechGraphics#BASELINE}. 0 is TOP | LEFT.
+    * <br>
+    * To scroll the content of an image in place, see {@link ImageSwing#scroll(int, int, int, int, int, int, int[])}
     * @param x_src
     * @param y_src
     * @param width
@@ -196,22 +419,104 @@ public class GraphicsSwing extends GraphicsJ2se implements IGraphics, IEventCons
     * @throws:
     * IllegalStateException - if the destination of this Graphics object is the display device 
     * IllegalArgumentException - if the region to be copied exceeds the bounds of the source image
+    * IllegalArgumentException - if anchor is not a valid anchor
     */
    public void copyArea(int x_src, int y_src, int width, int height, int x_dest, int y_dest, int anchor) {
-      //TODO do other anchors
-      if (anchor != (TOP | LEFT)) {
-         throw new RuntimeException("Anchor not implemented yet");
+      long start = meterStart();
+      try {
+         copyAreaPrivate(x_src, y_src, width, height, x_dest, y_dest, anchor);
+      } finally {
+         meterEnd(RenderMetricsSwing.OP_07_COPY_AREA, start, 1, RenderMetricsSwing.area(width, height));
+      }
+   }
+
+   private void copyAreaPrivate(int x_src, int y_src, int width, int height, int x_dest, int y_dest, int anchor) {
+      if (anchor == 0) {
+         anchor = TOP | LEFT;
+      }
+      if ((anchor & 0x7f) != anchor) {
+         throw new IllegalArgumentException("Bad Anchor");
+      }
+      switch (anchor & (TOP | BOTTOM | BASELINE | VCENTER)) {
+         case TOP:
+            break;
+         case BOTTOM:
+            y_dest -= height;
+            break;
+         case VCENTER:
+            y_dest -= height >> 1;
+            break;
+         default:
+            throw new IllegalArgumentException("Bad Anchor");
+      }
+      switch (anchor & (LEFT | RIGHT | HCENTER)) {
+         case LEFT:
+            break;
+         case RIGHT:
+            x_dest -= width;
+            break;
+         case HCENTER:
+            x_dest -= width >> 1;
+            break;
+         default:
+            throw new IllegalArgumentException("Bad Anchor");
       }
       int dx = x_dest - x_src;
       int dy = y_dest - y_src;
+      if (damage != null) {
+         addDamage(x_dest, y_dest, width, height);
+      }
+      validate(STATE_0_NONE);
       graphics.copyArea(x_src, y_src, width, height, dx, dy);
    }
 
+   /**
+    * Creates a {@link GraphicsSwing} drawing with g2 into the same image as this one, restricted to a device area.
+    * <br>
+    * The tile starts with the translation, clip, composite, rendering hints, color, font and stroke of this {@link GraphicsSwing},
+    * so that drawing the same calls on all tiles gives the pixels drawing them here would.
+    * <br>
+    * Used by {@link TiledRendererSwing}.
+    * @param g2 new {@link Graphics2D} of the {@link BufferedImage} of {@link GraphicsSwing#imageTarget}, disposed by the caller
+    * @param x device area
+    * @param y
+    * @param w
+    * @param h
+    * @return null when this {@link GraphicsSwing} is not {@link GraphicsSwing#isTileable()}
+    */
+   GraphicsSwing createTile(Graphics2D g2, int x, int y, int w, int h) {
+      if (!isTileable()) {
+         return null;
+      }
+      GraphicsSwing tile = new GraphicsSwing(getCDCSwing(), g2);
+      g2.setRenderingHints(graphics.getRenderingHints());
+      tile.setImageTarget(imageTarget);
+      tile.setTranslate(translate_x, translate_y);
+      tile.areaX0 = x;
+      tile.areaY0 = y;
+      tile.areaX1 = x + w;
+      tile.areaY1 = y + h;
+      tile.setClip(clipX0 - translate_x, clipY0 - translate_y, clipX1 - clipX0, clipY1 - clipY0);
+      if (composite != null) {
+         tile.setComposite(composite);
+      }
+      tile.setColor(color);
+      //font and stroke of a Graphics2D are only replaced once requested
+      tile.fontSwing = fontSwing;
+      if ((stateRequested & STATE_3_FONT) != 0) {
+         tile.setFont(fontSwing);
+      }
+      if ((stateRequested & STATE_2_STROKE) != 0) {
+         tile.setStrokeStyle(stroke);
+      }
+      return tile;
+   }
+
    /**
     * Called when {@link GraphicsSwing} is not used anymore
     */
    public void destroy() {
-      cdc.getBOC().getEventBus().removeConsumer(this);
+      getCDCSwing().getGraphicsRegistrySwing().unregister(this);
    }
 
    /**
@@ -273,23 +578,160 @@ public class GraphicsSwing extends GraphicsJ2se implements IGraphics, IEventCons
       xform.rotate(Math.PI / 8, srcImage.getWidth() / 2, srcImage.getHeight() / 2);
       g.transform(xform);
       g.fillRect(0, 0, srcImage.getWidth(), srcImage.getHeight());
+
+      //paint and transform were changed behind our back
+      if (damage != null) {
+         damage.addAll();
+      }
+      colorApplied = 0;
+      stateDirty |= STATE_1_COLOR;
+      isTransformUser = true;
    }
 
    public void drawArc(int x, int y, int w, int h, int sa, int aa) {
+      long start = meterStart();
+      try {
+         drawArcPrivate(x, y, w, h, sa, aa);
+      } finally {
+         meterEnd(RenderMetricsSwing.OP_06_OUTLINE, start, 1, RenderMetricsSwing.area(w, h));
+      }
+   }
+
+   private void drawArcPrivate(int x, int y, int w, int h, int sa, int aa) {
+      if (isClipOutStroke(x, y, w, h)) {
+         return;
+      }
+      validate(STATE_SHAPE);
       graphics.drawArc(x, y, w, h, sa, aa);
    }
 
    public void drawChar(char character, int x, int y, int anchor) {
-      drawString("" + character, x, y, anchor);
+      long start = meterStart();
+      try {
+         drawCharPrivate(character, x, y, anchor);
+      } finally {
+         meterEndText(start, character);
+      }
+   }
+
+   private void drawCharPrivate(char character, int x, int y, int anchor) {
+      GlyphAtlasSwing atlas = getGlyphAtlas();
+      if (atlas != null && GlyphAtlasSwing.isSimpleChar(character)) {
+         char[] one = charOne;
+         one[0] = character;
+         drawCharsAtlas(atlas, one, 0, 1, x, y, anchor);
+         return;
+      }
+      drawStringPrivate(String.valueOf(character), x, y, anchor);
    }
 
    public void drawChars(char[] data, int offset, int length, int x, int y, int anchor) {
+      long start = meterStart();
+      try {
+         drawCharsPrivate(data, offset, length, x, y, anchor);
+      } finally {
+         meterEndText(start, null, data, offset, length);
+      }
+   }
 
+   private void drawCharsPrivate(char[] data, int offset, int length, int x, int y, int anchor) {
+      GlyphAtlasSwing atlas = getGlyphAtlas();
+      if (atlas != null && isSimpleChars(null, data, offset, length)) {
+         drawCharsAtlas(atlas, data, offset, length, x, y, anchor);
+         return;
+      }
       String str = new String(data, offset, length);
-      drawString(str, x, y, anchor);
+      drawStringPrivate(str, x, y, anchor);
    }
 
+   private void drawCharsAtlas(GlyphAtlasSwing atlas, char[] data, int offset, int length, int x, int y, int anchor) {
+      if (anchor == 0) {
+         anchor = TOP | LEFT;
+      }
+      y = super.getFontY_Baseline(fontSwing, anchor, y);
+      if ((anchor & HCENTER) != 0) {
+         x -= fontSwing.charsWidth(data, offset, length) / 2;
+      } else if ((anchor & RIGHT) != 0) {
+         x -= fontSwing.charsWidth(data, offset, length);
+      }
+      if (isClipOutText(null, data, offset, length, x, y)) {
+         return;
+      }
+      drawGlyphs(atlas, null, data, offset, length, x, y);
+   }
+
+   /**
+    * Blits the glyphs of str or chars from the atlas. x,y is the left of the baseline
+    */
+   private void drawGlyphs(GlyphAtlasSwing atlas, String str, char[] chars, int offset, int length, int x, int y) {
+      validate(STATE_0_NONE);
+      int top = y - atlas.getCellAscent();
+      int cellH = atlas.getCellHeight();
+      int pad = atlas.getPad();
+      boolean isDirect = isRasterDirect();
+      BufferedImage dst = null;
+      int[] dstData = null;
+      int dstScan = 0;
+      boolean dstAlpha = false;
+      int cx0 = 0, cy0 = 0, cx1 = 0, cy1 = 0;
+      if (isDirect) {
+         dst = imageTarget.getImageSwing();
+         dstData = RasterOpsSwing.getData(dst);
+         dstScan = RasterOpsSwing.getStride(dst);
+         dstAlpha = dst.getType() == BufferedImage.TYPE_INT_ARGB;
+         //device clip
+         java.awt.Rectangle c = getClipBoundsUser();
+         cx0 = Math.max(c.x + translate_x, 0);
+         cy0 = Math.max(c.y + translate_y, 0);
+         cx1 = Math.min(c.x + c.width + translate_x, dst.getWidth());
+         cy1 = Math.min(c.y + c.height + translate_y, dst.getHeight());
+         if (cx0 >= cx1 || cy0 >= cy1) {
+            return;
+         }
+      }
+      int penX = x;
+      for (int i = 0; i < length; i++) {
+         char c = (str != null) ? str.charAt(offset + i) : chars[offset + i];
+         GlyphAtlasSwing.Page p = atlas.getPage(c);
+         int index = c & 0xFF;
+         int advance = p.advances[index];
+         if (p.inked[index]) {
+            int cw = advance + 2 * pad;
+            int gx = penX - pad;
+            int sx = p.cellX[index];
+            int sy = p.cellY[index];
+            if (isDirect) {
+               int dx0 = Math.max(gx + translate_x, cx0);
+               int dy0 = Math.max(top + translate_y, cy0);
+               int dx1 = Math.min(gx + cw + translate_x, cx1);
+               int dy1 = Math.min(top + cellH + translate_y, cy1);
+               if (dx0 < dx1 && dy0 < dy1) {
+                  int srcIndex = (sy + dy0 - top - translate_y) * GlyphAtlasSwing.PAGE_WIDTH + sx + dx0 - gx - translate_x;
+                  int dstIndex = RasterOpsSwing.getIndex(dst, dx0, dy0);
+                  RasterOpsSwing.copyBlend(p.data, srcIndex, GlyphAtlasSwing.PAGE_WIDTH, dstData, dstIndex, dstScan, dx1 - dx0, dy1 - dy0, true, dstAlpha);
+               }
+            } else {
+               graphics.drawImage(p.image, gx, top, gx + cw, top + cellH, sx, sy, sx + cw, sy + cellH, null);
+            }
+         }
+         penX += advance;
+      }
+   }
+
+   /**
+    * An int source is copied or blended directly into the raster when {@link GraphicsSwing#isRasterDirect()}.
+    * Otherwise only its visible part is given to Java2D.
+    */
    public void drawImage(IImage imgx, int x, int y, int anchor) {
+      long start = meterStart();
+      try {
+         drawImagePrivate(imgx, x, y, anchor);
+      } finally {
+         meterEnd(RenderMetricsSwing.OP_01_IMAGE, start, 1, RenderMetricsSwing.area(imgx.getWidth(), imgx.getHeight()));
+      }
+   }
+
+   private void drawImagePrivate(IImage imgx, int x, int y, int anchor) {
       ImageSwing img = (ImageSwing) imgx;
       // default anchor
       if (anchor == 0) {
@@ -322,80 +764,227 @@ public class GraphicsSwing extends GraphicsJ2se implements IGraphics, IEventCons
             break;
       }
 
-      graphics.drawImage(img.getImageSwing(), x, y, null);
+      if (img.isSolid() && isSolidFast()) {
+         if (!isClipOut(x, y, img.getWidth(), img.getHeight())) {
+            drawSolid(x, y, img.getWidth(), img.getHeight(), img.getColorSolid());
+         }
+         return;
+      }
+      BufferedImage bi = img.getImageSwing();
+      int w = bi.getWidth();
+      int h = bi.getHeight();
+      if (isClipOut(x, y, w, h)) {
+         return;
+      }
+      validate(STATE_0_NONE);
+      if (isRasterDirect() && RasterOpsSwing.isIntRaster(bi) && bi != imageTarget.getImageSwing()) {
+         BufferedImage dst = imageTarget.getImageSwing();
+         int x0 = Math.max(x + translate_x, visibleX0);
+         int y0 = Math.max(y + translate_y, visibleY0);
+         int x1 = Math.min(x + translate_x + w, visibleX1);
+         int y1 = Math.min(y + translate_y + h, visibleY1);
+         if (x0 < x1 && y0 < y1) {
+            int srcIndex = RasterOpsSwing.getIndex(bi, x0 - x - translate_x, y0 - y - translate_y);
+            int dstIndex = RasterOpsSwing.getIndex(dst, x0, y0);
+            boolean srcAlpha = bi.getType() == BufferedImage.TYPE_INT_ARGB;
+            boolean dstAlpha = dst.getType() == BufferedImage.TYPE_INT_ARGB;
+            RasterOpsSwing.copyBlend(RasterOpsSwing.getData(bi), srcIndex, RasterOpsSwing.getStride(bi), RasterOpsSwing.getData(dst), dstIndex, RasterOpsSwing.getStride(dst), x1 - x0, y1 - y0, srcAlpha, dstAlpha);
+         }
+         return;
+      }
+      if (!isTransformUser) {
+         //only the visible part of the source is given to Java2D
+         int x0 = Math.max(x, visibleX0 - translate_x);
+         int y0 = Math.max(y, visibleY0 - translate_y);
+         int x1 = Math.min(x + w, visibleX1 - translate_x);
+         int y1 = Math.min(y + h, visibleY1 - translate_y);
+         if (x0 != x || y0 != y || x1 != x + w || y1 != y + h) {
+            graphics.drawImage(bi, x0, y0, x1, y1, x0 - x, y0 - y, x1 - x, y1 - y, null);
+            return;
+         }
+      }
+      graphics.drawImage(bi, x, y, null);
    }
 
-   public void drawLine(int x1, int y1, int x2, int y2) {
-      graphics.drawLine(x1, y1, x2, y2);
+   /**
+    * Draws the w x h pixels argb of a {@link ImageSwing#isSolid()} image, as drawing the image would, without its pixels.
+    * <br>
+    * Caller checked {@link GraphicsSwing#isSolidFast()} and that the area is not clipped out.
+    * @param argb from {@link ImageSwing#getColorSolid()}
+    */
+   private void drawSolid(int x, int y, int w, int h, int argb) {
+      validate(STATE_0_NONE);
+      if ((argb >>> 24) == 0) {
+         return;
+      }
+      if (isRasterDirect()) {
+         BufferedImage dst = imageTarget.getImageSwing();
+         int x0 = Math.max(x + translate_x, visibleX0);
+         int y0 = Math.max(y + translate_y, visibleY0);
+         int x1 = Math.min(x + translate_x + w, visibleX1);
+         int y1 = Math.min(y + translate_y + h, visibleY1);
+         if (x0 < x1 && y0 < y1) {
+            boolean dstAlpha = dst.getType() == BufferedImage.TYPE_INT_ARGB;
+            RasterOpsSwing.fillBlend(RasterOpsSwing.getData(dst), RasterOpsSwing.getIndex(dst, x0, y0), RasterOpsSwing.getStride(dst), x1 - x0, y1 - y0, argb, dstAlpha);
+         }
+         return;
+      }
+      //a fill of a translucent color gives the pixels of a SrcOver drawImage of the same color
+      graphics.setColor(colorCache.getColorAlpha(argb));
+      graphics.fillRect(x, y, w, h);
+      colorApplied = argb;
+      if ((0xFF000000 | color) != argb) {
+         stateDirty |= STATE_1_COLOR;
+      }
    }
 
-   public void drawRect(int x, int y, int width, int height) {
-      graphics.drawRect(x, y, width, height);
+   /**
+    * Horizontal and vertical lines are filled as pixel runs when {@link GraphicsSwing#isStrokePixels(int)}
+    */
+   public void drawLine(int x1, int y1, int x2, int y2) {
+      long start = meterStart();
+      try {
+         drawLinePrivate(x1, y1, x2, y2);
+      } finally {
+         meterEnd(RenderMetricsSwing.OP_06_OUTLINE, start, 1, Math.max(Math.abs(x2 - x1), Math.abs(y2 - y1)) + 1);
+      }
    }
 
-   public void drawRegion(IImage srcx, int x_src, int y_src, int width, int height, int transform, int x_dst, int y_dst, int anchor) {
-      ImageSwing src = (ImageSwing) srcx;
-      // may throw NullPointerException, this is ok
-      if (x_src + width > src.getWidth() || y_src + height > src.getHeight() || width < 0 || height < 0 || x_src < 0 || y_src < 0) {
-         throw new IllegalArgumentException("Area out of Image");
+   private void drawLinePrivate(int x1, int y1, int x2, int y2) {
+      if (isClipOutStroke(Math.min(x1, x2), Math.min(y1, y2), Math.abs(x2 - x1), Math.abs(y2 - y1))) {
+         return;
       }
+      if ((x1 == x2 || y1 == y2) && isStrokePixels(StrokeRegistrySwing.FLAG_2_PIXELS_AA_LINE)) {
+         fillPixels(Math.min(x1, x2), Math.min(y1, y2), Math.abs(x2 - x1) + 1, Math.abs(y2 - y1) + 1);
+         return;
+      }
+      validate(STATE_SHAPE);
+      graphics.drawLine(x1, y1, x2, y2);
+   }
 
-      java.awt.Image img = src.getImageSwing();
-
-      java.awt.geom.AffineTransform t = new java.awt.geom.AffineTransform();
+   /**
+    * Draws count lines with the current stroke.
+    * <br>
+    * State is validated once for each run of consecutive lines of the same color.
+    * Lines are then drawn by {@link Graphics2D#drawLine(int, int, int, int)}, not as a {@link Path2D},
+    * because Java2D draws thin anti aliased lines as parallelograms and paths with its stroker:
+    * pixels would differ from {@link GraphicsSwing#drawLine(int, int, int, int)}.
+    * <br>
+    * The current color is not modified.
+    * @param xyxy x1,y1,x2,y2 of each line, from index offset * 4
+    * @param rgbs color of each line, from index offset. null for the current color
+    * @param offset index of the first line
+    * @param count number of lines
+    */
+   public void drawLines(int[] xyxy, int[] rgbs, int offset, int count) {
+      long start = meterStart();
+      try {
+         drawLinesPrivate(xyxy, rgbs, offset, count);
+      } finally {
+         meterEndArray(RenderMetricsSwing.OP_06_OUTLINE, start, xyxy, offset, count);
+      }
+   }
 
-      int dW = width, dH = height;
-      switch (transform) {
-         case IImage.TRANSFORM_0_NONE: {
-            break;
-         }
-         case IImage.TRANSFORM_5_ROT_90: {
-            t.translate((double) height, 0);
-            t.rotate(Math.PI / 2);
-            dW = height;
-            dH = width;
-            break;
+   private void drawLinesPrivate(int[] xyxy, int[] rgbs, int offset, int count) {
+      int colorSaved = color;
+      int end = offset + count;
+      int i = offset;
+      while (i < end) {
+         int runEnd = getRunEnd(rgbs, i, end);
+         if (rgbs != null) {
+            setColor(rgbs[i]);
          }
-         case IImage.TRANSFORM_3_ROT_180: {
-            t.translate(width, height);
-            t.rotate(Math.PI);
-            break;
+         validate(STATE_SHAPE);
+         for (; i < runEnd; i++) {
+            int k = i * 4;
+            int x1 = xyxy[k];
+            int y1 = xyxy[k + 1];
+            int x2 = xyxy[k + 2];
+            int y2 = xyxy[k + 3];
+            if (isClipOutStroke(Math.min(x1, x2), Math.min(y1, y2), Math.abs(x2 - x1), Math.abs(y2 - y1))) {
+               continue;
+            }
+            graphics.drawLine(x1, y1, x2, y2);
          }
-         case IImage.TRANSFORM_6_ROT_270: {
-            t.translate(0, width);
-            t.rotate(Math.PI * 3 / 2);
-            dW = height;
-            dH = width;
-            break;
+      }
+      setColor(colorSaved);
+   }
+
+   /**
+    * Filled as 4 pixel runs when {@link GraphicsSwing#isStrokePixels(int)}
+    */
+   public void drawRect(int x, int y, int width, int height) {
+      long start = meterStart();
+      try {
+         drawRectPrivate(x, y, width, height);
+      } finally {
+         meterEnd(RenderMetricsSwing.OP_06_OUTLINE, start, 1, 2L * (Math.abs(width) + Math.abs(height)));
+      }
+   }
+
+   private void drawRectPrivate(int x, int y, int width, int height) {
+      if (isClipOutStroke(x, y, width, height)) {
+         return;
+      }
+      if (isStrokePixels(StrokeRegistrySwing.FLAG_3_PIXELS_AA_RECT)) {
+         if (width < 0 || height < 0) {
+            validate(STATE_0_NONE);
+            return;
          }
-         case IImage.TRANSFORM_2_FLIP_V_MIRROR: {
-            t.translate(width, 0);
-            t.scale(-1, 1);
-            break;
+         fillPixels(x, y, width + 1, 1);
+         if (height > 0) {
+            fillPixels(x, y + height, width + 1, 1);
          }
-         case IImage.TRANSFORM_7_MIRROR_ROT90: {
-            t.translate((double) height, 0);
-            t.rotate(Math.PI / 2);
-            t.translate((double) width, 0);
-            t.scale(-1, 1);
-            dW = height;
-            dH = width;
-            break;
+         if (height > 1) {
+            fillPixels(x, y + 1, 1, height - 1);
+            if (width > 0) {
+               fillPixels(x + width, y + 1, 1, height - 1);
+            }
          }
-         case IImage.TRANSFORM_1_FLIP_H_MIRROR_ROT180: {
-            t.translate(width, 0);
-            t.scale(-1, 1);
-            t.translate(width, height);
-            t.rotate(Math.PI);
+         return;
+      }
+      validate(STATE_SHAPE);
+      graphics.drawRect(x, y, width, height);
+   }
+
+   /**
+    * The 8 MIDP transforms are done by index remapping between int rasters when the source is an int {@link ImageSwing}:
+    * <li> directly into the destination raster when {@link GraphicsSwing#isRasterDirect()}
+    * <li> otherwise through a transformed copy cached by {@link RegionCacheSwing} or built in a pooled scratch raster,
+    * drawn untransformed by Java2D.
+    * <br>
+    * The Java2D transformed image pipeline is only used when a user transform is active or the source is not an int raster.
+    */
+   public void drawRegion(IImage srcx, int x_src, int y_src, int width, int height, int transform, int x_dst, int y_dst, int anchor) {
+      long start = meterStart();
+      try {
+         drawRegionPrivate(srcx, x_src, y_src, width, height, transform, x_dst, y_dst, anchor);
+      } finally {
+         meterEnd(RenderMetricsSwing.OP_02_REGION, start, 1, RenderMetricsSwing.area(width, height));
+      }
+   }
+
+   private void drawRegionPrivate(IImage srcx, int x_src, int y_src, int width, int height, int transform, int x_dst, int y_dst, int anchor) {
+      ImageSwing src = (ImageSwing) srcx;
+      // may throw NullPointerException, this is ok
+      if (x_src + width > src.getWidth() || y_src + height > src.getHeight() || width < 0 || height < 0 || x_src < 0 || y_src < 0) {
+         throw new IllegalArgumentException("Area out of Image");
+      }
+
+      int dW = width, dH = height;
+      switch (transform) {
+         case IImage.TRANSFORM_0_NONE:
+         case IImage.TRANSFORM_3_ROT_180:
+         case IImage.TRANSFORM_2_FLIP_V_MIRROR:
+         case IImage.TRANSFORM_1_FLIP_H_MIRROR_ROT180:
             break;
-         }
-         case IImage.TRANSFORM_4_MIRROR_ROT270: {
-            t.rotate(Math.PI * 3 / 2);
-            t.scale(-1, 1);
+         case IImage.TRANSFORM_5_ROT_90:
+         case IImage.TRANSFORM_6_ROT_270:
+         case IImage.TRANSFORM_7_MIRROR_ROT90:
+         case IImage.TRANSFORM_4_MIRROR_ROT270:
             dW = height;
             dH = width;
             break;
-         }
          default:
             throw new IllegalArgumentException("Bad transform");
       }
@@ -447,6 +1036,137 @@ public class GraphicsSwing extends GraphicsJ2se implements IGraphics, IEventCons
       if (badAnchor)
          throw new IllegalArgumentException("Bad Anchor");
 
+      if (width == 0 || height == 0 || isClipOut(x_dst, y_dst, dW, dH)) {
+         return;
+      }
+      if (src.isSolid() && isSolidFast()) {
+         //all transforms of a solid area are the same
+         drawSolid(x_dst, y_dst, dW, dH, src.getColorSolid());
+         return;
+      }
+      validate(STATE_0_NONE);
+
+      BufferedImage img = src.getImageSwing();
+      if (isTransformUser || !RasterOpsSwing.isIntRaster(img)) {
+         drawRegionJava2D(img, x_src, y_src, width, height, transform, x_dst, y_dst);
+         return;
+      }
+      boolean srcAlpha = img.getType() == BufferedImage.TYPE_INT_ARGB;
+      RegionCacheSwing cache = getCDCSwing().getRegionCacheSwing();
+      if (isRasterDirect()) {
+         BufferedImage dst = imageTarget.getImageSwing();
+         if (dst == img) {
+            //overlapping read and write in the same raster
+            drawRegionJava2D(img, x_src, y_src, width, height, transform, x_dst, y_dst);
+            return;
+         }
+         //destination area clipped in device space
+         java.awt.Rectangle c = getClipBoundsUser();
+         int devX = x_dst + translate_x;
+         int devY = y_dst + translate_y;
+         int ix0 = Math.max(Math.max(x_dst, c.x) + translate_x, 0);
+         int iy0 = Math.max(Math.max(y_dst, c.y) + translate_y, 0);
+         int ix1 = Math.min(Math.min(x_dst + dW, c.x + c.width) + translate_x, dst.getWidth());
+         int iy1 = Math.min(Math.min(y_dst + dH, c.y + c.height) + translate_y, dst.getHeight());
+         if (ix0 >= ix1 || iy0 >= iy1) {
+            return;
+         }
+         int[] dstData = RasterOpsSwing.getData(dst);
+         int dstScan = RasterOpsSwing.getStride(dst);
+         int dstIndex = RasterOpsSwing.getIndex(dst, devX, devY);
+         boolean dstAlpha = dst.getType() == BufferedImage.TYPE_INT_ARGB;
+         BufferedImage copy = null;
+         if (transform != IImage.TRANSFORM_0_NONE) {
+            copy = cache.getRegion(img, src.getModCount(), x_src, y_src, width, height, transform);
+         }
+         if (copy != null) {
+            //cached copy is read row by row
+            int[] copyData = RasterOpsSwing.getData(copy);
+            int copyIndex = (iy0 - devY) * dW + (ix0 - devX);
+            int dstStart = RasterOpsSwing.getIndex(dst, ix0, iy0);
+            RasterOpsSwing.copyBlend(copyData, copyIndex, dW, dstData, dstStart, dstScan, ix1 - ix0, iy1 - iy0, srcAlpha, dstAlpha);
+         } else {
+            int[] srcData = RasterOpsSwing.getData(img);
+            int srcIndex = RasterOpsSwing.getIndex(img, x_src, y_src);
+            int srcScan = RasterOpsSwing.getStride(img);
+            RasterOpsSwing.copyTransform(srcData, srcIndex, srcScan, width, height, transform, dstData, dstIndex, dstScan, ix0 - devX, iy0 - devY, ix1 - devX, iy1 - devY, srcAlpha, dstAlpha, true);
+         }
+         return;
+      }
+      if (transform == IImage.TRANSFORM_0_NONE) {
+         graphics.drawImage(img, x_dst, y_dst, x_dst + width, y_dst + height, x_src, y_src, x_src + width, y_src + height, null);
+         return;
+      }
+      BufferedImage copy = cache.getRegion(img, src.getModCount(), x_src, y_src, width, height, transform);
+      if (copy != null) {
+         graphics.drawImage(copy, x_dst, y_dst, null);
+      } else {
+         ScratchRasterPoolSwing pool = getCDCSwing().getScratchRasterPoolSwing();
+         BufferedImage scratch = pool.acquire(dW, dH, srcAlpha);
+         int[] srcData = RasterOpsSwing.getData(img);
+         int srcIndex = RasterOpsSwing.getIndex(img, x_src, y_src);
+         int srcScan = RasterOpsSwing.getStride(img);
+         RasterOpsSwing.copyTransform(srcData, srcIndex, srcScan, width, height, transform, RasterOpsSwing.getData(scratch), 0, RasterOpsSwing.getStride(scratch), 0, 0, dW, dH, srcAlpha, srcAlpha, false);
+         graphics.drawImage(scratch, x_dst, y_dst, x_dst + dW, y_dst + dH, 0, 0, dW, dH, null);
+         pool.release(scratch);
+      }
+   }
+
+   /**
+    * Draws the region through the Java2D transformed image pipeline.
+    * <br>
+    * x_dst and y_dst are already corrected for the anchor.
+    */
+   private void drawRegionJava2D(java.awt.Image img, int x_src, int y_src, int width, int height, int transform, int x_dst, int y_dst) {
+      java.awt.geom.AffineTransform t = new java.awt.geom.AffineTransform();
+
+      switch (transform) {
+         case IImage.TRANSFORM_0_NONE: {
+            break;
+         }
+         case IImage.TRANSFORM_5_ROT_90: {
+            t.translate((double) height, 0);
+            t.rotate(Math.PI / 2);
+            break;
+         }
+         case IImage.TRANSFORM_3_ROT_180: {
+            t.translate(width, height);
+            t.rotate(Math.PI);
+            break;
+         }
+         case IImage.TRANSFORM_6_ROT_270: {
+            t.translate(0, width);
+            t.rotate(Math.PI * 3 / 2);
+            break;
+         }
+         case IImage.TRANSFORM_2_FLIP_V_MIRROR: {
+            t.translate(width, 0);
+            t.scale(-1, 1);
+            break;
+         }
+         case IImage.TRANSFORM_7_MIRROR_ROT90: {
+            t.translate((double) height, 0);
+            t.rotate(Math.PI / 2);
+            t.translate((double) width, 0);
+            t.scale(-1, 1);
+            break;
+         }
+         case IImage.TRANSFORM_1_FLIP_H_MIRROR_ROT180: {
+            t.translate(width, 0);
+            t.scale(-1, 1);
+            t.translate(width, height);
+            t.rotate(Math.PI);
+            break;
+         }
+         case IImage.TRANSFORM_4_MIRROR_ROT270: {
+            t.rotate(Math.PI * 3 / 2);
+            t.scale(-1, 1);
+            break;
+         }
+         default:
+            throw new IllegalArgumentException("Bad transform");
+      }
+
       java.awt.geom.AffineTransform savedT = graphics.getTransform();
 
       graphics.translate(x_dst, y_dst);
@@ -458,7 +1178,23 @@ public class GraphicsSwing extends GraphicsJ2se implements IGraphics, IEventCons
       graphics.setTransform(savedT);
    }
 
+   /**
+    * Only the part of the rgb area inside the clip is read.
+    * <br>
+    * When drawing into an int {@link ImageSwing} with a plain translation and the default composite, pixels are written directly in the destination raster.
+    * <br>
+    * Otherwise, pixels are copied into a pooled scratch raster from {@link ScratchRasterPoolSwing} drawn by Java2D.
+    */
    public void drawRGB(int[] rgbData, int offset, int scanlength, int x, int y, int width, int height, boolean processAlpha) {
+      long start = meterStart();
+      try {
+         drawRGBPrivate(rgbData, offset, scanlength, x, y, width, height, processAlpha);
+      } finally {
+         meterEnd(RenderMetricsSwing.OP_03_RGB, start, 1, RenderMetricsSwing.area(width, height));
+      }
+   }
+
+   private void drawRGBPrivate(int[] rgbData, int offset, int scanlength, int x, int y, int width, int height, boolean processAlpha) {
       if (rgbData == null)
          throw new NullPointerException();
       if (width == 0 || height == 0) {
@@ -467,20 +1203,74 @@ public class GraphicsSwing extends GraphicsJ2se implements IGraphics, IEventCons
       int l = rgbData.length;
       if (width < 0 || height < 0 || offset < 0 || offset >= l || (scanlength < 0 && scanlength * (height - 1) < 0) || (scanlength >= 0 && scanlength * (height - 1) + width - 1 >= l))
          throw new ArrayIndexOutOfBoundsException();
-      int imageType = BufferedImage.TYPE_INT_ARGB;
-      if (!processAlpha) {
-         imageType = BufferedImage.TYPE_INT_RGB;
+
+      if (isClipOut(x, y, width, height)) {
+         return;
+      }
+      validate(STATE_0_NONE);
+      //visible area in user space
+      java.awt.Rectangle c = getClipBoundsUser();
+      int vx0 = Math.max(x, c.x);
+      int vy0 = Math.max(y, c.y);
+      int vx1 = Math.min(x + width, c.x + c.width);
+      int vy1 = Math.min(y + height, c.y + c.height);
+      if (isRasterDirect()) {
+         //clip to the destination raster in device space
+         BufferedImage bi = imageTarget.getImageSwing();
+         vx0 = Math.max(vx0, -translate_x);
+         vy0 = Math.max(vy0, -translate_y);
+         vx1 = Math.min(vx1, bi.getWidth() - translate_x);
+         vy1 = Math.min(vy1, bi.getHeight() - translate_y);
+         if (vx0 >= vx1 || vy0 >= vy1) {
+            return;
+         }
+         int srcOffset = offset + (vy0 - y) * scanlength + (vx0 - x);
+         int[] dst = RasterOpsSwing.getData(bi);
+         int dstOffset = RasterOpsSwing.getIndex(bi, vx0 + translate_x, vy0 + translate_y);
+         boolean dstAlpha = bi.getType() == BufferedImage.TYPE_INT_ARGB;
+         RasterOpsSwing.copyBlend(rgbData, srcOffset, scanlength, dst, dstOffset, RasterOpsSwing.getStride(bi), vx1 - vx0, vy1 - vy0, processAlpha, dstAlpha);
+      } else {
+         if (vx0 >= vx1 || vy0 >= vy1) {
+            return;
+         }
+         int vw = vx1 - vx0;
+         int vh = vy1 - vy0;
+         int srcOffset = offset + (vy0 - y) * scanlength + (vx0 - x);
+         ScratchRasterPoolSwing pool = getCDCSwing().getScratchRasterPoolSwing();
+         BufferedImage scratch = pool.acquire(vw, vh, processAlpha);
+         RasterOpsSwing.copyRows(rgbData, srcOffset, scanlength, RasterOpsSwing.getData(scratch), 0, RasterOpsSwing.getStride(scratch), vw, vh);
+         graphics.drawImage(scratch, vx0, vy0, vx1, vy1, 0, 0, vw, vh, null);
+         pool.release(scratch);
       }
-      BufferedImage targetImage = new BufferedImage(width, height, imageType);
-      targetImage.setRGB(0, 0, width, height, rgbData, offset, scanlength);
-      graphics.drawImage(targetImage, x, y, null);
    }
 
    public void drawRoundRect(int x, int y, int w, int h, int r1, int r2) {
+      long start = meterStart();
+      try {
+         drawRoundRectPrivate(x, y, w, h, r1, r2);
+      } finally {
+         meterEnd(RenderMetricsSwing.OP_06_OUTLINE, start, 1, RenderMetricsSwing.area(w, h));
+      }
+   }
+
+   private void drawRoundRectPrivate(int x, int y, int w, int h, int r1, int r2) {
+      if (isClipOutStroke(x, y, w, h)) {
+         return;
+      }
+      validate(STATE_SHAPE);
       graphics.drawRoundRect(x, y, w, h, r1, r2);
    }
 
    public void drawString(String str, int x, int y, int anchor) {
+      long start = meterStart();
+      try {
+         drawStringPrivate(str, x, y, anchor);
+      } finally {
+         meterEndText(start, str, null, 0, str.length());
+      }
+   }
+
+   private void drawStringPrivate(String str, int x, int y, int anchor) {
       // default anchor
       if (anchor == 0) {
          anchor = TOP | LEFT;
@@ -489,10 +1279,28 @@ public class GraphicsSwing extends GraphicsJ2se implements IGraphics, IEventCons
       y = super.getFontY_Baseline(fontSwing, anchor, y);
       x = super.getFontX(fontSwing, anchor, x, str);
 
+      if (isClipOutText(str, null, 0, str.length(), x, y)) {
+         return;
+      }
+      GlyphAtlasSwing atlas = getGlyphAtlas();
+      if (atlas != null && isSimpleChars(str, null, 0, str.length())) {
+         drawGlyphs(atlas, str, null, 0, str.length(), x, y);
+         return;
+      }
+      validate(STATE_TEXT);
       graphics.drawString(str, x, y);
    }
 
    public void drawSubstring(String str, int offset, int len, int x, int y, int anchor) {
+      long start = meterStart();
+      try {
+         drawSubstringPrivate(str, offset, len, x, y, anchor);
+      } finally {
+         meterEndText(start, str, null, offset, len);
+      }
+   }
+
+   private void drawSubstringPrivate(String str, int offset, int len, int x, int y, int anchor) {
       drawString(str.substring(offset, offset + len), x, y, anchor);
    }
 
@@ -530,21 +1338,284 @@ public class GraphicsSwing extends GraphicsJ2se implements IGraphics, IEventCons
    }
 
    public void fillArc(int x, int y, int w, int h, int sa, int aa) {
+      long start = meterStart();
+      try {
+         fillArcPrivate(x, y, w, h, sa, aa);
+      } finally {
+         meterEnd(RenderMetricsSwing.OP_05_FILL_SHAPE, start, 1, RenderMetricsSwing.area(w, h));
+      }
+   }
+
+   private void fillArcPrivate(int x, int y, int w, int h, int sa, int aa) {
+      if (isClipOutShape(x, y, w, h)) {
+         return;
+      }
+      validate(STATE_1_COLOR);
       graphics.fillArc(x, y, w, h, sa, aa);
    }
 
+   /**
+    * Written directly in the raster when {@link GraphicsSwing#isRasterDirect()}.
+    * Java2D covers whole pixels of an integer rectangle, anti aliased or not.
+    */
    public void fillRect(int x, int y, int width, int height) {
+      long start = meterStart();
+      try {
+         fillRectPrivate(x, y, width, height);
+      } finally {
+         meterEnd(RenderMetricsSwing.OP_04_FILL_RECT, start, 1, RenderMetricsSwing.area(width, height));
+      }
+   }
+
+   private void fillRectPrivate(int x, int y, int width, int height) {
+      if (isClipOutShape(x, y, width, height)) {
+         return;
+      }
+      if (isRasterDirect()) {
+         validate(STATE_0_NONE);
+         BufferedImage dst = imageTarget.getImageSwing();
+         fillRectDirect(dst, RasterOpsSwing.getData(dst), RasterOpsSwing.getIndex(dst, 0, 0), RasterOpsSwing.getStride(dst), x, y, width, height, color);
+         return;
+      }
+      validate(STATE_1_COLOR);
       graphics.fillRect(x, y, width, height);
    }
 
+   /**
+    * Fills a rectangle of pixels with the current color, for outlines that {@link GraphicsSwing#isStrokePixels(int)}.
+    * <br>
+    * Written directly in the raster when {@link GraphicsSwing#isRasterDirect()}. Otherwise a {@link Graphics2D#fillRect(int, int, int, int)},
+    * which does not go through the stroker.
+    */
+   private void fillPixels(int x, int y, int w, int h) {
+      if (isRasterDirect()) {
+         validate(STATE_0_NONE);
+         BufferedImage dst = imageTarget.getImageSwing();
+         fillRectDirect(dst, RasterOpsSwing.getData(dst), RasterOpsSwing.getIndex(dst, 0, 0), RasterOpsSwing.getStride(dst), x, y, w, h, color);
+      } else {
+         validate(STATE_1_COLOR);
+         graphics.fillRect(x, y, w, h);
+      }
+   }
+
+   /**
+    * Sets the user space area x,y,w,h, clipped to the visible area, to the opaque rgb in the raster of {@link GraphicsSwing#imageTarget}.
+    * <br>
+    * Caller checked {@link GraphicsSwing#isRasterDirect()}. The high byte of {@link BufferedImage#TYPE_INT_RGB} pixels is left at 0.
+    * @param dst image of {@link GraphicsSwing#imageTarget}
+    * @param data raster of dst
+    * @param origin index of device pixel 0,0 in data
+    * @param scan stride of data
+    */
+   private void fillRectDirect(BufferedImage dst, int[] data, int origin, int scan, int x, int y, int w, int h, int rgb) {
+      if (w <= 0 || h <= 0) {
+         return;
+      }
+      int x0 = Math.max(x + translate_x, visibleX0);
+      int y0 = Math.max(y + translate_y, visibleY0);
+      int x1 = (int) Math.min((long) x + translate_x + w, visibleX1);
+      int y1 = (int) Math.min((long) y + translate_y + h, visibleY1);
+      if (x0 < x1 && y0 < y1) {
+         int value = (dst.getType() == BufferedImage.TYPE_INT_ARGB) ? 0xFF000000 | rgb : rgb & RasterOpsSwing.MASK_RGB;
+         RasterOpsSwing.fill(data, origin + y0 * scan + x0, scan, x1 - x0, y1 - y0, value);
+      }
+   }
+
+   /**
+    * Fills count rectangles.
+    * <br>
+    * When {@link GraphicsSwing#isRasterDirect()}, rectangles are written in a single pass into the raster of the image.
+    * Otherwise consecutive rectangles of the same color are filled as one {@link Path2D}.
+    * <br>
+    * The current color is not modified.
+    * @param xywh x,y,w,h of each rectangle, from index offset * 4
+    * @param rgbs color of each rectangle, from index offset. null for the current color
+    * @param offset index of the first rectangle
+    * @param count number of rectangles
+    */
+   public void fillRects(int[] xywh, int[] rgbs, int offset, int count) {
+      long start = meterStart();
+      try {
+         fillRectsPrivate(xywh, rgbs, offset, count);
+      } finally {
+         meterEndArray(RenderMetricsSwing.OP_04_FILL_RECT, start, xywh, offset, count);
+      }
+   }
+
+   private void fillRectsPrivate(int[] xywh, int[] rgbs, int offset, int count) {
+      int end = offset + count;
+      if (isRasterDirect()) {
+         validate(STATE_0_NONE);
+         BufferedImage dst = imageTarget.getImageSwing();
+         int[] data = RasterOpsSwing.getData(dst);
+         int scan = RasterOpsSwing.getStride(dst);
+         int origin = RasterOpsSwing.getIndex(dst, 0, 0);
+         for (int i = offset; i < end; i++) {
+            int k = i * 4;
+            int x = xywh[k];
+            int y = xywh[k + 1];
+            int w = xywh[k + 2];
+            int h = xywh[k + 3];
+            if (w <= 0 || h <= 0 || isClipOutShape(x, y, w, h)) {
+               continue;
+            }
+            fillRectDirect(dst, data, origin, scan, x, y, w, h, (rgbs == null) ? color : rgbs[i]);
+         }
+         return;
+      }
+      int colorSaved = color;
+      int i = offset;
+      while (i < end) {
+         int runEnd = getRunEnd(rgbs, i, end);
+         if (rgbs != null) {
+            setColor(rgbs[i]);
+         }
+         batchPath.reset();
+         for (; i < runEnd; i++) {
+            int k = i * 4;
+            int x = xywh[k];
+            int y = xywh[k + 1];
+            int w = xywh[k + 2];
+            int h = xywh[k + 3];
+            if (w <= 0 || h <= 0 || isClipOutShape(x, y, w, h)) {
+               continue;
+            }
+            batchPath.moveTo(x, y);
+            batchPath.lineTo(x + w, y);
+            batchPath.lineTo(x + w, y + h);
+            batchPath.lineTo(x, y + h);
+            batchPath.closePath();
+         }
+         if (batchPath.getCurrentPoint() != null) {
+            validate(STATE_1_COLOR);
+            graphics.fill(batchPath);
+         }
+      }
+      setColor(colorSaved);
+   }
+
    public void fillRoundRect(int x, int y, int w, int h, int r1, int r2) {
+      long start = meterStart();
+      try {
+         fillRoundRectPrivate(x, y, w, h, r1, r2);
+      } finally {
+         meterEnd(RenderMetricsSwing.OP_05_FILL_SHAPE, start, 1, RenderMetricsSwing.area(w, h));
+      }
+   }
+
+   private void fillRoundRectPrivate(int x, int y, int w, int h, int r1, int r2) {
+      if (isClipOutShape(x, y, w, h)) {
+         return;
+      }
+      validate(STATE_1_COLOR);
       graphics.fillRoundRect(x, y, w, h, r1, r2);
    }
 
    public void fillTriangle(int x1, int y1, int x2, int y2, int x3, int y3) {
-      int[] xPoints = new int[] { x1, x2, x3 };
-      int[] yPoints = new int[] { y1, y2, y3 };
-      graphics.fillPolygon(xPoints, yPoints, 3);
+      long start = meterStart();
+      try {
+         fillTrianglePrivate(x1, y1, x2, y2, x3, y3);
+      } finally {
+         meterEnd(RenderMetricsSwing.OP_05_FILL_SHAPE, start, 1, RenderMetricsSwing.triangleArea(x1, y1, x2, y2, x3, y3));
+      }
+   }
+
+   private void fillTrianglePrivate(int x1, int y1, int x2, int y2, int x3, int y3) {
+      int minX = Math.min(x1, Math.min(x2, x3));
+      int minY = Math.min(y1, Math.min(y2, y3));
+      int maxX = Math.max(x1, Math.max(x2, x3));
+      int maxY = Math.max(y1, Math.max(y2, y3));
+      if (isClipOutShape(minX, minY, maxX - minX, maxY - minY)) {
+         return;
+      }
+      triX[0] = x1;
+      triX[1] = x2;
+      triX[2] = x3;
+      triY[0] = y1;
+      triY[1] = y2;
+      triY[2] = y3;
+      validate(STATE_1_COLOR);
+      graphics.fillPolygon(triX, triY, 3);
+   }
+
+   /**
+    * Fills count triangles.
+    * <br>
+    * With anti aliased shapes, consecutive triangles of the same color are filled as one {@link Path2D}.
+    * Triangles are all wound the same way, so that overlapping ones do not cancel each other.
+    * <br>
+    * Without anti alias, Java2D fills paths with other rules than {@link Graphics2D#fillPolygon(int[], int[], int)}.
+    * Triangles are then filled one by one, state being validated once for each run.
+    * <br>
+    * The current color is not modified.
+    * @param xyxyxy x1,y1,x2,y2,x3,y3 of each triangle, from index offset * 6
+    * @param rgbs color of each triangle, from index offset. null for the current color
+    * @param offset index of the first triangle
+    * @param count number of triangles
+    */
+   public void fillTriangles(int[] xyxyxy, int[] rgbs, int offset, int count) {
+      long start = meterStart();
+      try {
+         fillTrianglesPrivate(xyxyxy, rgbs, offset, count);
+      } finally {
+         meterEndArray(RenderMetricsSwing.OP_05_FILL_SHAPE, start, xyxyxy, offset, count);
+      }
+   }
+
+   private void fillTrianglesPrivate(int[] xyxyxy, int[] rgbs, int offset, int count) {
+      boolean isAA = isAntiAliasShapes();
+      int colorSaved = color;
+      int end = offset + count;
+      int i = offset;
+      while (i < end) {
+         int runEnd = getRunEnd(rgbs, i, end);
+         if (rgbs != null) {
+            setColor(rgbs[i]);
+         }
+         batchPath.reset();
+         for (; i < runEnd; i++) {
+            int k = i * 6;
+            int x1 = xyxyxy[k];
+            int y1 = xyxyxy[k + 1];
+            int x2 = xyxyxy[k + 2];
+            int y2 = xyxyxy[k + 3];
+            int x3 = xyxyxy[k + 4];
+            int y3 = xyxyxy[k + 5];
+            int minX = Math.min(x1, Math.min(x2, x3));
+            int minY = Math.min(y1, Math.min(y2, y3));
+            int maxX = Math.max(x1, Math.max(x2, x3));
+            int maxY = Math.max(y1, Math.max(y2, y3));
+            if (isClipOutShape(minX, minY, maxX - minX, maxY - minY)) {
+               continue;
+            }
+            if (!isAA) {
+               triX[0] = x1;
+               triX[1] = x2;
+               triX[2] = x3;
+               triY[0] = y1;
+               triY[1] = y2;
+               triY[2] = y3;
+               validate(STATE_1_COLOR);
+               graphics.fillPolygon(triX, triY, 3);
+               continue;
+            }
+            batchPath.moveTo(x1, y1);
+            //cross product sign gives the winding
+            if ((long) (x2 - x1) * (y3 - y1) - (long) (y2 - y1) * (x3 - x1) >= 0) {
+               batchPath.lineTo(x2, y2);
+               batchPath.lineTo(x3, y3);
+            } else {
+               batchPath.lineTo(x3, y3);
+               batchPath.lineTo(x2, y2);
+            }
+            batchPath.closePath();
+         }
+         if (batchPath.getCurrentPoint() != null) {
+            validate(STATE_1_COLOR);
+            graphics.fill(batchPath);
+         }
+      }
+      setColor(colorSaved);
    }
 
    public int getBlueComponent() {
@@ -555,28 +1626,61 @@ public class GraphicsSwing extends GraphicsJ2se implements IGraphics, IEventCons
       return (CoreDrawSwingCtx) cdc;
    }
 
+   /**
+    * Reads the clip bounds in user space into {@link GraphicsSwing#clip} without allocation.
+    * <br>
+    * When there is no clip, a very large rectangle is returned.
+    * @return {@link GraphicsSwing#clip}
+    */
+   private java.awt.Rectangle getClipBoundsUser() {
+      if (!isTransformUser) {
+         //the visible area is also clipped to the target image, which callers do anyways
+         clip.setBounds(visibleX0 - translate_x, visibleY0 - translate_y, visibleX1 - visibleX0, visibleY1 - visibleY0);
+         return clip;
+      }
+      //getClipBounds leaves the rectangle untouched when there is no clip
+      clip.setBounds(CLIP_NONE_MIN, CLIP_NONE_MIN, Integer.MAX_VALUE >> 1, Integer.MAX_VALUE >> 1);
+      graphics.getClipBounds(clip);
+      return clip;
+   }
+
    public int getClipHeight() {
+      if (!isTransformUser) {
+         return clipY1 - clipY0;
+      }
       graphics.getClipBounds(clip);
       return clip.height;
    }
 
    public int getClipWidth() {
+      if (!isTransformUser) {
+         return clipX1 - clipX0;
+      }
       graphics.getClipBounds(clip);
       return clip.width;
    }
 
    public int getClipX() {
+      if (!isTransformUser) {
+         return clipX0 - translate_x;
+      }
       graphics.getClipBounds(clip);
       return clip.x;
    }
 
    public int getClipY() {
+      if (!isTransformUser) {
+         return clipY0 - translate_y;
+      }
       graphics.getClipBounds(clip);
       return clip.y;
    }
 
+   /**
+    * Color set by {@link GraphicsSwing#setColor(int)}. Alpha is always opaque
+    */
    public int getColor() {
-      return graphics.getColor().getRGB();
+      return 0xFF000000 | color;
    }
 
    /**
@@ -599,11 +1703,76 @@ public class GraphicsSwing extends GraphicsJ2se implements IGraphics, IEventCons
       return fontSwing;
    }
 
+   /**
+    * Image drawn into, null when unknown
+    * @return
+    */
+   ImageSwing getImageTarget() {
+      return imageTarget;
+   }
+
+   /**
+    * @return null when damage is not tracked
+    */
+   public DamageTrackerSwing getDamageTracker() {
+      return damage;
+   }
+
+   /**
+    * End of the run of primitives starting at start that share the color of start
+    * @param rgbs null when all primitives use the current color
+    * @param start
+    * @param end
+    * @return
+    */
+   private static int getRunEnd(int[] rgbs, int start, int end) {
+      if (rgbs == null) {
+         return end;
+      }
+      int rgb = rgbs[start] & 0xFFFFFF;
+      int i = start + 1;
+      while (i < end && (rgbs[i] & 0xFFFFFF) == rgb) {
+         i++;
+      }
+      return i;
+   }
+
    public int getGrayScale() {
       //TODO implement grayscaling
       return color;
    }
 
+   /**
+    * Atlas of the current font and color when {@link ITechHostFeatureDrawSwing#SUP_ID_100_TEXT_GLYPH_ATLAS} is enabled
+    * and text can be drawn as glyph blits:
+    * <li> no user transform
+    * <li> default composite
+    * <li> text anti alias on or off, no LCD modes
+    * <li> fractional metrics off
+    * @return null when text must be drawn by Java2D
+    */
+   private GlyphAtlasSwing getGlyphAtlas() {
+      if (!getCDCSwing().getHostFeatureDrawSwing().isTextGlyphAtlas() || isTransformUser) {
+         return null;
+      }
+      if (composite != null && (composite.getRule() != AlphaComposite.SRC_OVER || composite.getAlpha() != 1.0f)) {
+         return null;
+      }
+      Object aa = graphics.getRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING);
+      boolean isAntiAlias;
+      if (aa == RenderingHints.VALUE_TEXT_ANTIALIAS_ON) {
+         isAntiAlias = true;
+      } else if (aa == null || aa == RenderingHints.VALUE_TEXT_ANTIALIAS_OFF || aa == RenderingHints.VALUE_TEXT_ANTIALIAS_DEFAULT) {
+         isAntiAlias = false;
+      } else {
+         return null;
+      }
+      if (graphics.getRenderingHint(RenderingHints.KEY_FRACTIONALMETRICS) == RenderingHints.VALUE_FRACTIONALMETRICS_ON) {
+         return null;
+      }
+      return fontSwing.getGlyphAtlas(isAntiAlias, color);
+   }
+
    public int getGreenComponent() {
       return (color >> 8) & 0xFF;
    }
@@ -657,6 +1826,165 @@ public class GraphicsSwing extends GraphicsJ2se implements IGraphics, IEventCons
       return false;
    }
 
+   /**
+    * True when the user space area x,y,w,h cannot touch the shadow clip. Always false with a user transform.
+    * <br>
+    * Otherwise the area is about to be drawn and is added to the {@link DamageTrackerSwing} if any.
+    * @param x
+    * @param y
+    * @param w
+    * @param h
+    * @return
+    */
+   private boolean isClipOut(int x, int y, int w, int h) {
+      if (isClipOutArea(x, y, w, h)) {
+         return true;
+      }
+      if (damage != null) {
+         addDamage(x, y, w, h);
+      }
+      return false;
+   }
+
+   /**
+    * {@link GraphicsSwing#isClipOut(int, int, int, int)} without recording damage
+    */
+   private boolean isClipOutArea(int x, int y, int w, int h) {
+      if (isTransformUser) {
+         return false;
+      }
+      if (visibleX0 >= visibleX1 || visibleY0 >= visibleY1) {
+         return true;
+      }
+      x += translate_x;
+      y += translate_y;
+      return x >= visibleX1 || y >= visibleY1 || x + w <= visibleX0 || y + h <= visibleY0;
+   }
+
+   /**
+    * {@link GraphicsSwing#isClipOut(int, int, int, int)} for the bounds of a shape.
+    * <br>
+    * Bounds are grown by a pixel on each side, for the stroke and anti aliasing.
+    */
+   private boolean isClipOutShape(int x, int y, int w, int h) {
+      return isClipOut(x - 1, y - 1, w + 3, h + 3);
+   }
+
+   /**
+    * {@link GraphicsSwing#isClipOut(int, int, int, int)} for the bounds of an outline.
+    * <br>
+    * Bounds are grown by the {@link StrokeRegistrySwing#getMargin(int)} of the current stroke.
+    */
+   private boolean isClipOutStroke(int x, int y, int w, int h) {
+      int m = strokeMargin;
+      return isClipOut(x - m, y - m, w + 2 * m + 1, h + 2 * m + 1);
+   }
+
+   /**
+    * {@link GraphicsSwing#isClipOut(int, int, int, int)} for text whose baseline starts at x,y.
+    * <br>
+    * Vertical bounds are tested first. The width of the text is only measured when they touch the clip.
+    * Bounds are grown by half the font height for glyphs drawn outside ascent, descent and advance.
+    */
+   private boolean isClipOutText(String str, char[] chars, int offset, int length, int x, int y) {
+      if (isTransformUser) {
+         return false;
+      }
+      int pad = fontSwing.getHeight() >> 1;
+      int top = y - fontSwing.getAscent() - pad;
+      int h = fontSwing.getAscent() + fontSwing.getDescent() + 2 * pad;
+      if (isClipOutArea(x - pad, top, CLIP_NONE_MAX, h)) {
+         return true;
+      }
+      int width = (str != null) ? fontSwing.substringWidth(str, offset, length) : fontSwing.charsWidth(chars, offset, length);
+      return isClipOut(x - pad, top, width + 2 * pad, h);
+   }
+
+   private boolean isSimpleChars(String str, char[] chars, int offset, int length) {
+      for (int i = 0; i < length; i++) {
+         char c = (str != null) ? str.charAt(offset + i) : chars[offset + i];
+         if (!GlyphAtlasSwing.isSimpleChar(c)) {
+            return false;
+         }
+      }
+      return true;
+   }
+
+   /**
+    * True when the MODSET_APP_ALIAS_ mode turns anti alias on
+    */
+   private static boolean isAliasOn(int mode) {
+      return mode == ITechGraphics.MODSET_APP_ALIAS_0_BEST || mode == ITechGraphics.MODSET_APP_ALIAS_1_ON;
+   }
+
+   public boolean isAntiAliasShapes() {
+      return graphics.getRenderingHint(RenderingHints.KEY_ANTIALIASING) == RenderingHints.VALUE_ANTIALIAS_ON;
+   }
+
+   /**
+    * True when Java2D would draw horizontal and vertical outlines with the current stroke as exact pixel runs,
+    * so that {@link GraphicsSwing#fillPixels(int, int, int, int)} gives the same pixels without the stroker.
+    * <br>
+    * Without anti alias, {@link StrokeRegistrySwing#FLAG_1_PIXELS} is enough. With anti alias, flagAA is needed,
+    * and the stroke control must not be {@link RenderingHints#VALUE_STROKE_PURE}: flagAA holds for normalized strokes only.
+    * Only when drawing into an image without user transform, so that 1 unit is 1 pixel.
+    * @param flagAA {@link StrokeRegistrySwing#FLAG_2_PIXELS_AA_LINE} for lines, {@link StrokeRegistrySwing#FLAG_3_PIXELS_AA_RECT} for rectangles
+    * @return
+    */
+   private boolean isStrokePixels(int flagAA) {
+      if (imageTarget == null || isTransformUser) {
+         return false;
+      }
+      if (isAntiAliasShapes()) {
+         if (graphics.getRenderingHint(RenderingHints.KEY_STROKE_CONTROL) == RenderingHints.VALUE_STROKE_PURE) {
+            return false;
+         }
+         return (strokeFlags & flagAA) != 0;
+      }
+      return (strokeFlags & StrokeRegistrySwing.FLAG_1_PIXELS) != 0;
+   }
+
+   /**
+    * True when drawing can be split in tiles by {@link GraphicsSwing#createTile(Graphics2D, int, int, int, int)}:
+    * this {@link GraphicsSwing} draws into an image, with a plain translation.
+    * @return
+    */
+   public boolean isTileable() {
+      return imageTarget != null && !isTransformUser;
+   }
+
+   /**
+    * True when pixels may be written directly into the raster of {@link GraphicsSwing#imageTarget}.
+    * <br>
+    * <li> destination is a {@link BufferedImage#TYPE_INT_ARGB} or {@link BufferedImage#TYPE_INT_RGB} image
+    * <li> transform is a plain translation set by {@link GraphicsSwing#setTranslate(int, int)}
+    * <li> composite is the default SrcOver with full alpha
+    * @return
+    */
+   private boolean isRasterDirect() {
+      if (imageTarget == null || isTransformUser || !isCompositeSrcOver()) {
+         return false;
+      }
+      return RasterOpsSwing.isIntRaster(imageTarget.getImageSwing());
+   }
+
+   /**
+    * True when the composite is the default SrcOver with full alpha
+    * @return
+    */
+   private boolean isCompositeSrcOver() {
+      return composite == null || (composite.getRule() == AlphaComposite.SRC_OVER && composite.getAlpha() == 1.0f);
+   }
+
+   /**
+    * True when a {@link ImageSwing#isSolid()} image is drawn by {@link GraphicsSwing#drawSolid(int, int, int, int, int)}:
+    * no user transform and the default composite
+    * @return
+    */
+   private boolean isSolidFast() {
+      return !isTransformUser && isCompositeSrcOver();
+   }
+
    /**
     * <li> {@link ITechGraphics#IMPL_FLAG_1_ANTI_ALIAS}
     * 
@@ -667,29 +1995,142 @@ public class GraphicsSwing extends GraphicsJ2se implements IGraphics, IEventCons
    }
 
    /**
-    * This method pins the {@link GraphicsSwing} into memory.
+    * Ends the measure of a draw call started by {@link GraphicsSwing#meterStart()}. Does nothing when start is 0.
+    * <br>
+    * pixels is evaluated before the time is read, and when not measuring: only for cheap arithmetic.
+    */
+   private void meterEnd(int op, long start, int calls, long pixels) {
+      if (start == 0) {
+         return;
+      }
+      metrics.add(op, meterNanos(start), calls, pixels);
+   }
+
+   /**
+    * {@link GraphicsSwing#meterEnd(int, long, int, long)} of count lines, rectangles or triangles of a,
+    * as read by the op of {@link RenderMetricsSwing}. Pixels are counted after the time is read.
+    */
+   private void meterEndArray(int op, long start, int[] a, int offset, int count) {
+      if (start == 0) {
+         return;
+      }
+      long nanos = meterNanos(start);
+      long pixels;
+      if (op == RenderMetricsSwing.OP_06_OUTLINE) {
+         pixels = RenderMetricsSwing.linesPixels(a, offset, count);
+      } else if (op == RenderMetricsSwing.OP_04_FILL_RECT) {
+         pixels = RenderMetricsSwing.rectsPixels(a, offset, count);
+      } else {
+         pixels = RenderMetricsSwing.trianglesPixels(a, offset, count);
+      }
+      metrics.add(op, nanos, count, pixels);
+   }
+
+   /**
+    * {@link GraphicsSwing#meterEnd(int, long, int, long)} of a char. The width is measured after the time is read
+    */
+   private void meterEndText(long start, char c) {
+      if (start == 0) {
+         return;
+      }
+      long nanos = meterNanos(start);
+      metrics.add(RenderMetricsSwing.OP_00_TEXT, nanos, 1, RenderMetricsSwing.area(fontSwing.charWidth(c), fontSwing.getHeight()));
+   }
+
+   /**
+    * {@link GraphicsSwing#meterEnd(int, long, int, long)} of the text of str, or chars when str is null.
+    * The width is measured after the time is read
+    */
+   private void meterEndText(long start, String str, char[] chars, int offset, int length) {
+      if (start == 0) {
+         return;
+      }
+      long nanos = meterNanos(start);
+      int w = (str != null) ? fontSwing.substringWidth(str, offset, length) : fontSwing.charsWidth(chars, offset, length);
+      metrics.add(RenderMetricsSwing.OP_00_TEXT, nanos, 1, RenderMetricsSwing.area(w, fontSwing.getHeight()));
+   }
+
+   /**
+    * Reads the end time of the measure started at start
+    */
+   private long meterNanos(long start) {
+      long nanos = System.nanoTime() - start;
+      isMetering = false;
+      return nanos;
+   }
+
+   /**
+    * Starts the measure of a draw call, to be ended in a finally block by a meterEnd method
+    * @return 0 when not measured: metrics are off, or this draw call is made by a measured one
+    */
+   private long meterStart() {
+      if (metrics == null || isMetering) {
+         return 0;
+      }
+      isMetering = true;
+      return System.nanoTime();
+   }
+
+   /**
+    * Follows the settings changes of the ctx through its {@link GraphicsRegistrySwing}.
+    * <br>
+    * The {@link GraphicsSwing} is weakly referenced: it is not pinned into memory, {@link GraphicsSwing#destroy()} is optional.
     */
    public void registerForChanges() {
-      int pid = IEventsBO.PID_01_CTX;
-      int eid = IEventsBO.PID_01_CTX_1_SETTINGS_CHANGE;
-      cdc.getBOC().getEventBus().addConsumer(this, pid, eid, ITechThread.THREAD_MODE_1_MAIN_NOW);
+      getCDCSwing().getGraphicsRegistrySwing().register(this);
    }
 
    public void setClip(int x, int y, int width, int height) {
       graphics.setClip(x, y, width, height);
+      if (areaX0 != CLIP_NONE_MIN) {
+         //a tile never draws outside its area
+         graphics.clipRect(areaX0 - translate_x, areaY0 - translate_y, areaX1 - areaX0, areaY1 - areaY0);
+      }
+      if (!isTransformUser) {
+         int x0 = x + translate_x;
+         int y0 = y + translate_y;
+         setClipShadow(x0, y0, x0 + width, y0 + height);
+      }
    }
 
+   /**
+    * Sets the shadow clip and computes the visible area. Negative sizes give an empty clip
+    */
+   private void setClipShadow(int x0, int y0, int x1, int y1) {
+      clipX0 = x0;
+      clipY0 = y0;
+      clipX1 = Math.max(x0, x1);
+      clipY1 = Math.max(y0, y1);
+      visibleX0 = Math.max(clipX0, areaX0);
+      visibleY0 = Math.max(clipY0, areaY0);
+      visibleX1 = Math.max(visibleX0, Math.min(clipX1, areaX1));
+      visibleY1 = Math.max(visibleY0, Math.min(clipY1, areaY1));
+      if (imageTarget != null) {
+         visibleX0 = Math.max(visibleX0, 0);
+         visibleY0 = Math.max(visibleY0, 0);
+         visibleX1 = Math.max(visibleX0, Math.min(visibleX1, imageTarget.getWidth()));
+         visibleY1 = Math.max(visibleY0, Math.min(visibleY1, imageTarget.getHeight()));
+      }
+   }
+
+   /**
+    * Only records the color. It is pushed to the AWT {@link Graphics2D} by the next draw operation that needs it.
+    */
    public void setColor(int RGB) {
       color = RGB;
-      graphics.setColor(new java.awt.Color(RGB));
+      if ((0xFF000000 | RGB) == colorApplied) {
+         stateDirty &= ~STATE_1_COLOR;
+      } else {
+         stateDirty |= STATE_1_COLOR;
+      }
    }
 
    public void setColor(int red, int green, int blue) {
-      color = ColorUtils.getRGBInt(red, green, blue);
-      graphics.setColor(new java.awt.Color(red, green, blue));
+      setColor(ColorUtils.getRGBInt(red, green, blue));
    }
 
    public void setComposite(AlphaComposite instance) {
+      composite = instance;
       graphics.setComposite(instance);
    }
 
@@ -700,17 +2141,73 @@ public class GraphicsSwing extends GraphicsJ2se implements IGraphics, IEventCons
       if (this.fontSwing == null) {
          this.fontSwing = (FontSwing) cdc.getFontFactory().getDefaultFont();
       }
-      graphics.setFont(this.fontSwing.getFontAWT());
+      stateRequested |= STATE_3_FONT;
+      if (this.fontSwing.getFontAWT() == fontApplied) {
+         stateDirty &= ~STATE_3_FONT;
+      } else {
+         stateDirty |= STATE_3_FONT;
+      }
    }
 
    /**
     * Sets the {@link Graphics2D} for this class and apply settings to it 
+    * <br>
+    * The translation of {@link GraphicsSwing#setTranslate(int, int)} was applied to the previous {@link Graphics2D}. It is reset to 0.
     * @param g
     */
    public void setGraphics2D(java.awt.Graphics2D g) {
+      //pending settings are read for this GraphicsSwing only. A tile must not push them into the Graphics2D of others
+      if (getCDCSwing().getGraphicsRegistrySwing().isPending()) {
+         computedHints = null;
+      }
       graphics = g;
+      imageTarget = null;
+      composite = null;
+      translate_x = 0;
+      translate_y = 0;
+      //a scaled or rotated Graphics2D, for instance on a HiDPI screen, is a user transform
+      isTransformUser = (g.getTransform().getType() & ~AffineTransform.TYPE_TRANSLATION) != 0;
+      if (!isTransformUser) {
+         java.awt.Rectangle r = g.getClipBounds();
+         if (r == null) {
+            setClipShadow(CLIP_NONE_MIN, CLIP_NONE_MIN, CLIP_NONE_MAX, CLIP_NONE_MAX);
+         } else {
+            setClipShadow(r.x, r.y, r.x + r.width, r.y + r.height);
+         }
+      }
       RenderingHints hints = getHints();
       graphics.addRenderingHints(hints);
+
+      //state of the new Graphics2D is read once. Requested font and stroke are pushed again if any
+      Color c = g.getColor();
+      color = c.getRGB();
+      //a translucent Color of the caller is not the opaque color setColor would push
+      colorApplied = c.getAlpha() == 255 ? color : 0;
+      fontApplied = null;
+      strokeApplied = -1;
+      stateDirty = stateRequested & (STATE_2_STROKE | STATE_3_FONT);
+   }
+
+   /**
+    * Starts recording the bounds of draw calls into tracker. null stops it.
+    * <br>
+    * Bounds are in the space of the {@link Graphics2D} without {@link GraphicsSwing#setTranslate(int, int)},
+    * the pixels of {@link GraphicsSwing#imageTarget} when drawing into an {@link ImageSwing}.
+    * @param tracker
+    */
+   public void setDamageTracker(DamageTrackerSwing tracker) {
+      damage = tracker;
+   }
+
+   /**
+    * Tells this {@link GraphicsSwing} that its {@link Graphics2D} was created by the {@link BufferedImage} of img.
+    * <br>
+    * Enables operations that write directly into the image raster.
+    * @param img
+    */
+   void setImageTarget(ImageSwing img) {
+      imageTarget = img;
+      setClipShadow(clipX0, clipY0, clipX1, clipY1);
    }
 
    public void setGrayScale(int v) {
@@ -739,18 +2236,67 @@ public class GraphicsSwing extends GraphicsJ2se implements IGraphics, IEventCons
 
    /**
     * Stroke style for line drawing isn't something AWT supports.
-    * 
+    * <br>
+    * style is {@link ITechGraphics#SOLID}, {@link ITechGraphics#DOTTED} or an id from {@link StrokeRegistrySwing#register(float, int, int, float[])}.
+    * Unknown styles draw solid.
+    * <br>
+    * Only records the style. The shared {@link java.awt.BasicStroke} is pushed by the next outline draw operation.
     */
    public void setStrokeStyle(int style) {
-      Stroke str = graphics.getStroke();
-      //System.out.println(((BasicStroke) str).getLineWidth());
-      if (style == ITechGraphics.DOTTED) {
-         gStroke = new BasicStroke(1.0f, BasicStroke.CAP_SQUARE, BasicStroke.JOIN_BEVEL, 1.0f, new float[] { 2.0f }, 1.0f);
+      stroke = style;
+      strokeFlags = strokes.getFlags(style);
+      strokeMargin = strokes.getMargin(style);
+      stateRequested |= STATE_2_STROKE;
+      if (style == strokeApplied) {
+         stateDirty &= ~STATE_2_STROKE;
       } else {
-         gStroke = new BasicStroke(1.0f, BasicStroke.CAP_SQUARE, BasicStroke.JOIN_BEVEL);
+         stateDirty |= STATE_2_STROKE;
       }
-      graphics.setStroke(gStroke);
-      stroke = style;
+   }
+
+   /**
+    * translate needs to remember the current translation, since AWT doesn't provide getTranslate methods.
+    * <br>
+    * The shadow clip is kept untranslated, so it does not change.
+    */
+   public void setTranslate(int x, int y) {
+      graphics.translate(-translate_x, -translate_y);
+      translate_x += x;
+      translate_y += y;
+      graphics.translate(translate_x, translate_y);
+   }
+
+   /**
+    * Pushes to {@link GraphicsSwing#graphics} the requested state flagged in mask that differs from what it is set with.
+    * <br>
+    * Called by all draw operations just before calling the AWT {@link Graphics2D}.
+    * Also marks {@link GraphicsSwing#imageTarget} as modified, and unshares its raster, see {@link ImageSwing#unshare()}.
+    * <br>
+    * No allocation. {@link Color} objects come from the {@link ColorCacheSwing} of the ctx.
+    * @param mask
+    */
+   private void validate(int mask) {
+      if (imageTarget != null) {
+         imageTarget.modCount++;
+         imageTarget.unshare();
+      }
+      int bits = stateDirty & mask;
+      if (bits == 0) {
+         return;
+      }
+      if ((bits & STATE_1_COLOR) != 0) {
+         graphics.setColor(colorCache.getColor(color));
+         colorApplied = 0xFF000000 | color;
+      }
+      if ((bits & STATE_2_STROKE) != 0) {
+         graphics.setStroke(strokes.getStroke(stroke));
+         strokeApplied = stroke;
+      }
+      if ((bits & STATE_3_FONT) != 0) {
+         fontApplied = fontSwing.getFontAWT();
+         graphics.setFont(fontApplied);
+      }
+      stateDirty &= ~bits;
    }
 
    //#mdebug
@@ -779,16 +2325,6 @@ public class GraphicsSwing extends GraphicsJ2se implements IGraphics, IEventCons
 
    }
 
-   /**
-    * translate needs to remember the current translation, since AWT doesn't provide getTranslate methods.
-    */
-   public void setTranslate(int x, int y) {
-      graphics.translate(-translate_x, -translate_y);
-      translate_x += x;
-      translate_y += y;
-      graphics.translate(translate_x, translate_y);
-   }
-
    //#enddebug
 
 }
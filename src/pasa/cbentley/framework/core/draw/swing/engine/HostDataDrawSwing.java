@@ -3,8 +3,8 @@ package pasa.cbentley.framework.core.draw.swing.engine;
 import pasa.cbentley.core.src4.interfaces.IHostData;
 import pasa.cbentley.framework.core.draw.j2se.engine.HostDataDrawJ2se;
 import pasa.cbentley.framework.core.draw.swing.ctx.CoreDrawSwingCtx;
+import pasa.cbentley.framework.core.draw.swing.ctx.ITechHostDataDrawSwing;
 import pasa.cbentley.framework.coredraw.src4.ctx.ObjectCDC;
-import pasa.cbentley.framework.coredraw.src4.interfaces.ITechHostDataDraw;
 
 /**
  * This class deals with all HostData, from Draw, UI and Core.
@@ -13,10 +13,13 @@ import pasa.cbentley.framework.coredraw.src4.interfaces.ITechHostDataDraw;
  * @author Charles Bentley
  *
  */
-public class HostDataDrawSwing extends HostDataDrawJ2se implements IHostData, ITechHostDataDraw {
+public class HostDataDrawSwing extends HostDataDrawJ2se implements IHostData, ITechHostDataDrawSwing {
+
+   protected final CoreDrawSwingCtx cdcSwing;
 
    public HostDataDrawSwing(CoreDrawSwingCtx cdc) {
       super(cdc);
+      this.cdcSwing = cdc;
    }
 
    public float getHostDataFloat(int dataID) {
@@ -28,6 +31,12 @@ public class HostDataDrawSwing extends HostDataDrawJ2se implements IHostData, IT
 
    public int getHostDataInt(int dataID) {
       switch (dataID) {
+         case DATA_ID_INT_101_RENDER_FRAME_MICROS:
+            RenderMetricsSwing m = cdcSwing.getRenderMetricsSwing();
+            if (m == null) {
+               return 0;
+            }
+            return (int) (m.getFrameNanos() / 1000);
          default:
             return super.getHostDataInt(dataID);
       }
@@ -35,6 +44,12 @@ public class HostDataDrawSwing extends HostDataDrawJ2se implements IHostData, IT
 
    public Object getHostDataObject(int dataID) {
       switch (dataID) {
+         case DATA_ID_OBJ_100_RENDER_METRICS:
+            RenderMetricsSwing m = cdcSwing.getRenderMetricsSwing();
+            if (m == null) {
+               return null;
+            }
+            return m.getSnapshot();
          default:
             return super.getHostDataObject(dataID);
       }
@@ -3,9 +3,9 @@ package pasa.cbentley.framework.core.draw.swing.engine;
 import pasa.cbentley.core.src4.interfaces.IHostFeature;
 import pasa.cbentley.framework.core.draw.j2se.engine.HostFeatureDrawJ2se;
 import pasa.cbentley.framework.core.draw.swing.ctx.CoreDrawSwingCtx;
+import pasa.cbentley.framework.core.draw.swing.ctx.ITechHostFeatureDrawSwing;
 import pasa.cbentley.framework.coredraw.src4.ctx.IBOCtxSettingsCoreDraw;
 import pasa.cbentley.framework.coredraw.src4.interfaces.ITechGraphics;
-import pasa.cbentley.framework.coredraw.src4.interfaces.ITechHostFeatureDraw;
 
 /**
  * This class deals with all HostData, from Draw, UI and Core.
@@ -14,14 +14,30 @@ import pasa.cbentley.framework.coredraw.src4.interfaces.ITechHostFeatureDraw;
  * @author Charles Bentley
  *
  */
-public class HostFeatureDrawSwing extends HostFeatureDrawJ2se implements IHostFeature, ITechHostFeatureDraw, IBOCtxSettingsCoreDraw {
+public class HostFeatureDrawSwing extends HostFeatureDrawJ2se implements IHostFeature, ITechHostFeatureDrawSwing, IBOCtxSettingsCoreDraw {
+
+   /**
+    * {@link ITechHostFeatureDrawSwing#SUP_ID_100_TEXT_GLYPH_ATLAS}
+    */
+   private boolean isTextGlyphAtlas;
 
    public HostFeatureDrawSwing(CoreDrawSwingCtx cdc) {
       super(cdc);
    }
 
+   /**
+    * Fast read of {@link ITechHostFeatureDrawSwing#SUP_ID_100_TEXT_GLYPH_ATLAS} for draw operations
+    * @return
+    */
+   public boolean isTextGlyphAtlas() {
+      return isTextGlyphAtlas;
+   }
+
    public boolean setHostFeatureEnabled(int featureID, boolean b) {
       switch (featureID) {
+         case SUP_ID_100_TEXT_GLYPH_ATLAS:
+            isTextGlyphAtlas = b;
+            return true;
          default:
             return super.setHostFeatureEnabled(featureID, b);
       }
@@ -36,6 +52,8 @@ public class HostFeatureDrawSwing extends HostFeatureDrawJ2se implements IHostFe
 
    public boolean isHostFeatureSupported(int featureID) {
       switch (featureID) {
+         case SUP_ID_100_TEXT_GLYPH_ATLAS:
+            return true;
          default:
             return super.isHostFeatureSupported(featureID);
       }
@@ -43,6 +61,8 @@ public class HostFeatureDrawSwing extends HostFeatureDrawJ2se implements IHostFe
 
    public boolean isHostFeatureEnabled(int featureID) {
       switch (featureID) {
+         case SUP_ID_100_TEXT_GLYPH_ATLAS:
+            return isTextGlyphAtlas;
          default:
             return super.isHostFeatureEnabled(featureID);
       }
@@ -0,0 +1,264 @@
+/*
+ * (c) 2018-2020 Charles-Philip Bentley
+ * This code is licensed under MIT license (see LICENSE.txt for details)
+ */
+package pasa.cbentley.framework.core.draw.swing.engine;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import pasa.cbentley.core.src4.logging.Dctx;
+import pasa.cbentley.framework.core.draw.swing.ctx.ConfigCoreDrawSwingDef;
+import pasa.cbentley.framework.core.draw.swing.ctx.CoreDrawSwingCtx;
+import pasa.cbentley.framework.coredraw.src4.ctx.ObjectCDC;
+
+/**
+ * Decoded images of {@link ImageFactorySwing}, keyed by the content of their encoded bytes.
+ * <br>
+ * <br>
+ * Loading the same icon bytes from many places costs a hash of the bytes and a lookup, instead of a decode.
+ * <br>
+ * The key is a 64 bits FNV-1a hash of the encoded bytes, their length and an optional resource identity, such as a name.
+ * A copy of the encoded bytes is kept with each entry and compared on a hit, so that a hash collision never returns the wrong image.
+ * <br>
+ * <br>
+ * Images are shared and immutable. The decoded bytes of the cached images, plus their encoded bytes, are capped by
+ * {@link ConfigCoreDrawSwingDef#getImageCacheBytes()}, least recently used evicted first.
+ * Evicted images stay valid for those who hold them.
+ * <br>
+ * Thread safe.
+ *
+ * @author Charles-Philip Bentley
+ * @see ImageFactorySwing#getImageCacheSwing()
+ */
+public class ImageCacheSwing extends ObjectCDC {
+
+   /**
+    * Encoded bytes, identity and hash. Probe keys reference the bytes of the caller, stored keys a copy
+    */
+   private static final class Key {
+
+      final byte[] data;
+
+      final long   hash;
+
+      final String identity;
+
+      final int    len;
+
+      final int    start;
+
+      Key(byte[] data, int start, int len, String identity, long hash) {
+         this.data = data;
+         this.start = start;
+         this.len = len;
+         this.identity = identity;
+         this.hash = hash;
+      }
+
+      public boolean equals(Object o) {
+         if (!(o instanceof Key)) {
+            return false;
+         }
+         Key k = (Key) o;
+         if (k.hash != hash || k.len != len) {
+            return false;
+         }
+         if (identity == null ? k.identity != null : !identity.equals(k.identity)) {
+            return false;
+         }
+         for (int i = 0; i < len; i++) {
+            if (data[start + i] != k.data[k.start + i]) {
+               return false;
+            }
+         }
+         return true;
+      }
+
+      public int hashCode() {
+         return (int) (hash ^ (hash >>> 32));
+      }
+   }
+
+   private static final long   FNV_OFFSET = 0xcbf29ce484222325L;
+
+   private static final long   FNV_PRIME  = 0x100000001b3L;
+
+   private long                bytes;
+
+   private int                 countEvict;
+
+   private int                 countHit;
+
+   private int                 countMiss;
+
+   /**
+    * {@link Key} to {@link ImageSwing}, least recently used first
+    */
+   private final LinkedHashMap images     = new LinkedHashMap(16, 0.75f, true);
+
+   private final long          maxBytes;
+
+   /**
+    *
+    * @param cdc
+    * @param maxBytes 0 or less caches nothing
+    */
+   public ImageCacheSwing(CoreDrawSwingCtx cdc, long maxBytes) {
+      super(cdc);
+      this.maxBytes = maxBytes;
+   }
+
+   /**
+    * Drops all cached images
+    */
+   public synchronized void clear() {
+      images.clear();
+      bytes = 0;
+   }
+
+   private void evict() {
+      Iterator it = images.entrySet().iterator();
+      while (bytes > maxBytes && it.hasNext()) {
+         Map.Entry e = (Map.Entry) it.next();
+         bytes -= getBytes((Key) e.getKey(), (ImageSwing) e.getValue());
+         it.remove();
+         countEvict++;
+      }
+   }
+
+   /**
+    * The image decoded from the bytes, or null when it is not cached
+    * @param data encoded bytes
+    * @param start
+    * @param len
+    * @param identity null when only the bytes identify the image
+    * @return
+    */
+   public ImageSwing get(byte[] data, int start, int len, String identity) {
+      Key key = new Key(data, start, len, identity, hash(data, start, len, identity));
+      synchronized (this) {
+         ImageSwing img = (ImageSwing) images.get(key);
+         if (img == null) {
+            countMiss++;
+         } else {
+            countHit++;
+         }
+         return img;
+      }
+   }
+
+   /**
+    * Bytes counted for the cached images and their encoded bytes
+    * @return
+    */
+   public synchronized long getBytes() {
+      return bytes;
+   }
+
+   private long getBytes(Key key, ImageSwing img) {
+      return key.len + ImagePoolSwing.getBytes(img.getImageSwing());
+   }
+
+   /**
+    * Images removed to keep the cache under its cap
+    * @return
+    */
+   public int getCountEvict() {
+      return countEvict;
+   }
+
+   public int getCountHit() {
+      return countHit;
+   }
+
+   public int getCountMiss() {
+      return countMiss;
+   }
+
+   public long getMaxBytes() {
+      return maxBytes;
+   }
+
+   /**
+    * Number of cached images
+    * @return
+    */
+   public synchronized int getSize() {
+      return images.size();
+   }
+
+   /**
+    * 64 bits FNV-1a of the bytes, then of the chars of identity
+    */
+   private static long hash(byte[] data, int start, int len, String identity) {
+      long h = FNV_OFFSET;
+      int end = start + len;
+      for (int i = start; i < end; i++) {
+         h = (h ^ (data[i] & 0xFF)) * FNV_PRIME;
+      }
+      if (identity != null) {
+         for (int i = 0; i < identity.length(); i++) {
+            h = (h ^ identity.charAt(i)) * FNV_PRIME;
+         }
+      }
+      return h;
+   }
+
+   /**
+    * Caches img, an immutable image decoded from the bytes.
+    * <br>
+    * When another thread cached the same bytes first, its image is kept and returned.
+    * @param data encoded bytes, copied
+    * @param start
+    * @param len
+    * @param identity
+    * @param img
+    * @return the cached image
+    */
+   public ImageSwing put(byte[] data, int start, int len, String identity, ImageSwing img) {
+      long size = len + ImagePoolSwing.getBytes(img.getImageSwing());
+      if (size > maxBytes) {
+         return img;
+      }
+      byte[] copy = new byte[len];
+      System.arraycopy(data, start, copy, 0, len);
+      Key key = new Key(copy, 0, len, identity, hash(copy, 0, len, identity));
+      synchronized (this) {
+         ImageSwing cached = (ImageSwing) images.get(key);
+         if (cached != null) {
+            return cached;
+         }
+         images.put(key, img);
+         bytes += size;
+         evict();
+      }
+      return img;
+   }
+
+   //#mdebug
+   public void toString(Dctx dc) {
+      dc.root(this, ImageCacheSwing.class, "@line5");
+      toStringPrivate(dc);
+      super.toString(dc.sup());
+   }
+
+   private void toStringPrivate(Dctx dc) {
+      dc.appendVarWithSpace("size", getSize());
+      dc.appendVarWithSpace("bytes", getBytes());
+      dc.appendVarWithSpace("maxBytes", maxBytes);
+      dc.appendVarWithSpace("countHit", countHit);
+      dc.appendVarWithSpace("countMiss", countMiss);
+      dc.appendVarWithSpace("countEvict", countEvict);
+   }
+
+   public void toString1Line(Dctx dc) {
+      dc.root1Line(this, ImageCacheSwing.class);
+      toStringPrivate(dc);
+      super.toString1Line(dc.sup1Line());
+   }
+
+   //#enddebug
+
+}
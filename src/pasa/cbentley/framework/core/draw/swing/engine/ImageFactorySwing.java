@@ -5,13 +5,22 @@
 package pasa.cbentley.framework.core.draw.swing.engine;
 
 import java.awt.Graphics2D;
+import java.awt.Rectangle;
 import java.awt.RenderingHints;
 import java.awt.Transparency;
 import java.awt.image.BufferedImage;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.Iterator;
 
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+
+import pasa.cbentley.core.src4.event.IEventConsumer;
+import pasa.cbentley.core.src4.logging.Dctx;
 import pasa.cbentley.framework.core.draw.j2se.engine.ImageFactoryJ2se;
 import pasa.cbentley.framework.core.draw.swing.ctx.CoreDrawSwingCtx;
 import pasa.cbentley.framework.coredraw.src4.interfaces.IGraphics;
@@ -19,11 +28,22 @@ import pasa.cbentley.framework.coredraw.src4.interfaces.IImage;
 
 public class ImageFactorySwing extends ImageFactoryJ2se {
 
-   protected final CoreDrawSwingCtx scc;
+   private final ImageCacheSwing     cache;
+
+   private ImageLoaderSwing          loader;
+
+   private final ImagePoolSwing      pool;
+
+   private final ImageResourcesSwing resources;
+
+   protected final CoreDrawSwingCtx  scc;
 
    public ImageFactorySwing(CoreDrawSwingCtx scc) {
       super(scc);
       this.scc = scc;
+      pool = new ImagePoolSwing(scc, scc.getConfigCoreDrawSwingDef().getImagePoolBytes());
+      cache = new ImageCacheSwing(scc, scc.getConfigCoreDrawSwingDef().getImageCacheBytes());
+      resources = new ImageResourcesSwing(scc, scc.getConfigCoreDrawSwingDef().getImageResourceCacheBytes());
    }
 
    public IGraphics createGraphics(Object g) {
@@ -33,9 +53,22 @@ public class ImageFactorySwing extends ImageFactoryJ2se {
       return gw;
    }
 
+   /**
+    * Reads all the bytes of is, then see {@link ImageFactorySwing#createImage(byte[], int, int, String)}.
+    * <br>
+    * The image is shared and immutable.
+    */
    @Override
    public IImage createImage(InputStream is) {
-      return new ImageSwing(scc, is);
+      byte[] data;
+      try {
+         data = readFully(is);
+      } catch (IOException e) {
+         //#debug
+         toDLog().pEx("Exception reading image InputStream.", null, ImageFactorySwing.class, "createImage", e);
+         return new ImageSwing(scc, (BufferedImage) null, false);
+      }
+      return createImage(data, 0, data.length, null);
    }
 
    @Override
@@ -54,9 +87,188 @@ public class ImageFactorySwing extends ImageFactoryJ2se {
       return new ImageSwing(scc, w, h, color);
    }
 
+   /**
+    * Returns at once an image that loads in the background, see {@link ImageLoaderSwing}.
+    * <br>
+    * When the bytes are in the {@link ImageCacheSwing}, the cached image is returned, already decoded, and listener is not called.
+    * Otherwise listener is called once on the AWT event thread when {@link ImageSwing#isLoading()} turns false.
+    * <br>
+    * The image is shared and immutable. data must not be modified afterwards.
+    * @param data encoded bytes
+    * @param start
+    * @param len
+    * @param priority lowest first, see {@link ImageLoaderSwing#PRIORITY_0_VISIBLE}
+    * @param listener may be null
+    * @return
+    */
+   public ImageSwing createImageAsync(byte[] data, int start, int len, int priority, IEventConsumer listener) {
+      ImageSwing img = cache.get(data, start, len, null);
+      if (img != null) {
+         return img;
+      }
+      return getImageLoaderSwing().load(data, start, len, null, priority, listener);
+   }
+
+   /**
+    * Reads all the bytes of is on the calling thread, then see {@link ImageFactorySwing#createImageAsync(byte[], int, int, int, IEventConsumer)}
+    * @param is
+    * @param priority
+    * @param listener
+    * @return
+    */
+   public ImageSwing createImageAsync(InputStream is, int priority, IEventConsumer listener) {
+      byte[] data;
+      try {
+         data = readFully(is);
+      } catch (IOException e) {
+         //#debug
+         toDLog().pEx("Exception reading image InputStream.", null, ImageFactorySwing.class, "createImageAsync", e);
+         return new ImageSwing(scc, (BufferedImage) null, false);
+      }
+      return createImageAsync(data, 0, data.length, priority, listener);
+   }
+
+   /**
+    * See {@link ImageFactorySwing#createImage(byte[], int, int, String)}. The image is shared and immutable.
+    */
    @Override
    public IImage createImage(byte[] data, int start, int len) {
-      return new ImageSwing(scc, new ByteArrayInputStream(data, start, len));
+      return createImage(data, start, len, null);
+   }
+
+   /**
+    * Decodes the image with {@link ImageIO}, once for all equal bytes and identity while the image stays in the {@link ImageCacheSwing}.
+    * <br>
+    * The image is shared and immutable.
+    * @param data encoded bytes
+    * @param start
+    * @param len
+    * @param identity of the resource, null when only the bytes identify the image
+    * @return
+    */
+   public ImageSwing createImage(byte[] data, int start, int len, String identity) {
+      ImageSwing img = cache.get(data, start, len, identity);
+      if (img != null) {
+         return img;
+      }
+      BufferedImage bi = null;
+      try {
+         bi = ImageIO.read(new ByteArrayInputStream(data, start, len));
+      } catch (Exception ex) {
+         //#debug
+         toDLog().pEx("Exception decoding image bytes.", null, ImageFactorySwing.class, "createImage", ex);
+      }
+      img = new ImageSwing(scc, bi, false);
+      if (bi == null) {
+         return img;
+      }
+      return cache.put(data, start, len, identity, img);
+   }
+
+   /**
+    * See {@link ImageFactorySwing#createImageScaled(byte[], int, int, int, int, int, int, int, int)} for the whole image
+    * @param data
+    * @param start
+    * @param len
+    * @param w
+    * @param h
+    * @return
+    */
+   public ImageSwing createImageScaled(byte[] data, int start, int len, int w, int h) {
+      return createImageScaled(data, start, len, 0, 0, 0, 0, w, h);
+   }
+
+   /**
+    * Decodes the region sx,sy,sw,sh of the encoded image directly at w,h, such as a thumbnail of a photo.
+    * <br>
+    * <br>
+    * The {@link ImageReader} reads only the region, keeping one source pixel out of the largest subsampling factors
+    * that keep the decoded image at least 2w,2h. The full resolution raster is never allocated.
+    * A single bicubic resample then gives w,h, smoothing what subsampling alone would alias.
+    * <br>
+    * Cached in the {@link ImageCacheSwing} with the region and size. The image is shared and immutable.
+    * @param data encoded bytes
+    * @param start
+    * @param len
+    * @param sx
+    * @param sy
+    * @param sw 0 for the whole image
+    * @param sh 0 for the whole image
+    * @param w width of the returned image
+    * @param h height of the returned image
+    * @return an image without pixels when the bytes cannot be decoded
+    * @throws IllegalArgumentException when w or h is not positive, or the region is not fully inside the image
+    */
+   public ImageSwing createImageScaled(byte[] data, int start, int len, int sx, int sy, int sw, int sh, int w, int h) {
+      if (w <= 0 || h <= 0) {
+         throw new IllegalArgumentException("Width (" + w + ") and height (" + h + ") cannot be <= 0");
+      }
+      String identity = "@" + sx + "," + sy + "," + sw + "," + sh + ">" + w + "x" + h;
+      ImageSwing img = cache.get(data, start, len, identity);
+      if (img != null) {
+         return img;
+      }
+      BufferedImage bi = null;
+      try {
+         bi = decodeScaled(data, start, len, sx, sy, sw, sh, w, h);
+      } catch (IOException ex) {
+         //#debug
+         toDLog().pEx("Exception decoding image bytes.", null, ImageFactorySwing.class, "createImageScaled", ex);
+      }
+      if (bi != null && (bi.getWidth() != w || bi.getHeight() != h)) {
+         bi = getScaledInstance(bi, w, h, RenderingHints.VALUE_INTERPOLATION_BICUBIC, false);
+      }
+      img = new ImageSwing(scc, bi, false);
+      if (bi == null) {
+         return img;
+      }
+      return cache.put(data, start, len, identity, img);
+   }
+
+   /**
+    * Reads the region subsampled to at least 2w,2h
+    * @return null when no {@link ImageReader} reads the bytes
+    * @throws IllegalArgumentException when the region is not fully inside the image
+    */
+   private BufferedImage decodeScaled(byte[] data, int start, int len, int sx, int sy, int sw, int sh, int w, int h) throws IOException {
+      ImageInputStream iis = ImageIO.createImageInputStream(new ByteArrayInputStream(data, start, len));
+      try {
+         Iterator it = ImageIO.getImageReaders(iis);
+         if (!it.hasNext()) {
+            return null;
+         }
+         ImageReader reader = (ImageReader) it.next();
+         try {
+            reader.setInput(iis, true, true);
+            int iw = reader.getWidth(0);
+            int ih = reader.getHeight(0);
+            if (sw <= 0 || sh <= 0) {
+               sx = 0;
+               sy = 0;
+               sw = iw;
+               sh = ih;
+            }
+            //a region partly outside would be stretched to w,h
+            if (sx < 0 || sy < 0 || (long) sx + sw > iw || (long) sy + sh > ih) {
+               throw new IllegalArgumentException("Region " + sx + "," + sy + " " + sw + "x" + sh + " not inside image " + iw + "x" + ih);
+            }
+            Rectangle region = new Rectangle(sx, sy, sw, sh);
+            ImageReadParam param = reader.getDefaultReadParam();
+            if (region.width != iw || region.height != ih) {
+               param.setSourceRegion(region);
+            }
+            int fx = Math.max(1, region.width / (2 * w));
+            int fy = Math.max(1, region.height / (2 * h));
+            if (fx > 1 || fy > 1) {
+               param.setSourceSubsampling(fx, fy, 0, 0);
+            }
+            return reader.read(0, param);
+         } finally {
+            reader.dispose();
+         }
+      } finally {
+         iis.close();
+      }
    }
 
    public IImage createRGBImage(int[] rgb, int width, int height, boolean processAlpha) {
@@ -65,9 +277,51 @@ public class ImageFactorySwing extends ImageFactoryJ2se {
          imageType = BufferedImage.TYPE_INT_ARGB;
       }
       //IndexColorModel icm = new IndexColorModel(0, 0, rgb, 0, processAlpha, 0, 0);
-      BufferedImage bi = new BufferedImage(width, height, imageType);
+      //all pixels are written
+      BufferedImage bi = pool.acquire(width, height, imageType, false);
       bi.setRGB(0, 0, width, height, rgb, 0, width);
-      return new ImageSwing(scc, bi);
+      ImageSwing img = new ImageSwing(scc, bi);
+      img.isPooled = true;
+      return img;
+   }
+
+   /**
+    * Decoded images shared by the ctx
+    * @return
+    */
+   public ImageCacheSwing getImageCacheSwing() {
+      return cache;
+   }
+
+   /**
+    * Background decodes of {@link ImageFactorySwing#createImageAsync(byte[], int, int, int, IEventConsumer)}, created on first use
+    * @return
+    */
+   public synchronized ImageLoaderSwing getImageLoaderSwing() {
+      if (loader == null) {
+         int threads = scc.getConfigCoreDrawSwingDef().getImageDecodeThreads();
+         if (threads <= 0) {
+            threads = Runtime.getRuntime().availableProcessors() / 2;
+         }
+         loader = new ImageLoaderSwing(scc, threads);
+      }
+      return loader;
+   }
+
+   /**
+    * Buffers of the {@link ImageSwing} of the ctx, see {@link ImageSwing#release()}
+    * @return
+    */
+   public ImagePoolSwing getImagePoolSwing() {
+      return pool;
+   }
+
+   /**
+    * Images loaded by name
+    * @return
+    */
+   public ImageResourcesSwing getImageResourcesSwing() {
+      return resources;
    }
 
    /**
@@ -124,32 +378,134 @@ public class ImageFactorySwing extends ImageFactoryJ2se {
             }
          }
 
-         BufferedImage tmp = new BufferedImage(w, h, type);
+         BufferedImage tmp = pool.acquire(w, h, type, true);
          Graphics2D g2 = tmp.createGraphics();
          g2.setRenderingHint(RenderingHints.KEY_INTERPOLATION, hint);
          g2.drawImage(ret, 0, 0, w, h, null);
          g2.dispose();
 
+         if (ret != img) {
+            //intermediate step of a multi-step scaling
+            pool.release(ret);
+         }
          ret = tmp;
       } while (w != targetWidth || h != targetHeight);
 
       return ret;
    }
 
+   private static byte[] readFully(InputStream is) throws IOException {
+      byte[] buf = new byte[8192];
+      int len = 0;
+      int read;
+      while ((read = is.read(buf, len, buf.length - len)) != -1) {
+         len += read;
+         if (len == buf.length) {
+            byte[] b = new byte[buf.length * 2];
+            System.arraycopy(buf, 0, b, 0, len);
+            buf = b;
+         }
+      }
+      if (len == buf.length) {
+         return buf;
+      }
+      byte[] data = new byte[len];
+      System.arraycopy(buf, 0, data, 0, len);
+      return data;
+   }
+
+   /**
+    * An immutable source is returned as is. Otherwise an immutable image sharing the pixels of source until source is written.
+    * @param source
+    * @return
+    */
    public IImage createImage(IImage source) {
-      // TODO Auto-generated method stub
-      return null;
+      if (!source.isMutable()) {
+         return source;
+      }
+      return createImage(source, 0, 0, source.getWidth(), source.getHeight(), IImage.TRANSFORM_0_NONE);
    }
 
+   /**
+    * Immutable copy of the area x,y,width,height of image through transform.
+    * <br>
+    * <br>
+    * {@link IImage#TRANSFORM_0_NONE} does not copy: the new image shares the raster of image and copies its pixels only when
+    * image is written or released. The other transforms remap the pixels once into a pooled raster.
+    * See {@link ImageSwing#createRegion(int, int, int, int, int, boolean)}.
+    * @param image
+    * @param x
+    * @param y
+    * @param width
+    * @param height
+    * @param transform
+    * @return
+    * @throws IllegalArgumentException when the area is empty or not inside image, or transform is not valid
+    */
    public IImage createImage(IImage image, int x, int y, int width, int height, int transform) {
-      // TODO Auto-generated method stub
-      return null;
+      ImageSwing src = (ImageSwing) image;
+      if (width <= 0 || height <= 0) {
+         throw new IllegalArgumentException("Width (" + width + ") and height (" + height + ") cannot be <= 0");
+      }
+      if (x < 0 || y < 0 || x + width > src.getWidth() || y + height > src.getHeight()) {
+         throw new IllegalArgumentException("Area out of Image");
+      }
+      boolean isSwap;
+      switch (transform) {
+         case IImage.TRANSFORM_0_NONE:
+         case IImage.TRANSFORM_3_ROT_180:
+         case IImage.TRANSFORM_2_FLIP_V_MIRROR:
+         case IImage.TRANSFORM_1_FLIP_H_MIRROR_ROT180:
+            isSwap = false;
+            break;
+         case IImage.TRANSFORM_5_ROT_90:
+         case IImage.TRANSFORM_6_ROT_270:
+         case IImage.TRANSFORM_7_MIRROR_ROT90:
+         case IImage.TRANSFORM_4_MIRROR_ROT270:
+            isSwap = true;
+            break;
+         default:
+            throw new IllegalArgumentException("Bad transform");
+      }
+      if (!src.isMutable() && transform == IImage.TRANSFORM_0_NONE && x == 0 && y == 0 && width == src.getWidth() && height == src.getHeight()) {
+         return src;
+      }
+      return src.createRegion(x, y, width, height, transform, isSwap);
    }
 
+   /**
+    * Loads the image named name from the image directories or the classpath, see {@link ImageResourcesSwing}.
+    * <br>
+    * The image is shared and immutable.
+    * @param name
+    * @return
+    * @throws IOException when name is not found or cannot be decoded
+    */
    public IImage createImage(String name) throws IOException {
-      // TODO Auto-generated method stub
-      return null;
+      return resources.getImage(name);
+   }
+
+   //#mdebug
+   public void toString(Dctx dc) {
+      dc.root(this, ImageFactorySwing.class, "@line5");
+      toStringPrivate(dc);
+      super.toString(dc.sup());
+      dc.nlLvl(pool, "pool");
+      dc.nlLvl(cache, "cache");
+      dc.nlLvl(resources, "resources");
+      dc.nlLvl(loader, "loader");
+   }
+
+   private void toStringPrivate(Dctx dc) {
+
+   }
+
+   public void toString1Line(Dctx dc) {
+      dc.root1Line(this, ImageFactorySwing.class);
+      toStringPrivate(dc);
+      super.toString1Line(dc.sup1Line());
    }
 
+   //#enddebug
 
 }
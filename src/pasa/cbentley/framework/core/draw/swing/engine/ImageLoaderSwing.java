@@ -0,0 +1,435 @@
+/*
+ * (c) 2018-2020 Charles-Philip Bentley
+ * This code is licensed under MIT license (see LICENSE.txt for details)
+ */
+package pasa.cbentley.framework.core.draw.swing.engine;
+
+import java.awt.EventQueue;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.util.Iterator;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+
+import pasa.cbentley.core.src4.event.BusEvent;
+import pasa.cbentley.core.src4.event.IEventConsumer;
+import pasa.cbentley.core.src4.logging.Dctx;
+import pasa.cbentley.framework.core.draw.swing.ctx.ConfigCoreDrawSwingDef;
+import pasa.cbentley.framework.core.draw.swing.ctx.CoreDrawSwingCtx;
+import pasa.cbentley.framework.coredraw.src4.ctx.ObjectCDC;
+import pasa.cbentley.framework.coredraw.src4.interfaces.IImage;
+
+/**
+ * Decodes images off the calling thread, see {@link ImageFactorySwing#createImageAsync(byte[], int, int, int, IEventConsumer)}.
+ * <br>
+ * <br>
+ * The image is returned at once, {@link ImageSwing#isLoading()} and {@link ImageSwing#isSolid()}: a transparent placeholder
+ * of the size read from the header of the encoded bytes, drawn at the cost of a solid image.
+ * Once decoded, its pixels are swapped in and the listener is called on the AWT event thread with an event of
+ * {@link ImageLoaderSwing#EID_0_LOADED}, so that the widget showing the image repaints.
+ * <br>
+ * <br>
+ * Decodes wait in a queue ordered by priority, lowest first, then by request order. Widgets raise the priority of
+ * visible images with {@link ImageLoaderSwing#setPriority(IImage, int)} and drop those scrolled away with {@link ImageLoaderSwing#cancel(IImage)}.
+ * <br>
+ * The number of worker threads is {@link ConfigCoreDrawSwingDef#getImageDecodeThreads()}. They are created on first use
+ * and end when idle.
+ * <br>
+ * Thread safe.
+ *
+ * @author Charles-Philip Bentley
+ * @see ImageFactorySwing#getImageLoaderSwing()
+ */
+public class ImageLoaderSwing extends ObjectCDC {
+
+   /**
+    * A queued decode, linked to its image by {@link ImageSwing#task} until it stops loading
+    */
+   static final class Task implements Runnable, Comparable {
+
+      final byte[]            data;
+
+      final ImageSwing        image;
+
+      final String            identity;
+
+      final int               len;
+
+      final IEventConsumer    listener;
+
+      private final ImageLoaderSwing loader;
+
+      volatile int            priority;
+
+      /**
+       * Set while decoding, for {@link ImageReader#abort()}
+       */
+      volatile ImageReader    reader;
+
+      final long              seq;
+
+      final int               start;
+
+      /**
+       * One of the STATE_ constants of {@link ImageLoaderSwing}. Guarded by this
+       */
+      int                     state;
+
+      Task(ImageLoaderSwing loader, ImageSwing image, byte[] data, int start, int len, String identity, int priority, long seq, IEventConsumer listener) {
+         this.loader = loader;
+         this.image = image;
+         this.data = data;
+         this.start = start;
+         this.len = len;
+         this.identity = identity;
+         this.priority = priority;
+         this.seq = seq;
+         this.listener = listener;
+      }
+
+      public int compareTo(Object o) {
+         Task t = (Task) o;
+         if (priority != t.priority) {
+            return priority < t.priority ? -1 : 1;
+         }
+         return seq < t.seq ? -1 : (seq == t.seq ? 0 : 1);
+      }
+
+      synchronized boolean isLoading() {
+         return state == STATE_0_QUEUED || state == STATE_1_DECODING;
+      }
+
+      public void run() {
+         loader.decode(this);
+      }
+   }
+
+   /**
+    * Id of the event when the pixels of the image are ready
+    */
+   public static final int EID_0_LOADED      = 0;
+
+   /**
+    * Id of the event when the bytes could not be decoded. The image stays a transparent placeholder
+    */
+   public static final int EID_1_FAILED      = 1;
+
+   /**
+    * Id of the event when the decode was cancelled. The image stays a transparent placeholder
+    */
+   public static final int EID_2_CANCELLED   = 2;
+
+   /**
+    * Producer id of the events given to listeners. They are not put on the event bus of the ctx
+    */
+   public static final int PID_0_LOADER      = 0;
+
+   /**
+    * Priority of images on screen
+    */
+   public static final int PRIORITY_0_VISIBLE = 0;
+
+   /**
+    * Priority of images close to the screen, such as the next page of a list
+    */
+   public static final int PRIORITY_1_NEAR    = 1;
+
+   /**
+    * Priority of images far from the screen
+    */
+   public static final int PRIORITY_2_HIDDEN  = 2;
+
+   static final int        STATE_0_QUEUED    = 0;
+
+   static final int        STATE_1_DECODING  = 1;
+
+   static final int        STATE_2_LOADED    = 2;
+
+   static final int        STATE_3_FAILED    = 3;
+
+   static final int        STATE_4_CANCELLED = 4;
+
+   private int             countCancelled;
+
+   private int             countFailed;
+
+   private int             countLoaded;
+
+   private ThreadPoolExecutor executor;
+
+   private long            seq;
+
+   private final int       threads;
+
+   /**
+    *
+    * @param cdc
+    * @param threads 0 or less for 1
+    */
+   public ImageLoaderSwing(CoreDrawSwingCtx cdc, int threads) {
+      super(cdc);
+      this.threads = Math.max(1, threads);
+   }
+
+   /**
+    * Stops the decode of img. When decoding, the {@link ImageReader} is aborted.
+    * <br>
+    * The image stays a transparent placeholder and its listener gets {@link ImageLoaderSwing#EID_2_CANCELLED}.
+    * @param img
+    * @return false when img is not loading
+    */
+   public boolean cancel(IImage img) {
+      Task t = getTask(img);
+      if (t == null) {
+         return false;
+      }
+      synchronized (t) {
+         if (t.state != STATE_0_QUEUED && t.state != STATE_1_DECODING) {
+            return false;
+         }
+         t.state = STATE_4_CANCELLED;
+         t.image.task = null;
+      }
+      getExecutor().remove(t);
+      ImageReader reader = t.reader;
+      if (reader != null) {
+         reader.abort();
+      }
+      synchronized (this) {
+         countCancelled++;
+      }
+      notifyListener(t, EID_2_CANCELLED);
+      return true;
+   }
+
+   /**
+    * Returns a loading placeholder for the image encoded in data, or an image with no pixels when no {@link ImageReader}
+    * reads the header, as {@link ImageFactorySwing#createImage(byte[], int, int)} does.
+    * <br>
+    * data is read by the workers and must not be modified afterwards.
+    * @param data
+    * @param start
+    * @param len
+    * @param identity key of the {@link ImageCacheSwing} with the bytes, may be null
+    * @param priority lowest first, see {@link ImageLoaderSwing#PRIORITY_0_VISIBLE}
+    * @param listener called on the AWT event thread when the image stops loading. May be null
+    * @return
+    */
+   public ImageSwing load(byte[] data, int start, int len, String identity, int priority, IEventConsumer listener) {
+      int w = 0;
+      int h = 0;
+      try {
+         ImageInputStream iis = ImageIO.createImageInputStream(new ByteArrayInputStream(data, start, len));
+         try {
+            Iterator it = ImageIO.getImageReaders(iis);
+            if (it.hasNext()) {
+               ImageReader reader = (ImageReader) it.next();
+               try {
+                  reader.setInput(iis, true, true);
+                  w = reader.getWidth(0);
+                  h = reader.getHeight(0);
+               } finally {
+                  reader.dispose();
+               }
+            }
+         } finally {
+            iis.close();
+         }
+      } catch (Exception ex) {
+         //#debug
+         toDLog().pEx("Exception reading image header.", null, ImageLoaderSwing.class, "load", ex);
+      }
+      if (w <= 0 || h <= 0) {
+         return new ImageSwing(getCDCSwing(), (BufferedImage) null, false);
+      }
+      ImageSwing img = new ImageSwing(getCDCSwing(), w, h, 0, 0);
+      Task t;
+      synchronized (this) {
+         t = new Task(this, img, data, start, len, identity, priority, seq++, listener);
+      }
+      img.setLoading(t);
+      getExecutor().execute(t);
+      return img;
+   }
+
+   private void decode(Task t) {
+      synchronized (t) {
+         if (t.state != STATE_0_QUEUED) {
+            return;
+         }
+         t.state = STATE_1_DECODING;
+      }
+      BufferedImage bi = null;
+      try {
+         ImageInputStream iis = ImageIO.createImageInputStream(new ByteArrayInputStream(t.data, t.start, t.len));
+         try {
+            Iterator it = ImageIO.getImageReaders(iis);
+            if (it.hasNext()) {
+               ImageReader reader = (ImageReader) it.next();
+               t.reader = reader;
+               try {
+                  //a cancel before the reader was set is seen here
+                  if (!t.isLoading()) {
+                     return;
+                  }
+                  reader.setInput(iis, true, true);
+                  bi = reader.read(0, reader.getDefaultReadParam());
+               } finally {
+                  t.reader = null;
+                  reader.dispose();
+               }
+            }
+         } finally {
+            iis.close();
+         }
+      } catch (Exception ex) {
+         //#debug
+         toDLog().pEx("Exception decoding image bytes.", null, ImageLoaderSwing.class, "decode", ex);
+      }
+      synchronized (t) {
+         if (t.state != STATE_1_DECODING) {
+            //cancelled
+            return;
+         }
+         if (bi == null) {
+            t.state = STATE_3_FAILED;
+         } else {
+            //pixels are in when the image stops loading
+            t.image.setDecoded(bi);
+            t.state = STATE_2_LOADED;
+         }
+         //the image no longer keeps the bytes and the listener
+         t.image.task = null;
+      }
+      if (bi == null) {
+         synchronized (this) {
+            countFailed++;
+         }
+         notifyListener(t, EID_1_FAILED);
+         return;
+      }
+      getCDCSwing().getImageFactorySwing().getImageCacheSwing().put(t.data, t.start, t.len, t.identity, t.image);
+      synchronized (this) {
+         countLoaded++;
+      }
+      notifyListener(t, EID_0_LOADED);
+   }
+
+   private CoreDrawSwingCtx getCDCSwing() {
+      return (CoreDrawSwingCtx) cdc;
+   }
+
+   public synchronized int getCountCancelled() {
+      return countCancelled;
+   }
+
+   public synchronized int getCountFailed() {
+      return countFailed;
+   }
+
+   public synchronized int getCountLoaded() {
+      return countLoaded;
+   }
+
+   private synchronized ThreadPoolExecutor getExecutor() {
+      if (executor == null) {
+         ThreadFactory factory = new ThreadFactory() {
+            private int count;
+
+            public Thread newThread(Runnable r) {
+               Thread t = new Thread(r, "ImageLoaderSwing-" + (count++));
+               t.setDaemon(true);
+               t.setPriority(Thread.NORM_PRIORITY - 1);
+               return t;
+            }
+         };
+         executor = new ThreadPoolExecutor(threads, threads, 5, TimeUnit.SECONDS, new PriorityBlockingQueue(), factory);
+         executor.allowCoreThreadTimeOut(true);
+      }
+      return executor;
+   }
+
+   /**
+    * Number of decodes waiting for a worker
+    * @return
+    */
+   public synchronized int getQueueSize() {
+      if (executor == null) {
+         return 0;
+      }
+      return executor.getQueue().size();
+   }
+
+   private Task getTask(IImage img) {
+      if (!(img instanceof ImageSwing)) {
+         return null;
+      }
+      return ((ImageSwing) img).task;
+   }
+
+   public int getThreads() {
+      return threads;
+   }
+
+   private void notifyListener(final Task t, int eid) {
+      if (t.listener == null) {
+         return;
+      }
+      final BusEvent be = getCDCSwing().getBOC().getEventBus().createEvent(PID_0_LOADER, eid, t.image);
+      EventQueue.invokeLater(new Runnable() {
+         public void run() {
+            t.listener.consumeEvent(be);
+         }
+      });
+   }
+
+   /**
+    * Moves a queued decode of img in the queue. Does nothing once decoding started.
+    * @param img
+    * @param priority lowest first
+    */
+   public void setPriority(IImage img, int priority) {
+      Task t = getTask(img);
+      if (t == null || t.priority == priority) {
+         return;
+      }
+      ThreadPoolExecutor ex = getExecutor();
+      //the queue orders a task when it is inserted
+      if (ex.remove(t)) {
+         t.priority = priority;
+         ex.execute(t);
+      } else {
+         t.priority = priority;
+      }
+   }
+
+   //#mdebug
+   public void toString(Dctx dc) {
+      dc.root(this, ImageLoaderSwing.class, "@line5");
+      toStringPrivate(dc);
+      super.toString(dc.sup());
+   }
+
+   private void toStringPrivate(Dctx dc) {
+      dc.appendVarWithSpace("threads", threads);
+      dc.appendVarWithSpace("queue", getQueueSize());
+      dc.appendVarWithSpace("countLoaded", countLoaded);
+      dc.appendVarWithSpace("countFailed", countFailed);
+      dc.appendVarWithSpace("countCancelled", countCancelled);
+   }
+
+   public void toString1Line(Dctx dc) {
+      dc.root1Line(this, ImageLoaderSwing.class);
+      toStringPrivate(dc);
+      super.toString1Line(dc.sup1Line());
+   }
+
+   //#enddebug
+
+}
@@ -0,0 +1,279 @@
+/*
+ * (c) 2018-2020 Charles-Philip Bentley
+ * This code is licensed under MIT license (see LICENSE.txt for details)
+ */
+package pasa.cbentley.framework.core.draw.swing.engine;
+
+import java.awt.AlphaComposite;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.awt.image.WritableRaster;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import pasa.cbentley.core.src4.logging.Dctx;
+import pasa.cbentley.framework.core.draw.swing.ctx.ConfigCoreDrawSwingDef;
+import pasa.cbentley.framework.core.draw.swing.ctx.CoreDrawSwingCtx;
+import pasa.cbentley.framework.coredraw.src4.ctx.ObjectCDC;
+
+/**
+ * Pool of short lived {@link BufferedImage}, bucketed by exact width, height and image type.
+ * <br>
+ * <br>
+ * Offscreen buffers of {@link ImageSwing} and the intermediate steps of {@link ScalerSwing#getScaledInstance(BufferedImage, int, int, Object, boolean)}
+ * are taken here and given back once unused, instead of allocating large int arrays that G1 puts in old gen as humongous objects.
+ * <br>
+ * <br>
+ * The bytes of pooled images are capped by {@link ConfigCoreDrawSwingDef#getImagePoolBytes()}.
+ * When a released image does not fit, images of the least recently used sizes are evicted.
+ * At most {@link ImagePoolSwing#DEPTH} images are kept for a size.
+ * <br>
+ * Only images of a standard type without a color table, owning all their raster, are pooled. Others are dropped on release.
+ * <br>
+ * Thread safe.
+ *
+ * @author Charles-Philip Bentley
+ * @see ImageFactorySwing#getImagePoolSwing()
+ */
+public class ImagePoolSwing extends ObjectCDC {
+
+   /**
+    * Number of images kept for each size and type
+    */
+   public static final int     DEPTH = 4;
+
+   /**
+    * Key to {@link ArrayList} of {@link BufferedImage}, least recently used first
+    */
+   private final LinkedHashMap buckets = new LinkedHashMap(16, 0.75f, true);
+
+   private long                bytes;
+
+   private int                 countDrop;
+
+   private int                 countEvict;
+
+   private int                 countHit;
+
+   private int                 countMiss;
+
+   private int                 countRelease;
+
+   private final long          maxBytes;
+
+   /**
+    *
+    * @param cdc
+    * @param maxBytes 0 or less pools nothing
+    */
+   public ImagePoolSwing(CoreDrawSwingCtx cdc, long maxBytes) {
+      super(cdc);
+      this.maxBytes = maxBytes;
+   }
+
+   /**
+    * Returns an image of exactly w,h of type
+    * @param w
+    * @param h
+    * @param type a {@link BufferedImage} type
+    * @param isClear true when the pixels must be 0 like a new image. False when the caller writes all of them
+    * @return
+    */
+   public BufferedImage acquire(int w, int h, int type, boolean isClear) {
+      BufferedImage bi = null;
+      if (isPoolable(type)) {
+         Long key = Long.valueOf(getKey(w, h, type));
+         synchronized (this) {
+            ArrayList list = (ArrayList) buckets.get(key);
+            if (list != null) {
+               bi = (BufferedImage) list.remove(list.size() - 1);
+               if (list.isEmpty()) {
+                  buckets.remove(key);
+               }
+               bytes -= getBytes(bi);
+               countHit++;
+            } else {
+               countMiss++;
+            }
+         }
+      }
+      if (bi == null) {
+         return new BufferedImage(w, h, type);
+      }
+      if (isClear) {
+         //through Java2D, the image may stay accelerated
+         Graphics2D g = bi.createGraphics();
+         g.setComposite(AlphaComposite.Clear);
+         g.fillRect(0, 0, w, h);
+         g.dispose();
+      }
+      return bi;
+   }
+
+   /**
+    * Drops all pooled images
+    */
+   public synchronized void clear() {
+      buckets.clear();
+      bytes = 0;
+   }
+
+   /**
+    * Bytes of the pooled images
+    * @return
+    */
+   public synchronized long getBytes() {
+      return bytes;
+   }
+
+   /**
+    * Bytes of the pixels of bi
+    * @param bi
+    * @return
+    */
+   public static long getBytes(BufferedImage bi) {
+      DataBuffer db = bi.getRaster().getDataBuffer();
+      return (long) db.getSize() * db.getNumBanks() * (DataBuffer.getDataTypeSize(db.getDataType()) / 8);
+   }
+
+   /**
+    * Images given back but not pooled: not poolable, bucket full or bigger than the cap
+    * @return
+    */
+   public int getCountDrop() {
+      return countDrop;
+   }
+
+   /**
+    * Pooled images removed to make room for released ones
+    * @return
+    */
+   public int getCountEvict() {
+      return countEvict;
+   }
+
+   public int getCountHit() {
+      return countHit;
+   }
+
+   public int getCountMiss() {
+      return countMiss;
+   }
+
+   /**
+    * Images given back to the pool
+    * @return
+    */
+   public int getCountRelease() {
+      return countRelease;
+   }
+
+   private long getKey(int w, int h, int type) {
+      return ((long) type << 48) | ((long) w << 24) | h;
+   }
+
+   public long getMaxBytes() {
+      return maxBytes;
+   }
+
+   /**
+    * Number of pooled images
+    * @return
+    */
+   public synchronized int getSize() {
+      int size = 0;
+      Iterator it = buckets.values().iterator();
+      while (it.hasNext()) {
+         size += ((ArrayList) it.next()).size();
+      }
+      return size;
+   }
+
+   private boolean isPoolable(int type) {
+      return type != BufferedImage.TYPE_CUSTOM && type != BufferedImage.TYPE_BYTE_INDEXED && type != BufferedImage.TYPE_BYTE_BINARY;
+   }
+
+   /**
+    * Gives back an image that is not used anymore. The caller must not use bi afterwards.
+    * <br>
+    * Images sharing their raster, such as {@link BufferedImage#getSubimage(int, int, int, int)}, are dropped.
+    * @param bi
+    */
+   public void release(BufferedImage bi) {
+      WritableRaster raster = bi.getRaster();
+      boolean isOwner = raster.getParent() == null && raster.getSampleModelTranslateX() == 0 && raster.getSampleModelTranslateY() == 0;
+      long size = getBytes(bi);
+      int w = bi.getWidth();
+      int h = bi.getHeight();
+      synchronized (this) {
+         countRelease++;
+         if (!isOwner || !isPoolable(bi.getType()) || size > maxBytes || w >= (1 << 24) || h >= (1 << 24)) {
+            countDrop++;
+            return;
+         }
+         Long key = Long.valueOf(getKey(w, h, bi.getType()));
+         ArrayList list = (ArrayList) buckets.get(key);
+         if (list != null && list.size() >= DEPTH) {
+            countDrop++;
+            return;
+         }
+         evict(maxBytes - size);
+         //the next owner of bi starts its mod count again
+         ((CoreDrawSwingCtx) cdc).getRegionCacheSwing().remove(bi);
+         if (list == null) {
+            list = new ArrayList(DEPTH);
+            buckets.put(key, list);
+         }
+         list.add(bi);
+         bytes += size;
+      }
+   }
+
+   /**
+    * Removes images of the least recently used sizes until pooled bytes are at most max
+    * @param max
+    */
+   private void evict(long max) {
+      Iterator it = buckets.entrySet().iterator();
+      while (bytes > max && it.hasNext()) {
+         ArrayList list = (ArrayList) ((Map.Entry) it.next()).getValue();
+         while (bytes > max && !list.isEmpty()) {
+            bytes -= getBytes((BufferedImage) list.remove(list.size() - 1));
+            countEvict++;
+         }
+         if (list.isEmpty()) {
+            it.remove();
+         }
+      }
+   }
+
+   //#mdebug
+   public void toString(Dctx dc) {
+      dc.root(this, ImagePoolSwing.class, "@line5");
+      toStringPrivate(dc);
+      super.toString(dc.sup());
+   }
+
+   private void toStringPrivate(Dctx dc) {
+      dc.appendVarWithSpace("size", getSize());
+      dc.appendVarWithSpace("bytes", getBytes());
+      dc.appendVarWithSpace("maxBytes", maxBytes);
+      dc.appendVarWithSpace("countHit", countHit);
+      dc.appendVarWithSpace("countMiss", countMiss);
+      dc.appendVarWithSpace("countRelease", countRelease);
+      dc.appendVarWithSpace("countDrop", countDrop);
+      dc.appendVarWithSpace("countEvict", countEvict);
+   }
+
+   public void toString1Line(Dctx dc) {
+      dc.root1Line(this, ImagePoolSwing.class);
+      toStringPrivate(dc);
+      super.toString1Line(dc.sup1Line());
+   }
+
+   //#enddebug
+
+}
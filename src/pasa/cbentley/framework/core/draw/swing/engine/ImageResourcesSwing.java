@@ -0,0 +1,355 @@
+/*
+ * (c) 2018-2020 Charles-Philip Bentley
+ * This code is licensed under MIT license (see LICENSE.txt for details)
+ */
+package pasa.cbentley.framework.core.draw.swing.engine;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+import javax.imageio.ImageIO;
+import javax.imageio.stream.ImageInputStreamImpl;
+
+import pasa.cbentley.core.src4.logging.Dctx;
+import pasa.cbentley.framework.core.draw.swing.ctx.ConfigCoreDrawSwingDef;
+import pasa.cbentley.framework.core.draw.swing.ctx.CoreDrawSwingCtx;
+import pasa.cbentley.framework.coredraw.src4.ctx.ObjectCDC;
+
+/**
+ * Images loaded by name for {@link ImageFactorySwing#createImage(String)}, cached by name.
+ * <br>
+ * <br>
+ * A name is resolved against the directories of {@link ConfigCoreDrawSwingDef#getImageDirectories()}, in order, then the classpath.
+ * A leading / is ignored.
+ * <br>
+ * Files, including classpath resources in a directory, are memory mapped with a {@link FileChannel} and decoded
+ * from the mapped bytes without copying them. Resources inside a jar are read from their stream and go through the {@link ImageCacheSwing}.
+ * <br>
+ * <br>
+ * A cached image of a file is returned while the modification time and length of the file are unchanged: a hit costs a lookup
+ * and a stat of the file. A resource inside a jar is never reloaded. The resolved location is cached with the image.
+ * <br>
+ * Decoded bytes are capped by {@link ConfigCoreDrawSwingDef#getImageResourceCacheBytes()}, least recently used evicted first.
+ * Images are shared and immutable.
+ * <br>
+ * Thread safe.
+ *
+ * @author Charles-Philip Bentley
+ * @see ImageFactorySwing#getImageResourcesSwing()
+ */
+public class ImageResourcesSwing extends ObjectCDC {
+
+   /**
+    * A loaded image and the state of its file when it was read
+    */
+   private static final class Entry {
+
+      final long       bytes;
+
+      /**
+       * null for a resource inside a jar
+       */
+      final File       file;
+
+      final ImageSwing image;
+
+      final long       length;
+
+      final long       modified;
+
+      Entry(ImageSwing image, File file, long modified, long length) {
+         this.image = image;
+         this.file = file;
+         this.modified = modified;
+         this.length = length;
+         this.bytes = ImagePoolSwing.getBytes(image.getImageSwing());
+      }
+
+      boolean isCurrent() {
+         return file == null || (file.lastModified() == modified && file.length() == length);
+      }
+   }
+
+   /**
+    * Reads a {@link ByteBuffer} in place, positioned by {@link ImageInputStreamImpl#streamPos}
+    */
+   private static final class BufferImageInputStream extends ImageInputStreamImpl {
+
+      private final ByteBuffer buf;
+
+      BufferImageInputStream(ByteBuffer buf) {
+         this.buf = buf;
+      }
+
+      public long length() {
+         return buf.limit();
+      }
+
+      public int read() throws IOException {
+         checkClosed();
+         if (streamPos >= buf.limit()) {
+            return -1;
+         }
+         bitOffset = 0;
+         return buf.get((int) streamPos++) & 0xFF;
+      }
+
+      public int read(byte[] b, int off, int len) throws IOException {
+         checkClosed();
+         if (len == 0) {
+            return 0;
+         }
+         long remaining = buf.limit() - streamPos;
+         if (remaining <= 0) {
+            return -1;
+         }
+         len = (int) Math.min(len, remaining);
+         bitOffset = 0;
+         buf.position((int) streamPos);
+         buf.get(b, off, len);
+         streamPos += len;
+         return len;
+      }
+   }
+
+   private long                bytes;
+
+   private int                 countEvict;
+
+   private int                 countHit;
+
+   private int                 countMiss;
+
+   private int                 countReload;
+
+   /**
+    * Name to {@link Entry}, least recently used first
+    */
+   private final LinkedHashMap entries = new LinkedHashMap(16, 0.75f, true);
+
+   private final long          maxBytes;
+
+   /**
+    *
+    * @param cdc
+    * @param maxBytes 0 or less caches nothing
+    */
+   public ImageResourcesSwing(CoreDrawSwingCtx cdc, long maxBytes) {
+      super(cdc);
+      this.maxBytes = maxBytes;
+   }
+
+   /**
+    * Drops all cached images
+    */
+   public synchronized void clear() {
+      entries.clear();
+      bytes = 0;
+   }
+
+   private ImageSwing decodeMapped(File file, String name) throws IOException {
+      FileInputStream fis = new FileInputStream(file);
+      try {
+         FileChannel channel = fis.getChannel();
+         long size = channel.size();
+         if (size > Integer.MAX_VALUE) {
+            throw new IOException("Image too large " + name + " " + size);
+         }
+         ByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+         //holds no resource, ImageIO closes it after reading
+         BufferedImage bi = ImageIO.read(new BufferImageInputStream(buf));
+         if (bi == null) {
+            throw new IOException("Cannot decode image " + name);
+         }
+         return new ImageSwing(getCDCSwing(), bi, false);
+      } finally {
+         fis.close();
+      }
+   }
+
+   private ImageSwing decodeStream(URL url, String name) throws IOException {
+      InputStream is = url.openStream();
+      ImageSwing img;
+      try {
+         img = (ImageSwing) getCDCSwing().getImageFactorySwing().createImage(is);
+      } finally {
+         is.close();
+      }
+      if (img.getImageSwing() == null) {
+         throw new IOException("Cannot decode image " + name);
+      }
+      return img;
+   }
+
+   private void evict() {
+      Iterator it = entries.values().iterator();
+      while (bytes > maxBytes && it.hasNext()) {
+         bytes -= ((Entry) it.next()).bytes;
+         it.remove();
+         countEvict++;
+      }
+   }
+
+   /**
+    * Bytes of the decoded pixels of the cached images
+    * @return
+    */
+   public synchronized long getBytes() {
+      return bytes;
+   }
+
+   private CoreDrawSwingCtx getCDCSwing() {
+      return (CoreDrawSwingCtx) cdc;
+   }
+
+   public synchronized int getCountEvict() {
+      return countEvict;
+   }
+
+   public synchronized int getCountHit() {
+      return countHit;
+   }
+
+   public synchronized int getCountMiss() {
+      return countMiss;
+   }
+
+   /**
+    * Misses of names whose file changed since it was cached
+    * @return
+    */
+   public synchronized int getCountReload() {
+      return countReload;
+   }
+
+   /**
+    * The image named name, from the cache when its file did not change
+    * @param name
+    * @return
+    * @throws IOException when name is not found or cannot be decoded
+    */
+   public ImageSwing getImage(String name) throws IOException {
+      String rel = name.startsWith("/") ? name.substring(1) : name;
+      Entry e;
+      synchronized (this) {
+         e = (Entry) entries.get(rel);
+      }
+      //stat outside the lock
+      if (e != null && e.isCurrent()) {
+         synchronized (this) {
+            countHit++;
+         }
+         return e.image;
+      }
+      synchronized (this) {
+         countMiss++;
+         if (e != null) {
+            countReload++;
+         }
+      }
+      File file = null;
+      String[] dirs = getCDCSwing().getConfigCoreDrawSwingDef().getImageDirectories();
+      if (dirs != null) {
+         for (int i = 0; i < dirs.length && file == null; i++) {
+            File f = new File(dirs[i], rel);
+            if (f.isFile()) {
+               file = f;
+            }
+         }
+      }
+      URL url = null;
+      if (file == null) {
+         url = ImageResourcesSwing.class.getResource("/" + rel);
+         if (url == null) {
+            throw new IOException("Image not found " + name);
+         }
+         if ("file".equals(url.getProtocol())) {
+            try {
+               file = new File(url.toURI());
+            } catch (URISyntaxException ex) {
+               //read from the stream
+            }
+         }
+      }
+      ImageSwing img;
+      if (file != null) {
+         //stat before reading: a write during the read is seen by the next call
+         long modified = file.lastModified();
+         long length = file.length();
+         img = decodeMapped(file, name);
+         e = new Entry(img, file, modified, length);
+      } else {
+         img = decodeStream(url, name);
+         e = new Entry(img, null, 0, 0);
+      }
+      if (e.bytes <= maxBytes) {
+         synchronized (this) {
+            Entry old = (Entry) entries.put(rel, e);
+            if (old != null) {
+               bytes -= old.bytes;
+            }
+            bytes += e.bytes;
+            evict();
+         }
+      }
+      return img;
+   }
+
+   public long getMaxBytes() {
+      return maxBytes;
+   }
+
+   /**
+    * Number of cached images
+    * @return
+    */
+   public synchronized int getSize() {
+      return entries.size();
+   }
+
+   /**
+    * Drops the image of name, which is loaded again by the next {@link ImageResourcesSwing#getImage(String)}
+    * @param name
+    */
+   public synchronized void invalidate(String name) {
+      Entry e = (Entry) entries.remove(name.startsWith("/") ? name.substring(1) : name);
+      if (e != null) {
+         bytes -= e.bytes;
+      }
+   }
+
+   //#mdebug
+   public void toString(Dctx dc) {
+      dc.root(this, ImageResourcesSwing.class, "@line5");
+      toStringPrivate(dc);
+      super.toString(dc.sup());
+   }
+
+   private void toStringPrivate(Dctx dc) {
+      dc.appendVarWithSpace("size", getSize());
+      dc.appendVarWithSpace("bytes", getBytes());
+      dc.appendVarWithSpace("maxBytes", maxBytes);
+      dc.appendVarWithSpace("countHit", countHit);
+      dc.appendVarWithSpace("countMiss", countMiss);
+      dc.appendVarWithSpace("countReload", countReload);
+      dc.appendVarWithSpace("countEvict", countEvict);
+   }
+
+   public void toString1Line(Dctx dc) {
+      dc.root1Line(this, ImageResourcesSwing.class);
+      toStringPrivate(dc);
+      super.toString1Line(dc.sup1Line());
+   }
+
+   //#enddebug
+
+}
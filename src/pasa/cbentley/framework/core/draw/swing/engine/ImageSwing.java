@@ -5,15 +5,19 @@
 package pasa.cbentley.framework.core.draw.swing.engine;
 
 import java.awt.AlphaComposite;
+import java.awt.Graphics2D;
+import java.awt.Transparency;
 import java.awt.image.BufferedImage;
-import java.awt.image.PixelGrabber;
 import java.io.InputStream;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
 
 import javax.imageio.ImageIO;
 
 import pasa.cbentley.framework.core.draw.j2se.engine.ImageJ2se;
 import pasa.cbentley.framework.core.draw.swing.ctx.CoreDrawSwingCtx;
 import pasa.cbentley.framework.coredraw.src4.interfaces.IGraphics;
+import pasa.cbentley.framework.coredraw.src4.interfaces.IImage;
 import pasa.cbentley.framework.coredraw.src4.interfaces.ITechGraphics;
 
 /**
@@ -32,13 +36,63 @@ public class ImageSwing extends ImageJ2se {
     */
    public GraphicsSwing             graphics;
 
+   /**
+    * Pixel value of the whole image while {@link ImageSwing#isSolid()}
+    */
+   private int                      colorSolid;
+
+   /**
+    * Height while {@link ImageSwing#isSolid()}
+    */
+   private int                      heightSolid;
+
    /** 
     * We are lucky in Swing. Its always possible to create a {@link BufferedImage} and draw on it
     * <br>
-    * This field is never null once the constructor finishes. 
+    * Null while {@link ImageSwing#isSolid()}, otherwise never null once the constructor finishes.
     */
    private BufferedImage            image;
 
+   /**
+    * True until the pixels of an image created with a color are allocated. See {@link ImageSwing#isSolid()}
+    * <br>
+    * Volatile: a decode of the {@link ImageLoaderSwing} publishes {@link ImageSwing#image} by clearing it.
+    */
+   private volatile boolean         isSolid;
+
+   /**
+    * True when {@link ImageSwing#image} was taken from the {@link ImagePoolSwing} of the ctx and goes back there on {@link ImageSwing#release()}
+    */
+   boolean                          isPooled;
+
+   /**
+    * Incremented by each draw operation of {@link GraphicsSwing} into this image.
+    * <br>
+    * Used by caches of derived pixels to detect stale entries.
+    */
+   int                              modCount;
+
+   /**
+    * Images of {@link ImageSwing#createRegion(int, int, int, int, int, boolean)} sharing the raster of this image, as {@link WeakReference}.
+    * <br>
+    * Null when none. Volatile: read by each write of {@link GraphicsSwing}, see {@link ImageSwing#unshare()}
+    */
+   private volatile ArrayList       shares;
+
+   /**
+    * The image whose raster is shared by this one, until it is written. Null when this image owns its raster
+    */
+   private ImageSwing               shareOwner;
+
+   /**
+    * Decode of an image created by {@link ImageLoaderSwing}, null for others and once loaded, failed or cancelled
+    */
+   volatile ImageLoaderSwing.Task   task;
+
+   /**
+    * Width while {@link ImageSwing#isSolid()}
+    */
+   private int                      widthSolid;
   
    /**
     * Creates relevant {@link IGraphics} object.
@@ -46,10 +100,20 @@ public class ImageSwing extends ImageJ2se {
     * @param cdc
     */
    public ImageSwing(CoreDrawSwingCtx cdc, BufferedImage bi) {
+      this(cdc, bi, true);
+   }
+
+   /**
+    * 
+    * @param cdc
+    * @param bi
+    * @param isMutable false for images shared by several users, such as those of {@link ImageCacheSwing}
+    */
+   public ImageSwing(CoreDrawSwingCtx cdc, BufferedImage bi, boolean isMutable) {
       super(cdc);
       this.cdcSwing = cdc;
       this.image = bi;
-      this.isMutable = true;
+      this.isMutable = isMutable;
       //#debug
       toStringNameDebug = "ImageSwing BufferedImage";
    }
@@ -108,6 +172,8 @@ public class ImageSwing extends ImageJ2se {
     * 
     * {@link ITechGraphics#IMPL_FLAG_3_TRANS_BACKGROUND}
     * is supported anyways and will be.
+    * <br>
+    * The image is {@link ImageSwing#isSolid()}: no pixels are allocated until its {@link IGraphics} is requested.
     * 
     * Creates relevant {@link IGraphics} object.
     * @param w
@@ -119,7 +185,14 @@ public class ImageSwing extends ImageJ2se {
    public ImageSwing(CoreDrawSwingCtx cdc, int w, int h, int color, int renderingFlags) {
       super(cdc);
       this.cdcSwing = cdc;
-      this.image = new java.awt.image.BufferedImage(w, h, java.awt.image.BufferedImage.TYPE_INT_ARGB);
+      if (w <= 0 || h <= 0) {
+         throw new IllegalArgumentException("Width (" + w + ") and height (" + h + ") cannot be <= 0");
+      }
+      this.widthSolid = w;
+      this.heightSolid = h;
+      this.isSolid = true;
+      //the background is filled with the opaque color, its alpha only tells whether there is one
+      this.colorSolid = ((color >>> 24) == 0) ? 0 : 0xFF000000 | color;
       this.isMutable = true;
       this.isEmpty = true;
       this.colorBackground = color;
@@ -128,6 +201,109 @@ public class ImageSwing extends ImageJ2se {
       toStringNameDebug = "ImageSwing  w" + w + " h" + h + " color=" + color;
    }
 
+   private synchronized void addShare(ImageSwing img) {
+      ArrayList list = shares;
+      if (list == null) {
+         list = new ArrayList(2);
+      } else {
+         //drops collected images, a new list is published
+         ArrayList live = new ArrayList(list.size() + 1);
+         for (int i = 0; i < list.size(); i++) {
+            if (((WeakReference) list.get(i)).get() != null) {
+               live.add(list.get(i));
+            }
+         }
+         list = live;
+      }
+      list.add(new WeakReference(img));
+      shares = list;
+   }
+
+   /**
+    * The immutable area x,y,w,h of this image through transform, for {@link ImageFactorySwing#createImage(IImage, int, int, int, int, int)}.
+    * <br>
+    * <li> a solid image gives a solid image
+    * <li> {@link IImage#TRANSFORM_0_NONE} gives a {@link BufferedImage#getSubimage(int, int, int, int)} sharing the raster.
+    * When the owner of the raster is mutable or pooled, the new image copies the pixels just before the owner is written or released
+    * <li> other transforms remap the area in a single pass of {@link RasterOpsSwing#copyTransform(int[], int, int, int, int, int, int[], int, int, int, int, int, int, boolean, boolean, boolean)}
+    * into a raster of the {@link ImagePoolSwing}
+    * <br>
+    * Arguments are checked by the caller.
+    * @param x
+    * @param y
+    * @param w
+    * @param h
+    * @param transform
+    * @param isSwap true when transform swaps width and height
+    * @return
+    */
+   synchronized ImageSwing createRegion(int x, int y, int w, int h, int transform, boolean isSwap) {
+      int dw = isSwap ? h : w;
+      int dh = isSwap ? w : h;
+      if (isSolid) {
+         ImageSwing img = new ImageSwing(cdcSwing, dw, dh, colorBackground, renderingFlags);
+         img.colorSolid = colorSolid;
+         img.isMutable = false;
+         return img;
+      }
+      BufferedImage bi = image;
+      if (transform == IImage.TRANSFORM_0_NONE) {
+         ImageSwing img = new ImageSwing(cdcSwing, bi.getSubimage(x, y, w, h), false);
+         ImageSwing owner = (shareOwner != null) ? shareOwner : this;
+         if (owner.isMutable || owner.isPooled) {
+            img.shareOwner = owner;
+            owner.addShare(img);
+         }
+         return img;
+      }
+      int type = (bi.getTransparency() == Transparency.OPAQUE) ? BufferedImage.TYPE_INT_RGB : BufferedImage.TYPE_INT_ARGB;
+      boolean isAlpha = type == BufferedImage.TYPE_INT_ARGB;
+      int[] src;
+      int srcIndex;
+      int srcScan;
+      //the raster of an image written by the framework is already read as an array. Others keep their acceleration
+      ImageSwing owner = (shareOwner != null) ? shareOwner : this;
+      if (RasterOpsSwing.isIntRaster(bi) && (owner.isMutable || owner.isPooled)) {
+         src = RasterOpsSwing.getData(bi);
+         srcIndex = RasterOpsSwing.getIndex(bi, x, y);
+         srcScan = RasterOpsSwing.getStride(bi);
+      } else {
+         src = new int[w * h];
+         RasterOpsSwing.getRGB(bi, x, y, w, h, src, 0, w);
+         srcIndex = 0;
+         srcScan = w;
+      }
+      //all pixels are written
+      BufferedImage dst = cdcSwing.getImageFactorySwing().getImagePoolSwing().acquire(dw, dh, type, false);
+      int[] data = RasterOpsSwing.getData(dst);
+      RasterOpsSwing.copyTransform(src, srcIndex, srcScan, w, h, transform, data, 0, dw, 0, 0, dw, dh, isAlpha, isAlpha, false);
+      ImageSwing img = new ImageSwing(cdcSwing, dst, false);
+      img.isPooled = true;
+      return img;
+   }
+
+   /**
+    * Copies the shared pixels into a raster owned by this image
+    */
+   private synchronized void detach() {
+      if (shareOwner == null) {
+         return;
+      }
+      shareOwner = null;
+      BufferedImage bi = image;
+      BufferedImage copy;
+      if (RasterOpsSwing.isIntRaster(bi)) {
+         int w = bi.getWidth();
+         int h = bi.getHeight();
+         copy = cdcSwing.getImageFactorySwing().getImagePoolSwing().acquire(w, h, bi.getType(), false);
+         RasterOpsSwing.copyRows(RasterOpsSwing.getData(bi), RasterOpsSwing.getIndex(bi, 0, 0), RasterOpsSwing.getStride(bi), RasterOpsSwing.getData(copy), 0, w, w, h);
+         isPooled = true;
+      } else {
+         copy = new BufferedImage(bi.getColorModel(), bi.copyData(null), bi.isAlphaPremultiplied(), null);
+      }
+      image = copy;
+   }
+
    /**
     * Returns the {@link IGraphics} object
     */
@@ -135,41 +311,71 @@ public class ImageSwing extends ImageJ2se {
       if (!isMutable)
          throw new IllegalStateException();
       if (graphics == null) {
-         graphics = new GraphicsSwing(cdcSwing, image.createGraphics());
-         if (isEmpty) {
-            //we have to initialize the background
-            int w = image.getWidth();
-            int h = image.getHeight();
-            int alpha = (colorBackground >> 24) & 0xFF;
-            if (alpha == 0) {
-               //fill graphics with clear pixels
-               graphics.setComposite(AlphaComposite.getInstance(AlphaComposite.CLEAR));
-               graphics.fillRect(0, 0, w, h);
-               //reset composite
-               graphics.setComposite(AlphaComposite.getInstance(AlphaComposite.SRC_OVER));
-            } else {
-               graphics.setColor(colorBackground);
-               graphics.fillRect(0, 0, w, h);
-            }
-         }
+         graphics = new GraphicsSwing(cdcSwing, getImageSwing().createGraphics());
+         graphics.setImageTarget(this);
          graphics.toStringSetNameDebug(toStringNameDebug);
          graphics.setClip(0, 0, image.getWidth(), image.getHeight());
       }
       return graphics;
    }
 
+   /**
+    * The pixel value of the whole image while {@link ImageSwing#isSolid()}.
+    * <br>
+    * 0 for a transparent background, otherwise the opaque background color: the alpha of a background color is ignored.
+    * @return
+    */
+   public int getColorSolid() {
+      return colorSolid;
+   }
+
+   /**
+    * Changes each time pixels of the image are modified through its {@link GraphicsSwing}
+    * @return
+    */
+   public int getModCount() {
+      return modCount;
+   }
+
    public int getHeight() {
+      if (isSolid) {
+         return heightSolid;
+      }
       return image.getHeight(null);
    }
 
    /**
-    * 
+    * Allocates the pixels of a {@link ImageSwing#isSolid()} image.
+    * <br>
+    * A transparent background is already the state of a new raster. Others are written once in the raster.
     * @return
     */
    public BufferedImage getImageSwing() {
+      if (isSolid) {
+         synchronized (this) {
+            if (isSolid) {
+               ImagePoolSwing pool = cdcSwing.getImageFactorySwing().getImagePoolSwing();
+               BufferedImage bi = pool.acquire(widthSolid, heightSolid, BufferedImage.TYPE_INT_ARGB, colorSolid == 0);
+               //a loading image may swap its pixels in while bi is drawn
+               isPooled = task == null;
+               if (colorSolid != 0) {
+                  RasterOpsSwing.fill(RasterOpsSwing.getData(bi), 0, widthSolid, widthSolid, heightSolid, colorSolid);
+               }
+               image = bi;
+               isSolid = false;
+            }
+         }
+      }
       return image;
    }
 
+   /**
+    * Reads pixels with {@link RasterOpsSwing#getRGB(BufferedImage, int, int, int, int, int[], int, int)}, which keeps
+    * the Java2D acceleration of the image.
+    * <br>
+    * Drawing this image into an int raster {@link ImageSwing}, or drawing a transformed region of it, reads its pixel array
+    * directly when it is an int raster. From then on, Java2D copies it from system memory when drawn to the screen.
+    */
    public void getRGB(int[] rgbData, int offset, int scanlength, int x, int y, int width, int height) {
       if (width <= 0 || height <= 0) {
          return;
@@ -196,16 +402,215 @@ public class ImageSwing extends ImageJ2se {
             throw new ArrayIndexOutOfBoundsException();
          }
       }
-
-      try {
-         (new PixelGrabber(image, x, y, width, height, rgbData, offset, scanlength)).grabPixels();
-      } catch (InterruptedException e) {
-         e.printStackTrace();
+      if (isSolid) {
+         RasterOpsSwing.fill(rgbData, offset, scanlength, width, height, colorSolid);
+         return;
       }
+      RasterOpsSwing.getRGB(image, x, y, width, height, rgbData, offset, scanlength);
    }
 
    public int getWidth() {
+      if (isSolid) {
+         return widthSolid;
+      }
       return image.getWidth(null);
    }
 
+   /**
+    * True while the {@link ImageLoaderSwing} decodes the pixels of this image. It is drawn as a transparent placeholder until then.
+    * @return
+    */
+   public boolean isLoading() {
+      ImageLoaderSwing.Task t = task;
+      return t != null && t.isLoading();
+   }
+
+   /**
+    * True while an image created with a background color has not been written into.
+    * <br>
+    * Its pixels are not allocated: {@link ImageSwing#getRGB(int[], int, int, int, int, int, int)} and
+    * the drawImage and drawRegion of {@link GraphicsSwing} use {@link ImageSwing#getColorSolid()}.
+    * {@link ImageSwing#getGraphics()} and {@link ImageSwing#getImageSwing()} allocate them.
+    * @return
+    */
+   public boolean isSolid() {
+      return isSolid;
+   }
+
+   /**
+    * Gives the pixels of this image back to the {@link ImagePoolSwing} of the ctx, when they were taken from it.
+    * <br>
+    * An image created with a background color is then {@link ImageSwing#isSolid()} again, as it was created.
+    * Others are not usable anymore.
+    * <br>
+    * The {@link GraphicsSwing} returned by {@link ImageSwing#getGraphics()} and the {@link BufferedImage} returned
+    * by {@link ImageSwing#getImageSwing()} must not be used afterwards.
+    * <br>
+    * Does nothing when the pixels were not taken from the pool.
+    */
+   public void release() {
+      if (!isPooled) {
+         return;
+      }
+      unshare();
+      isPooled = false;
+      if (graphics != null) {
+         graphics.destroy();
+         graphics = null;
+      }
+      cdcSwing.getImageFactorySwing().getImagePoolSwing().release(image);
+      image = null;
+      modCount++;
+      if (widthSolid != 0) {
+         isSolid = true;
+      }
+   }
+
+   /**
+    * Swaps in the pixels decoded by the {@link ImageLoaderSwing}, from any thread.
+    * <br>
+    * A raster allocated for the placeholder meanwhile is left to the garbage collector, it may still be drawn.
+    * @param bi
+    */
+   synchronized void setDecoded(BufferedImage bi) {
+      image = bi;
+      isPooled = false;
+      modCount++;
+      //volatile write, publishes image
+      isSolid = false;
+   }
+
+   /**
+    * Placeholder of the decode t, immutable
+    * @param t
+    */
+   void setLoading(ImageLoaderSwing.Task t) {
+      task = t;
+      isMutable = false;
+      //#debug
+      toStringNameDebug = "ImageSwing loading w" + widthSolid + " h" + heightSolid;
+   }
+
+   /**
+    * Called before the pixels of this image are written or released.
+    * Images sharing its raster, see {@link ImageSwing#createRegion(int, int, int, int, int, boolean)}, copy their pixels first.
+    * <br>
+    * A single volatile read when the raster is not shared.
+    */
+   void unshare() {
+      if (shares == null) {
+         return;
+      }
+      ArrayList list;
+      synchronized (this) {
+         list = shares;
+         shares = null;
+      }
+      if (list == null) {
+         return;
+      }
+      for (int i = 0; i < list.size(); i++) {
+         ImageSwing img = (ImageSwing) ((WeakReference) list.get(i)).get();
+         if (img != null) {
+            img.detach();
+         }
+      }
+   }
+
+   /**
+    * Shifts the pixels of the area x,y,w,h by dx,dy, in place. Pixels moved out of the area are lost.
+    * <br>
+    * Unlike {@link GraphicsSwing#copyArea(int, int, int, int, int, int, int)}, pixels are moved as they are, alpha included,
+    * whatever the composite. Int rasters are moved with a single pass of {@link RasterOpsSwing#moveRows(int[], int, int, int, int, int)}.
+    * <br>
+    * <br>
+    * The strips of the area uncovered by the move keep their old pixels. Their rectangles x,y,w,h are written to exposed
+    * so that the caller repaints only them: a full width strip for dy, then the rest of the strip for dx.
+    * When the shift is as large as the area, nothing moves and the whole area is exposed.
+    * @param x
+    * @param y
+    * @param w
+    * @param h
+    * @param dx positive to move pixels right
+    * @param dy positive to move pixels down
+    * @param exposed room for 2 rectangles, 8 ints. May be null
+    * @return number of rectangles written to exposed, 0 to 2
+    * @throws IllegalStateException if the image is immutable
+    * @throws IllegalArgumentException if the area is not inside the image
+    */
+   public int scroll(int x, int y, int w, int h, int dx, int dy, int[] exposed) {
+      if (!isMutable) {
+         throw new IllegalStateException();
+      }
+      if (x < 0 || y < 0 || w < 0 || h < 0 || x + w > getWidth() || y + h > getHeight()) {
+         throw new IllegalArgumentException("Area out of Image");
+      }
+      if (w == 0 || h == 0 || (dx == 0 && dy == 0)) {
+         return 0;
+      }
+      int adx = dx < 0 ? -dx : dx;
+      int ady = dy < 0 ? -dy : dy;
+      if (adx >= w || ady >= h) {
+         if (exposed != null) {
+            setRect(exposed, 0, x, y, w, h);
+         }
+         return 1;
+      }
+      int mw = w - adx;
+      int mh = h - ady;
+      //moving the pixels of a solid image changes nothing
+      if (!isSolid) {
+         unshare();
+         int sx = x + (dx < 0 ? adx : 0);
+         int sy = y + (dy < 0 ? ady : 0);
+         if (RasterOpsSwing.isIntRaster(image)) {
+            int[] data = RasterOpsSwing.getData(image);
+            int srcIndex = RasterOpsSwing.getIndex(image, sx, sy);
+            int dstIndex = RasterOpsSwing.getIndex(image, sx + dx, sy + dy);
+            RasterOpsSwing.moveRows(data, srcIndex, dstIndex, RasterOpsSwing.getStride(image), mw, mh);
+         } else {
+            Graphics2D g = image.createGraphics();
+            g.setComposite(AlphaComposite.Src);
+            g.copyArea(sx, sy, mw, mh, dx, dy);
+            g.dispose();
+         }
+         modCount++;
+         if (graphics != null && graphics.getDamageTracker() != null) {
+            graphics.getDamageTracker().addArea(x, y, x + w, y + h);
+         }
+      }
+      if (exposed == null) {
+         return (dx != 0 && dy != 0) ? 2 : 1;
+      }
+      int count = 0;
+      if (dy != 0) {
+         setRect(exposed, 0, x, dy > 0 ? y : y + mh, w, ady);
+         count++;
+      }
+      if (dx != 0) {
+         setRect(exposed, count * 4, dx > 0 ? x : x + mw, dy > 0 ? y + ady : y, adx, mh);
+         count++;
+      }
+      return count;
+   }
+
+   /**
+    * Scrolls the whole image
+    * @param dx
+    * @param dy
+    * @param exposed
+    * @return
+    * @see ImageSwing#scroll(int, int, int, int, int, int, int[])
+    */
+   public int scroll(int dx, int dy, int[] exposed) {
+      return scroll(0, 0, getWidth(), getHeight(), dx, dy, exposed);
+   }
+
+   private static void setRect(int[] xywh, int index, int x, int y, int w, int h) {
+      xywh[index] = x;
+      xywh[index + 1] = y;
+      xywh[index + 2] = w;
+      xywh[index + 3] = h;
+   }
+
 }
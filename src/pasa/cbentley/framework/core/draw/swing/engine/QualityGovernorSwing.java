@@ -0,0 +1,287 @@
+/*
+ * (c) 2018-2020 Charles-Philip Bentley
+ * This code is licensed under MIT license (see LICENSE.txt for details)
+ */
+package pasa.cbentley.framework.core.draw.swing.engine;
+
+import java.awt.RenderingHints;
+
+import pasa.cbentley.byteobjects.src4.ctx.IEventsBO;
+import pasa.cbentley.core.src4.event.BusEvent;
+import pasa.cbentley.core.src4.event.EventBusArray;
+import pasa.cbentley.core.src4.logging.Dctx;
+import pasa.cbentley.framework.core.draw.swing.ctx.ConfigCoreDrawSwingDef;
+import pasa.cbentley.framework.core.draw.swing.ctx.CoreDrawSwingCtx;
+import pasa.cbentley.framework.coredraw.src4.ctx.IEventsCoreDraw;
+import pasa.cbentley.framework.coredraw.src4.ctx.ObjectCDC;
+
+/**
+ * Lowers rendering quality when frames take longer than a time budget, and raises it back when there is headroom.
+ * <br>
+ * <br>
+ * The host measures each frame with {@link QualityGovernorSwing#frameStart()} and {@link QualityGovernorSwing#frameEnd()},
+ * or gives its duration to {@link QualityGovernorSwing#frameTime(long)}.
+ * The governor keeps a moving average of frame times, compared to {@link ConfigCoreDrawSwingDef#getQualityBudgetMicros()}
+ * <li> average over budget for {@link QualityGovernorSwing#FRAMES_DOWN} frames: one level down
+ * <li> average under {@link QualityGovernorSwing#HEADROOM_PERCENT} of the budget for {@link QualityGovernorSwing#FRAMES_UP} frames: one level up
+ * <br>
+ * <br>
+ * Levels, from best to fastest
+ * <li> {@link QualityGovernorSwing#LEVEL_0_FULL} anti alias as set by {@link pasa.cbentley.framework.coredraw.src4.ctx.IBOCtxSettingsCoreDraw}
+ * <li> {@link QualityGovernorSwing#LEVEL_1_TEXT_AA} shapes are not anti aliased. Text is as set
+ * <li> {@link QualityGovernorSwing#LEVEL_2_SPEED} speed rendering, alpha interpolation and color rendering
+ * <li> {@link QualityGovernorSwing#LEVEL_3_NO_AA} nothing is anti aliased
+ * <br>
+ * A level never turns on anti alias switched off by the settings.
+ * <br>
+ * <br>
+ * The {@link RenderingHints} of all levels are created once. Levels below {@link QualityGovernorSwing#LEVEL_2_SPEED} only
+ * carry the two anti alias keys, so that rendering, alpha interpolation and color rendering hints of the caller are kept.
+ * <br>
+ * Going back above {@link QualityGovernorSwing#LEVEL_2_SPEED}, the speed keys are set to their defaults with {@link QualityGovernorSwing#getHintsSpeedReset()}.
+ * <br>
+ * A level change is announced with a {@link IEventsBO#PID_01_CTX_1_SETTINGS_CHANGE} event of param {@link IEventsCoreDraw#SETTINGS_1_ALIAS},
+ * on which the {@link GraphicsRegistrySwing} pushes the hints of the new level to the registered {@link GraphicsSwing}.
+ * <br>
+ * Frame methods are called by the thread drawing the frames.
+ *
+ * @author Charles-Philip Bentley
+ * @see CoreDrawSwingCtx#getQualityGovernorSwing()
+ */
+public class QualityGovernorSwing extends ObjectCDC {
+
+   /**
+    * Consecutive frames over budget before going down a level
+    */
+   public static final int         FRAMES_DOWN      = 4;
+
+   /**
+    * Consecutive frames with headroom before going up a level
+    */
+   public static final int         FRAMES_UP        = 60;
+
+   /**
+    * Frames with an average under this percentage of the budget have headroom
+    */
+   public static final int         HEADROOM_PERCENT = 60;
+
+   public static final int         LEVEL_0_FULL     = 0;
+
+   public static final int         LEVEL_1_TEXT_AA  = 1;
+
+   public static final int         LEVEL_2_SPEED    = 2;
+
+   public static final int         LEVEL_3_NO_AA    = 3;
+
+   /**
+    * Weight of a new frame in the moving average is 1 / 2^AVERAGE_SHIFT
+    */
+   private static final int        AVERAGE_SHIFT    = 3;
+
+   /**
+    * Moving average of frame times in microseconds
+    */
+   private int                     average;
+
+   private final int               budget;
+
+   private int                     countDown;
+
+   private int                     countOver;
+
+   private int                     countUnder;
+
+   private int                     countUp;
+
+   private long                    frameStart;
+
+   /**
+    * [level][index] with index bit 0 for shapes anti alias and bit 1 for text anti alias
+    */
+   private final RenderingHints[][] hints;
+
+   /**
+    * Default values of the keys only set by speed levels
+    */
+   private final RenderingHints    hintsSpeedReset;
+
+   private volatile int            level;
+
+   /**
+    *
+    * @param cdc
+    * @param budget frame time budget in microseconds. 0 or less never changes the level on its own
+    */
+   public QualityGovernorSwing(CoreDrawSwingCtx cdc, int budget) {
+      super(cdc);
+      this.budget = budget;
+      hints = new RenderingHints[4][4];
+      for (int lvl = 0; lvl < 4; lvl++) {
+         for (int i = 0; i < 4; i++) {
+            hints[lvl][i] = createHints(lvl, (i & 1) != 0, (i & 2) != 0);
+         }
+      }
+      hintsSpeedReset = new RenderingHints(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_DEFAULT);
+      hintsSpeedReset.put(RenderingHints.KEY_ALPHA_INTERPOLATION, RenderingHints.VALUE_ALPHA_INTERPOLATION_DEFAULT);
+      hintsSpeedReset.put(RenderingHints.KEY_COLOR_RENDERING, RenderingHints.VALUE_COLOR_RENDER_DEFAULT);
+   }
+
+   private RenderingHints createHints(int level, boolean isAA, boolean isAAText) {
+      boolean isShapes = isAA && level == LEVEL_0_FULL;
+      boolean isText = isAAText && level != LEVEL_3_NO_AA;
+      boolean isSpeed = level >= LEVEL_2_SPEED;
+      Object aa = isShapes ? RenderingHints.VALUE_ANTIALIAS_ON : RenderingHints.VALUE_ANTIALIAS_OFF;
+      RenderingHints rh = new RenderingHints(RenderingHints.KEY_ANTIALIASING, aa);
+      Object aaText = isText ? RenderingHints.VALUE_TEXT_ANTIALIAS_ON : RenderingHints.VALUE_TEXT_ANTIALIAS_OFF;
+      rh.put(RenderingHints.KEY_TEXT_ANTIALIASING, aaText);
+      if (isSpeed) {
+         rh.put(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_SPEED);
+         rh.put(RenderingHints.KEY_ALPHA_INTERPOLATION, RenderingHints.VALUE_ALPHA_INTERPOLATION_SPEED);
+         rh.put(RenderingHints.KEY_COLOR_RENDERING, RenderingHints.VALUE_COLOR_RENDER_SPEED);
+      }
+      return rh;
+   }
+
+   /**
+    * Ends the frame started by {@link QualityGovernorSwing#frameStart()}
+    */
+   public void frameEnd() {
+      if (frameStart != 0) {
+         frameTime(System.nanoTime() - frameStart);
+         frameStart = 0;
+      }
+   }
+
+   public void frameStart() {
+      frameStart = System.nanoTime();
+   }
+
+   /**
+    * Adds the duration of a frame to the average and changes the level when needed
+    * @param nanos
+    */
+   public void frameTime(long nanos) {
+      if (budget <= 0) {
+         return;
+      }
+      int micros = (int) Math.min(nanos / 1000, Integer.MAX_VALUE >> AVERAGE_SHIFT);
+      average += (micros - average) >> AVERAGE_SHIFT;
+      if (average > budget) {
+         countUnder = 0;
+         countOver++;
+         if (countOver >= FRAMES_DOWN && level < LEVEL_3_NO_AA) {
+            countOver = 0;
+            countDown++;
+            //frames at the new level must show the budget is still exceeded
+            average = budget;
+            setLevel(level + 1);
+         }
+      } else if ((long) average * 100 < (long) budget * HEADROOM_PERCENT) {
+         countOver = 0;
+         countUnder++;
+         if (countUnder >= FRAMES_UP && level > LEVEL_0_FULL) {
+            countUnder = 0;
+            countUp++;
+            setLevel(level - 1);
+         }
+      } else {
+         countOver = 0;
+         countUnder = 0;
+      }
+   }
+
+   /**
+    * Moving average of frame times in microseconds
+    * @return
+    */
+   public int getAverage() {
+      return average;
+   }
+
+   public int getBudget() {
+      return budget;
+   }
+
+   /**
+    * Number of times the level went down
+    * @return
+    */
+   public int getCountDown() {
+      return countDown;
+   }
+
+   /**
+    * Number of times the level went up
+    * @return
+    */
+   public int getCountUp() {
+      return countUp;
+   }
+
+   /**
+    * Hints of the current level. Shared, must not be modified.
+    * @param isAA anti alias of shapes in the settings
+    * @param isAAText anti alias of text in the settings
+    * @return
+    */
+   public RenderingHints getHints(boolean isAA, boolean isAAText) {
+      return hints[level][(isAA ? 1 : 0) | (isAAText ? 2 : 0)];
+   }
+
+   /**
+    * Default rendering, alpha interpolation and color rendering hints, to add when leaving a speed level.
+    * Shared, must not be modified.
+    * @return
+    */
+   public RenderingHints getHintsSpeedReset() {
+      return hintsSpeedReset;
+   }
+
+   public int getLevel() {
+      return level;
+   }
+
+   /**
+    * Forces the level. The governor keeps adapting from it.
+    * <br>
+    * A change sends the settings change event.
+    * @param level {@link QualityGovernorSwing#LEVEL_0_FULL} to {@link QualityGovernorSwing#LEVEL_3_NO_AA}
+    */
+   public void setLevel(int level) {
+      level = Math.max(LEVEL_0_FULL, Math.min(LEVEL_3_NO_AA, level));
+      if (level == this.level) {
+         return;
+      }
+      this.level = level;
+      //#debug
+      toDLog().pFlow("level=" + level + " average=" + average + " budget=" + budget, this, QualityGovernorSwing.class, "setLevel", LVL_05_FINE, true);
+      EventBusArray bus = cdc.getBOC().getEventBus();
+      BusEvent be = bus.createEvent(IEventsBO.PID_01_CTX, IEventsBO.PID_01_CTX_1_SETTINGS_CHANGE, this);
+      be.setParam1(IEventsCoreDraw.SETTINGS_1_ALIAS);
+      bus.putOnBus(be);
+   }
+
+   //#mdebug
+   public void toString(Dctx dc) {
+      dc.root(this, QualityGovernorSwing.class, "@line5");
+      toStringPrivate(dc);
+      super.toString(dc.sup());
+   }
+
+   private void toStringPrivate(Dctx dc) {
+      dc.appendVarWithSpace("level", level);
+      dc.appendVarWithSpace("average", average);
+      dc.appendVarWithSpace("budget", budget);
+      dc.appendVarWithSpace("countDown", countDown);
+      dc.appendVarWithSpace("countUp", countUp);
+   }
+
+   public void toString1Line(Dctx dc) {
+      dc.root1Line(this, QualityGovernorSwing.class);
+      toStringPrivate(dc);
+      super.toString1Line(dc.sup1Line());
+   }
+
+   //#enddebug
+
+}
@@ -0,0 +1,498 @@
+/*
+ * (c) 2018-2020 Charles-Philip Bentley
+ * This code is licensed under MIT license (see LICENSE.txt for details)
+ */
+package pasa.cbentley.framework.core.draw.swing.engine;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.ComponentColorModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferInt;
+import java.awt.image.IndexColorModel;
+import java.awt.image.PixelInterleavedSampleModel;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
+import java.util.Arrays;
+
+import pasa.cbentley.framework.coredraw.src4.interfaces.IImage;
+
+/**
+ * Static helpers for reading and writing the int pixels of {@link BufferedImage#TYPE_INT_ARGB}
+ * and {@link BufferedImage#TYPE_INT_RGB} rasters directly in their {@link DataBufferInt}.
+ * <br>
+ * <br>
+ * Getting the data array of a {@link BufferedImage} makes Java2D stop caching it in video memory.
+ * Only images mostly written by the CPU should go through this class.
+ * <br>
+ * <br>
+ * Alpha blending uses the same 8 bits multiplication and division tables as the Java2D software loops,
+ * so that a SrcOver done here rounds like a SrcOver done by {@link java.awt.Graphics2D}.
+ * <br>
+ * <br>
+ * {@link RasterOpsSwing#getRGB(BufferedImage, int, int, int, int, int[], int, int)} reads through the {@link WritableRaster}
+ * instead, so that images the caller does not own keep their acceleration. It also reads the 8 bits byte rasters
+ * decoded by {@link javax.imageio.ImageIO} without a call per pixel.
+ *
+ * @author Charles-Philip Bentley
+ *
+ */
+public class RasterOpsSwing {
+
+   /**
+    * div8[a][v] = v * 255 / a rounded, clamped at 255
+    */
+   private static final byte[][] DIV8 = new byte[256][256];
+
+   /**
+    * Java2D blits leave the high byte of {@link BufferedImage#TYPE_INT_RGB} pixels at 0
+    */
+   static final int              MASK_RGB = 0x00FFFFFF;
+
+   /**
+    * mul8[a][v] = a * v / 255 rounded
+    */
+   private static final byte[][] MUL8 = new byte[256][256];
+
+   static {
+      for (int i = 1; i < 256; i++) {
+         int inc = (i << 16) + (i << 8) + i;
+         int val = inc + (1 << 23);
+         for (int j = 1; j < 256; j++) {
+            MUL8[i][j] = (byte) (val >>> 24);
+            val += inc;
+         }
+      }
+      for (int i = 1; i < 256; i++) {
+         long inc = ((0xFFL << 24) + i / 2) / i;
+         long val = 1L << 23;
+         for (int j = 0; j < i; j++) {
+            DIV8[i][j] = (byte) (val >>> 24);
+            val += inc;
+         }
+         for (int j = i; j < 256; j++) {
+            DIV8[i][j] = (byte) 255;
+         }
+      }
+   }
+
+   /**
+    * Blends a non premultiplied ARGB source pixel over a non premultiplied ARGB destination pixel.
+    * @param src
+    * @param dst
+    * @return
+    */
+   public static int blendSrcOver(int src, int dst) {
+      int srcA = src >>> 24;
+      if (srcA == 0xFF) {
+         return src;
+      } else if (srcA == 0) {
+         return dst;
+      }
+      int dstF = mul8(0xFF - srcA, dst >>> 24);
+      int resA = srcA + dstF;
+      int resR = mul8(srcA, (src >> 16) & 0xFF) + mul8(dstF, (dst >> 16) & 0xFF);
+      int resG = mul8(srcA, (src >> 8) & 0xFF) + mul8(dstF, (dst >> 8) & 0xFF);
+      int resB = mul8(srcA, src & 0xFF) + mul8(dstF, dst & 0xFF);
+      if (resA < 0xFF) {
+         resR = div8(resA, resR);
+         resG = div8(resA, resG);
+         resB = div8(resA, resB);
+      }
+      return (resA << 24) | (resR << 16) | (resG << 8) | resB;
+   }
+
+   /**
+    * Copies a block of pixels into an int raster.
+    * <br>
+    * Coordinates must already be clipped to the raster and to the clip of the caller.
+    *
+    * @param src ARGB pixels
+    * @param srcOffset index of the first pixel to copy
+    * @param srcScan may be negative
+    * @param dst raster data from {@link RasterOpsSwing#getData(BufferedImage)}
+    * @param dstOffset index from {@link RasterOpsSwing#getIndex(BufferedImage, int, int)}
+    * @param dstScan from {@link RasterOpsSwing#getStride(BufferedImage)}
+    * @param w
+    * @param h
+    * @param processAlpha when false, source alpha is ignored and pixels are written opaque
+    * @param dstAlpha false when destination is {@link BufferedImage#TYPE_INT_RGB}. High bytes are then written 0 like Java2D does
+    */
+   public static void copyBlend(int[] src, int srcOffset, int srcScan, int[] dst, int dstOffset, int dstScan, int w, int h, boolean processAlpha, boolean dstAlpha) {
+      int mask = dstAlpha ? 0xFFFFFFFF : MASK_RGB;
+      if (!processAlpha) {
+         for (int j = 0; j < h; j++) {
+            int s = srcOffset + j * srcScan;
+            int d = dstOffset + j * dstScan;
+            for (int i = 0; i < w; i++) {
+               dst[d + i] = (0xFF000000 | src[s + i]) & mask;
+            }
+         }
+      } else {
+         for (int j = 0; j < h; j++) {
+            int s = srcOffset + j * srcScan;
+            int d = dstOffset + j * dstScan;
+            for (int i = 0; i < w; i++) {
+               int p = src[s + i];
+               int a = p >>> 24;
+               if (a == 0xFF) {
+                  dst[d + i] = p & mask;
+               } else if (a != 0) {
+                  int dv = dst[d + i];
+                  if (!dstAlpha) {
+                     dv |= 0xFF000000;
+                  }
+                  dst[d + i] = blendSrcOver(p, dv) & mask;
+               }
+            }
+         }
+      }
+   }
+
+   /**
+    * Copies a block of pixels row by row with {@link System#arraycopy(Object, int, Object, int, int)}, alpha included.
+    *
+    * @param src
+    * @param srcOffset
+    * @param srcScan may be negative
+    * @param dst
+    * @param dstOffset
+    * @param dstScan
+    * @param w
+    * @param h
+    */
+   public static void copyRows(int[] src, int srcOffset, int srcScan, int[] dst, int dstOffset, int dstScan, int w, int h) {
+      for (int j = 0; j < h; j++) {
+         System.arraycopy(src, srcOffset + j * srcScan, dst, dstOffset + j * dstScan, w);
+      }
+   }
+
+   /**
+    * Copies a w,h source region through one of the 8 {@link IImage} TRANSFORM_* values by index remapping.
+    * <br>
+    * The destination area is w,h or h,w for the transforms that swap axes. Only its sub rectangle
+    * [cx0,cx1[ x [cy0,cy1[ is written, expressed relative to the destination top left.
+    *
+    * @param src source raster data
+    * @param srcIndex index of the top left pixel of the source region
+    * @param srcScan source stride
+    * @param w source region width
+    * @param h source region height
+    * @param transform {@link IImage#TRANSFORM_0_NONE} to {@link IImage#TRANSFORM_7_MIRROR_ROT90}
+    * @param dst destination raster data
+    * @param dstIndex index of the top left pixel of the destination area
+    * @param dstScan destination stride
+    * @param cx0
+    * @param cy0
+    * @param cx1
+    * @param cy1
+    * @param processAlpha false when source alpha must be ignored
+    * @param dstAlpha false when the destination is {@link BufferedImage#TYPE_INT_RGB}
+    * @param isBlend when false, source pixels replace destination pixels, alpha included
+    */
+   public static void copyTransform(int[] src, int srcIndex, int srcScan, int w, int h, int transform, int[] dst, int dstIndex, int dstScan, int cx0, int cy0, int cx1, int cy1, boolean processAlpha, boolean dstAlpha, boolean isBlend) {
+      //source index = origin + dx * stepX + dy * stepY
+      int origin;
+      int stepX;
+      int stepY;
+      switch (transform) {
+         case IImage.TRANSFORM_0_NONE:
+            origin = srcIndex;
+            stepX = 1;
+            stepY = srcScan;
+            break;
+         case IImage.TRANSFORM_5_ROT_90:
+            origin = srcIndex + (h - 1) * srcScan;
+            stepX = -srcScan;
+            stepY = 1;
+            break;
+         case IImage.TRANSFORM_3_ROT_180:
+            origin = srcIndex + (h - 1) * srcScan + (w - 1);
+            stepX = -1;
+            stepY = -srcScan;
+            break;
+         case IImage.TRANSFORM_6_ROT_270:
+            origin = srcIndex + (w - 1);
+            stepX = srcScan;
+            stepY = -1;
+            break;
+         case IImage.TRANSFORM_2_FLIP_V_MIRROR:
+            origin = srcIndex + (w - 1);
+            stepX = -1;
+            stepY = srcScan;
+            break;
+         case IImage.TRANSFORM_1_FLIP_H_MIRROR_ROT180:
+            origin = srcIndex + (h - 1) * srcScan;
+            stepX = 1;
+            stepY = -srcScan;
+            break;
+         case IImage.TRANSFORM_7_MIRROR_ROT90:
+            origin = srcIndex + (h - 1) * srcScan + (w - 1);
+            stepX = -srcScan;
+            stepY = -1;
+            break;
+         case IImage.TRANSFORM_4_MIRROR_ROT270:
+            origin = srcIndex;
+            stepX = srcScan;
+            stepY = 1;
+            break;
+         default:
+            throw new IllegalArgumentException("Bad transform " + transform);
+      }
+      int mask = dstAlpha ? 0xFFFFFFFF : MASK_RGB;
+      for (int dy = cy0; dy < cy1; dy++) {
+         int s = origin + dy * stepY + cx0 * stepX;
+         int d = dstIndex + dy * dstScan + cx0;
+         int dEnd = d + (cx1 - cx0);
+         if (!processAlpha) {
+            for (; d < dEnd; d++, s += stepX) {
+               dst[d] = (0xFF000000 | src[s]) & mask;
+            }
+         } else if (!isBlend) {
+            for (; d < dEnd; d++, s += stepX) {
+               dst[d] = src[s] & mask;
+            }
+         } else {
+            for (; d < dEnd; d++, s += stepX) {
+               int p = src[s];
+               int a = p >>> 24;
+               if (a == 0xFF) {
+                  dst[d] = p & mask;
+               } else if (a != 0) {
+                  int dv = dst[d];
+                  if (!dstAlpha) {
+                     dv |= 0xFF000000;
+                  }
+                  dst[d] = blendSrcOver(p, dv) & mask;
+               }
+            }
+         }
+      }
+   }
+
+   public static int div8(int a, int v) {
+      return DIV8[a][v] & 0xFF;
+   }
+
+   /**
+    * Sets the w,h area starting at index to value
+    * @param dst
+    * @param index index of the top left pixel of the area
+    * @param scan stride of dst
+    * @param w
+    * @param h
+    * @param value
+    */
+   public static void fill(int[] dst, int index, int scan, int w, int h, int value) {
+      for (int j = 0; j < h; j++) {
+         int start = index + j * scan;
+         Arrays.fill(dst, start, start + w, value);
+      }
+   }
+
+   /**
+    * Draws argb with SrcOver on the w,h area starting at index, as {@link RasterOpsSwing#copyBlend(int[], int, int, int[], int, int, int, int, boolean, boolean)}
+    * does with a source of argb pixels.
+    * @param dst
+    * @param index index of the top left pixel of the area
+    * @param scan stride of dst
+    * @param w
+    * @param h
+    * @param argb
+    * @param dstAlpha false when destination is {@link BufferedImage#TYPE_INT_RGB}
+    */
+   public static void fillBlend(int[] dst, int index, int scan, int w, int h, int argb, boolean dstAlpha) {
+      int mask = dstAlpha ? 0xFFFFFFFF : MASK_RGB;
+      int a = argb >>> 24;
+      if (a == 0xFF) {
+         fill(dst, index, scan, w, h, argb & mask);
+      } else if (a != 0) {
+         for (int j = 0; j < h; j++) {
+            int d = index + j * scan;
+            for (int i = 0; i < w; i++) {
+               int dv = dst[d + i];
+               if (!dstAlpha) {
+                  dv |= 0xFF000000;
+               }
+               dst[d + i] = blendSrcOver(argb, dv) & mask;
+            }
+         }
+      }
+   }
+
+   /**
+    * The pixel array of an int {@link BufferedImage}.
+    * <br>
+    * Java2D no longer caches bi in video memory afterwards. Drawing bi to an accelerated surface becomes a copy from system memory.
+    * @param bi must be {@link RasterOpsSwing#isIntRaster(BufferedImage)}
+    * @return
+    */
+   public static int[] getData(BufferedImage bi) {
+      return ((DataBufferInt) bi.getRaster().getDataBuffer()).getData();
+   }
+
+   /**
+    * Index of pixel x,y in the array returned by {@link RasterOpsSwing#getData(BufferedImage)}.
+    * <br>
+    * Works for images created by {@link BufferedImage#getSubimage(int, int, int, int)}
+    * @param bi
+    * @param x
+    * @param y
+    * @return
+    */
+   public static int getIndex(BufferedImage bi, int x, int y) {
+      WritableRaster raster = bi.getRaster();
+      int stride = ((SinglePixelPackedSampleModel) raster.getSampleModel()).getScanlineStride();
+      int dx = x - raster.getSampleModelTranslateX();
+      int dy = y - raster.getSampleModelTranslateY();
+      return raster.getDataBuffer().getOffset() + dy * stride + dx;
+   }
+
+   /**
+    * Reads the ARGB values of the area x,y,w,h of bi into dst, with the results of {@link BufferedImage#getRGB(int, int, int, int, int[], int, int)}.
+    * <li> int rasters: rows are copied by the {@link WritableRaster}. Opaque alpha is added for {@link BufferedImage#TYPE_INT_RGB}
+    * <li> interleaved 8 bits sRGB and 8 bits indexed byte rasters: rows are copied by the {@link WritableRaster}, then converted in one loop per row
+    * <li> other rasters: {@link BufferedImage#getRGB(int, int, int, int, int[], int, int)}
+    * <br>
+    * Pixels are read with {@link WritableRaster#getDataElements(int, int, int, int, Object)}. Unlike {@link RasterOpsSwing#getData(BufferedImage)},
+    * reading does not make Java2D stop caching bi in video memory.
+    * <br>
+    * Arguments must already be checked.
+    * @param bi
+    * @param x
+    * @param y
+    * @param w
+    * @param h
+    * @param dst
+    * @param offset index in dst of pixel x,y
+    * @param scan may be negative
+    */
+   public static void getRGB(BufferedImage bi, int x, int y, int w, int h, int[] dst, int offset, int scan) {
+      WritableRaster raster = bi.getRaster();
+      if (isIntRaster(bi)) {
+         int mask = (bi.getType() == BufferedImage.TYPE_INT_ARGB) ? 0 : 0xFF000000;
+         if (offset == 0 && scan == w) {
+            raster.getDataElements(x, y, w, h, dst);
+            if (mask != 0) {
+               for (int i = w * h - 1; i >= 0; i--) {
+                  dst[i] |= mask;
+               }
+            }
+            return;
+         }
+         int[] row = new int[w];
+         for (int j = 0; j < h; j++) {
+            raster.getDataElements(x, y + j, w, 1, row);
+            int d = offset + j * scan;
+            for (int i = 0; i < w; i++) {
+               dst[d + i] = mask | row[i];
+            }
+         }
+         return;
+      }
+      ColorModel cm = bi.getColorModel();
+      if (raster.getSampleModel() instanceof PixelInterleavedSampleModel && raster.getTransferType() == DataBuffer.TYPE_BYTE) {
+         int numBands = raster.getNumBands();
+         if (cm instanceof IndexColorModel && numBands == 1 && cm.getPixelSize() == 8) {
+            IndexColorModel icm = (IndexColorModel) cm;
+            byte[] row = new byte[w];
+            for (int j = 0; j < h; j++) {
+               raster.getDataElements(x, y + j, w, 1, row);
+               int d = offset + j * scan;
+               for (int i = 0; i < w; i++) {
+                  dst[d + i] = icm.getRGB(row[i] & 0xFF);
+               }
+            }
+            return;
+         }
+         if (isComponentSRGB8(cm, numBands)) {
+            //samples of a pixel are given in band order: red, green, blue and alpha
+            byte[] row = new byte[w * numBands];
+            for (int j = 0; j < h; j++) {
+               raster.getDataElements(x, y + j, w, 1, row);
+               int d = offset + j * scan;
+               int end = d + w;
+               int s = 0;
+               if (numBands == 3) {
+                  for (; d < end; d++, s += 3) {
+                     dst[d] = 0xFF000000 | ((row[s] & 0xFF) << 16) | ((row[s + 1] & 0xFF) << 8) | (row[s + 2] & 0xFF);
+                  }
+               } else {
+                  for (; d < end; d++, s += 4) {
+                     dst[d] = (row[s + 3] << 24) | ((row[s] & 0xFF) << 16) | ((row[s + 1] & 0xFF) << 8) | (row[s + 2] & 0xFF);
+                  }
+               }
+            }
+            return;
+         }
+      }
+      bi.getRGB(x, y, w, h, dst, offset, scan);
+   }
+
+   /**
+    * Number of ints between 2 rows in the array returned by {@link RasterOpsSwing#getData(BufferedImage)}
+    * @param bi
+    * @return
+    */
+   public static int getStride(BufferedImage bi) {
+      return ((SinglePixelPackedSampleModel) bi.getRaster().getSampleModel()).getScanlineStride();
+   }
+
+   /**
+    * True when cm gives the RGB or RGBA bytes of numBands samples as they are, without premultiplied alpha
+    * @param cm
+    * @param numBands
+    * @return
+    */
+   private static boolean isComponentSRGB8(ColorModel cm, int numBands) {
+      if (!(cm instanceof ComponentColorModel) || !cm.getColorSpace().isCS_sRGB() || cm.isAlphaPremultiplied()) {
+         return false;
+      }
+      if (cm.getNumComponents() != numBands || (numBands != 3 && numBands != 4) || cm.hasAlpha() != (numBands == 4)) {
+         return false;
+      }
+      for (int i = 0; i < numBands; i++) {
+         if (cm.getComponentSize(i) != 8) {
+            return false;
+         }
+      }
+      return true;
+   }
+
+   /**
+    * True when the image stores one ARGB or RGB int per pixel
+    * @param bi
+    * @return
+    */
+   public static boolean isIntRaster(BufferedImage bi) {
+      int type = bi.getType();
+      return type == BufferedImage.TYPE_INT_ARGB || type == BufferedImage.TYPE_INT_RGB;
+   }
+
+   /**
+    * Moves a block of pixels inside data, alpha included. Source and destination may overlap:
+    * rows are copied from the bottom when the destination is after the source.
+    * @param data
+    * @param srcIndex index of the top left pixel of the source
+    * @param dstIndex index of the top left pixel of the destination
+    * @param scan stride of data
+    * @param w
+    * @param h
+    */
+   public static void moveRows(int[] data, int srcIndex, int dstIndex, int scan, int w, int h) {
+      if (dstIndex > srcIndex) {
+         for (int j = h - 1; j >= 0; j--) {
+            System.arraycopy(data, srcIndex + j * scan, data, dstIndex + j * scan, w);
+         }
+      } else {
+         for (int j = 0; j < h; j++) {
+            System.arraycopy(data, srcIndex + j * scan, data, dstIndex + j * scan, w);
+         }
+      }
+   }
+
+   public static int mul8(int a, int v) {
+      return MUL8[a][v] & 0xFF;
+   }
+
+}
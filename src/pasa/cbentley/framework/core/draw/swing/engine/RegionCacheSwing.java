@@ -0,0 +1,212 @@
+/*
+ * (c) 2018-2020 Charles-Philip Bentley
+ * This code is licensed under MIT license (see LICENSE.txt for details)
+ */
+package pasa.cbentley.framework.core.draw.swing.engine;
+
+import java.awt.image.BufferedImage;
+import java.lang.ref.WeakReference;
+
+import pasa.cbentley.core.src4.logging.Dctx;
+import pasa.cbentley.framework.core.draw.swing.ctx.CoreDrawSwingCtx;
+import pasa.cbentley.framework.coredraw.src4.ctx.ObjectCDC;
+import pasa.cbentley.framework.coredraw.src4.interfaces.IImage;
+
+/**
+ * Cache of transformed copies of image regions drawn by {@link GraphicsSwing#drawRegion(IImage, int, int, int, int, int, int, int, int)}.
+ * <br>
+ * <br>
+ * A copy is only built once the same region with the same transform has been asked {@link RegionCacheSwing#HITS_BUILD} times,
+ * so regions drawn once do not fill the cache.
+ * <br>
+ * <br>
+ * The cache is direct mapped on {@link RegionCacheSwing#SIZE} slots. Source images are weakly referenced.
+ * An entry is stale when the mod count of its source {@link ImageSwing} changed.
+ * Cached pixels are bounded by {@link RegionCacheSwing#MAX_PIXELS}.
+ * <br>
+ * Thread safe.
+ *
+ * @author Charles-Philip Bentley
+ *
+ */
+public class RegionCacheSwing extends ObjectCDC {
+
+   /**
+    * Number of requests of a region before a copy is built
+    */
+   public static final int         HITS_BUILD       = 2;
+
+   /**
+    * Bigger regions are never cached
+    */
+   public static final int         MAX_ENTRY_PIXELS = 1 << 16;
+
+   /**
+    * Maximum number of pixels held by all cached copies
+    */
+   public static final int         MAX_PIXELS       = 1 << 22;
+
+   /**
+    * Number of slots. Must be a power of 2
+    */
+   public static final int         SIZE             = 256;
+
+   private static final int        KEY_SIZE         = 6;
+
+   private int                     countBuild;
+
+   private int                     countHit;
+
+   private final int[]             hits             = new int[SIZE];
+
+   private final BufferedImage[]   images           = new BufferedImage[SIZE];
+
+   /**
+    * x,y,w,h,transform,modCount for each slot
+    */
+   private final int[]             keys             = new int[SIZE * KEY_SIZE];
+
+   private int                     pixels;
+
+   private final WeakReference[]   sources          = new WeakReference[SIZE];
+
+   public RegionCacheSwing(CoreDrawSwingCtx cdc) {
+      super(cdc);
+   }
+
+   /**
+    * Drops all cached copies
+    */
+   public synchronized void clear() {
+      for (int i = 0; i < SIZE; i++) {
+         sources[i] = null;
+         images[i] = null;
+         hits[i] = 0;
+      }
+      pixels = 0;
+   }
+
+   /**
+    * Drops the copies of regions of src, before src is given to another {@link ImageSwing} whose mod count may match old keys.
+    * See {@link ImagePoolSwing#release(BufferedImage)}
+    * @param src
+    */
+   public synchronized void remove(BufferedImage src) {
+      for (int i = 0; i < SIZE; i++) {
+         WeakReference ref = sources[i];
+         if (ref != null && ref.get() == src) {
+            sources[i] = null;
+            removeImage(i);
+            hits[i] = 0;
+         }
+      }
+   }
+
+   public int getCountBuild() {
+      return countBuild;
+   }
+
+   public int getCountHit() {
+      return countHit;
+   }
+
+   /**
+    * Returns the transformed copy of the region, or null when the region is not drawn often enough to be cached.
+    * <br>
+    * Returned image is w,h or h,w for transforms that swap axes. It must not be modified.
+    *
+    * @param src int raster source image
+    * @param modCount {@link ImageSwing#getModCount()} of the source
+    * @param x
+    * @param y
+    * @param w
+    * @param h
+    * @param transform
+    * @return
+    */
+   public synchronized BufferedImage getRegion(BufferedImage src, int modCount, int x, int y, int w, int h, int transform) {
+      if (w * h > MAX_ENTRY_PIXELS) {
+         return null;
+      }
+      int slot = hash(src, x, y, w, h, transform) & (SIZE - 1);
+      int k = slot * KEY_SIZE;
+      WeakReference ref = sources[slot];
+      boolean isMatch = ref != null && ref.get() == src && keys[k] == x && keys[k + 1] == y && keys[k + 2] == w && keys[k + 3] == h && keys[k + 4] == transform;
+      if (!isMatch || keys[k + 5] != modCount) {
+         //claim the slot for this region
+         if (!isMatch) {
+            sources[slot] = new WeakReference(src);
+         }
+         keys[k] = x;
+         keys[k + 1] = y;
+         keys[k + 2] = w;
+         keys[k + 3] = h;
+         keys[k + 4] = transform;
+         keys[k + 5] = modCount;
+         removeImage(slot);
+         hits[slot] = 1;
+         return null;
+      }
+      if (images[slot] != null) {
+         countHit++;
+         return images[slot];
+      }
+      hits[slot]++;
+      if (hits[slot] < HITS_BUILD || pixels + w * h > MAX_PIXELS) {
+         return null;
+      }
+      boolean swap = transform == IImage.TRANSFORM_5_ROT_90 || transform == IImage.TRANSFORM_6_ROT_270 || transform == IImage.TRANSFORM_4_MIRROR_ROT270 || transform == IImage.TRANSFORM_7_MIRROR_ROT90;
+      int dw = swap ? h : w;
+      int dh = swap ? w : h;
+      boolean alpha = src.getType() == BufferedImage.TYPE_INT_ARGB;
+      BufferedImage copy = new BufferedImage(dw, dh, alpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+      int[] srcData = RasterOpsSwing.getData(src);
+      int srcIndex = RasterOpsSwing.getIndex(src, x, y);
+      RasterOpsSwing.copyTransform(srcData, srcIndex, RasterOpsSwing.getStride(src), w, h, transform, RasterOpsSwing.getData(copy), 0, dw, 0, 0, dw, dh, alpha, alpha, false);
+      images[slot] = copy;
+      pixels += w * h;
+      countBuild++;
+      return copy;
+   }
+
+   private int hash(BufferedImage src, int x, int y, int w, int h, int transform) {
+      int hash = System.identityHashCode(src);
+      hash = hash * 31 + x;
+      hash = hash * 31 + y;
+      hash = hash * 31 + w;
+      hash = hash * 31 + h;
+      hash = hash * 31 + transform;
+      hash *= 0x9E3779B9;
+      return hash ^ (hash >>> 16);
+   }
+
+   private void removeImage(int slot) {
+      BufferedImage bi = images[slot];
+      if (bi != null) {
+         pixels -= bi.getWidth() * bi.getHeight();
+         images[slot] = null;
+      }
+   }
+
+   //#mdebug
+   public void toString(Dctx dc) {
+      dc.root(this, RegionCacheSwing.class, "@line5");
+      toStringPrivate(dc);
+      super.toString(dc.sup());
+   }
+
+   private void toStringPrivate(Dctx dc) {
+      dc.appendVarWithSpace("pixels", pixels);
+      dc.appendVarWithSpace("countHit", countHit);
+      dc.appendVarWithSpace("countBuild", countBuild);
+   }
+
+   public void toString1Line(Dctx dc) {
+      dc.root1Line(this, RegionCacheSwing.class);
+      toStringPrivate(dc);
+      super.toString1Line(dc.sup1Line());
+   }
+
+   //#enddebug
+
+}
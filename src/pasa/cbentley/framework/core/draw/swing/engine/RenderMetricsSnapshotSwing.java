@@ -0,0 +1,156 @@
+/*
+ * (c) 2018-2020 Charles-Philip Bentley
+ * This code is licensed under MIT license (see LICENSE.txt for details)
+ */
+package pasa.cbentley.framework.core.draw.swing.engine;
+
+import pasa.cbentley.core.src4.logging.Dctx;
+import pasa.cbentley.framework.core.draw.swing.ctx.CoreDrawSwingCtx;
+import pasa.cbentley.framework.coredraw.src4.ctx.ObjectCDC;
+
+/**
+ * Immutable copy of the counters of a {@link RenderMetricsSwing}, taken by {@link RenderMetricsSwing#getSnapshot()}.
+ * <br>
+ * Operation types are the OP_ constants of {@link RenderMetricsSwing}.
+ *
+ * @author Charles-Philip Bentley
+ */
+public class RenderMetricsSnapshotSwing extends ObjectCDC {
+
+   private final long[] calls;
+
+   private final long   frameBytes;
+
+   private final long   frameNanos;
+
+   private final long   framePixels;
+
+   private final int    frames;
+
+   private final long[] histogram;
+
+   private final long[] nanos;
+
+   private final long[] pixels;
+
+   RenderMetricsSnapshotSwing(CoreDrawSwingCtx cdc, long[] calls, long[] nanos, long[] pixels, long[] histogram, int frames, long frameNanos, long framePixels, long frameBytes) {
+      super(cdc);
+      this.calls = calls;
+      this.nanos = nanos;
+      this.pixels = pixels;
+      this.histogram = histogram;
+      this.frames = frames;
+      this.frameNanos = frameNanos;
+      this.framePixels = framePixels;
+      this.frameBytes = frameBytes;
+   }
+
+   public long getCalls(int op) {
+      return calls[op];
+   }
+
+   /**
+    * Bytes allocated by the drawing thread during the last frame. -1 when the JVM cannot tell
+    * @return
+    */
+   public long getFrameBytes() {
+      return frameBytes;
+   }
+
+   /**
+    * Duration of the last frame
+    * @return
+    */
+   public long getFrameNanos() {
+      return frameNanos;
+   }
+
+   /**
+    * Pixels touched by all operations during the last frame
+    * @return
+    */
+   public long getFramePixels() {
+      return framePixels;
+   }
+
+   /**
+    * Number of frames ended
+    * @return
+    */
+   public int getFrames() {
+      return frames;
+   }
+
+   /**
+    * Number of calls of op in bucket, see {@link RenderMetricsSwing#BUCKETS}
+    * @param op
+    * @param bucket
+    * @return
+    */
+   public long getHistogram(int op, int bucket) {
+      return histogram[op * RenderMetricsSwing.BUCKETS + bucket];
+   }
+
+   public long getNanos(int op) {
+      return nanos[op];
+   }
+
+   /**
+    * Upper bound of the latency under which percent of the calls of op ran, with the precision of the histogram buckets.
+    * <br>
+    * 0 when op has no calls.
+    * @param op
+    * @param percent 50 for the median
+    * @return nanoseconds
+    */
+   public long getNanosPercentile(int op, int percent) {
+      long total = calls[op];
+      if (total == 0) {
+         return 0;
+      }
+      long needed = (total * percent + 99) / 100;
+      long sum = 0;
+      for (int i = 0; i < RenderMetricsSwing.BUCKETS; i++) {
+         sum += getHistogram(op, i);
+         if (sum >= needed) {
+            return (1L << (i + 1)) - 1;
+         }
+      }
+      return Long.MAX_VALUE;
+   }
+
+   public long getPixels(int op) {
+      return pixels[op];
+   }
+
+   //#mdebug
+   public void toString(Dctx dc) {
+      dc.root(this, RenderMetricsSnapshotSwing.class, "@line5");
+      toStringPrivate(dc);
+      super.toString(dc.sup());
+      for (int i = 0; i < RenderMetricsSwing.OP_NUM; i++) {
+         if (calls[i] == 0) {
+            continue;
+         }
+         dc.nl();
+         dc.append(RenderMetricsSwing.getOpName(i) + " calls=" + calls[i] + " ms=" + (nanos[i] / 1000000) + " pixels=" + pixels[i]);
+         dc.append(" p50=" + getNanosPercentile(i, 50) + "ns p99=" + getNanosPercentile(i, 99) + "ns");
+      }
+   }
+
+   private void toStringPrivate(Dctx dc) {
+      dc.appendVarWithSpace("frames", frames);
+      dc.appendVarWithSpace("frameNanos", frameNanos);
+      dc.appendVarWithSpace("framePixels", framePixels);
+      dc.appendVarWithSpace("frameBytes", frameBytes);
+   }
+
+   public void toString1Line(Dctx dc) {
+      dc.root1Line(this, RenderMetricsSnapshotSwing.class);
+      toStringPrivate(dc);
+      super.toString1Line(dc.sup1Line());
+   }
+
+   //#enddebug
+
+}
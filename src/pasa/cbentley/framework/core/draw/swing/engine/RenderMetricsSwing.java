@@ -0,0 +1,319 @@
+/*
+ * (c) 2018-2020 Charles-Philip Bentley
+ * This code is licensed under MIT license (see LICENSE.txt for details)
+ */
+package pasa.cbentley.framework.core.draw.swing.engine;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import pasa.cbentley.core.src4.logging.Dctx;
+import pasa.cbentley.framework.core.draw.swing.ctx.ConfigCoreDrawSwingDef;
+import pasa.cbentley.framework.core.draw.swing.ctx.CoreDrawSwingCtx;
+import pasa.cbentley.framework.core.draw.swing.ctx.ITechHostDataDrawSwing;
+import pasa.cbentley.framework.coredraw.src4.ctx.ObjectCDC;
+
+/**
+ * Counters of the draw operations of all {@link GraphicsSwing} of a ctx, by type of operation:
+ * <li> number of calls
+ * <li> time spent, with a histogram of call latencies in power of 2 nanosecond buckets
+ * <li> pixels touched, the area of the bounds of each call before clipping
+ * <br>
+ * <br>
+ * Frames are delimited by the host with {@link RenderMetricsSwing#frameStart()} and {@link RenderMetricsSwing#frameEnd()},
+ * called by the thread drawing the frames. For the last frame, it keeps its duration, the pixels touched and the bytes
+ * allocated by that thread, when the JVM can measure them.
+ * <br>
+ * <br>
+ * Only created when {@link ConfigCoreDrawSwingDef#isRenderMetrics()}. Otherwise the {@link GraphicsSwing} of the ctx have no metrics
+ * and pay a single null check on a final field per draw call.
+ * <br>
+ * Read with {@link RenderMetricsSwing#getSnapshot()} or {@link ITechHostDataDrawSwing#DATA_ID_OBJ_100_RENDER_METRICS}.
+ * <br>
+ * Thread safe. Tiles of {@link TiledRendererSwing} add to the same counters.
+ *
+ * @author Charles-Philip Bentley
+ * @see CoreDrawSwingCtx#getRenderMetricsSwing()
+ */
+public class RenderMetricsSwing extends ObjectCDC {
+
+   /**
+    * Number of histogram buckets. Bucket i counts calls of 2^i to 2^(i+1) - 1 nanoseconds. The last also counts longer ones
+    */
+   public static final int  BUCKETS            = 32;
+
+   /**
+    * drawString, drawSubstring, drawChars, drawChar
+    */
+   public static final int  OP_00_TEXT         = 0;
+
+   /**
+    * drawImage
+    */
+   public static final int  OP_01_IMAGE        = 1;
+
+   /**
+    * drawRegion
+    */
+   public static final int  OP_02_REGION       = 2;
+
+   /**
+    * drawRGB
+    */
+   public static final int  OP_03_RGB          = 3;
+
+   /**
+    * fillRect, fillRects
+    */
+   public static final int  OP_04_FILL_RECT    = 4;
+
+   /**
+    * fillArc, fillRoundRect, fillTriangle, fillTriangles
+    */
+   public static final int  OP_05_FILL_SHAPE   = 5;
+
+   /**
+    * drawLine, drawLines, drawRect, drawArc, drawRoundRect
+    */
+   public static final int  OP_06_OUTLINE      = 6;
+
+   /**
+    * copyArea
+    */
+   public static final int  OP_07_COPY_AREA    = 7;
+
+   public static final int  OP_NUM             = 8;
+
+   private static final String[] OP_NAMES      = { "text", "image", "region", "rgb", "fillRect", "fillShape", "outline", "copyArea" };
+
+   private final AtomicLongArray calls         = new AtomicLongArray(OP_NUM);
+
+   private long             frameBytes         = -1;
+
+   private long             frameNanos;
+
+   private long             framePixels;
+
+   private int              frames;
+
+   private long             frameStartBytes;
+
+   private long             frameStartNanos;
+
+   private long             frameStartPixels;
+
+   private final AtomicLongArray histogram     = new AtomicLongArray(OP_NUM * BUCKETS);
+
+   private final AtomicLongArray nanos         = new AtomicLongArray(OP_NUM);
+
+   private final AtomicLongArray pixels        = new AtomicLongArray(OP_NUM);
+
+   /**
+    * null when the JVM cannot measure allocated bytes per thread
+    */
+   private final com.sun.management.ThreadMXBean threadBean;
+
+   public RenderMetricsSwing(CoreDrawSwingCtx cdc) {
+      super(cdc);
+      java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+      com.sun.management.ThreadMXBean sunBean = null;
+      if (bean instanceof com.sun.management.ThreadMXBean) {
+         sunBean = (com.sun.management.ThreadMXBean) bean;
+         if (!sunBean.isThreadAllocatedMemorySupported()) {
+            sunBean = null;
+         } else if (!sunBean.isThreadAllocatedMemoryEnabled()) {
+            sunBean.setThreadAllocatedMemoryEnabled(true);
+         }
+      }
+      threadBean = sunBean;
+   }
+
+   /**
+    * Records count calls of type op that took nanos and touched pix pixels
+    * @param op
+    * @param nanos
+    * @param count
+    * @param pix
+    */
+   public void add(int op, long nanos, int count, long pix) {
+      calls.addAndGet(op, count);
+      this.nanos.addAndGet(op, nanos);
+      pixels.addAndGet(op, pix);
+      int bucket = 63 - Long.numberOfLeadingZeros(Math.max(nanos, 1));
+      histogram.incrementAndGet(op * BUCKETS + Math.min(bucket, BUCKETS - 1));
+   }
+
+   /**
+    * Area of a w x h rectangle, 0 when empty
+    */
+   public static long area(int w, int h) {
+      if (w <= 0 || h <= 0) {
+         return 0;
+      }
+      return (long) w * h;
+   }
+
+   /**
+    * Ends the frame started by {@link RenderMetricsSwing#frameStart()}
+    */
+   public synchronized void frameEnd() {
+      if (frameStartNanos == 0) {
+         return;
+      }
+      frameNanos = System.nanoTime() - frameStartNanos;
+      framePixels = getPixelsTotal() - frameStartPixels;
+      frameBytes = (frameStartBytes < 0) ? -1 : getThreadBytes() - frameStartBytes;
+      frameStartNanos = 0;
+      frames++;
+   }
+
+   public synchronized void frameStart() {
+      frameStartNanos = System.nanoTime();
+      frameStartPixels = getPixelsTotal();
+      frameStartBytes = getThreadBytes();
+   }
+
+   /**
+    * Duration of the last frame measured by {@link RenderMetricsSwing#frameEnd()}, without building a snapshot
+    * @return 0 before the first frame
+    */
+   public synchronized long getFrameNanos() {
+      return frameNanos;
+   }
+
+   /**
+    * Name of op for logs
+    * @param op
+    * @return
+    */
+   public static String getOpName(int op) {
+      return OP_NAMES[op];
+   }
+
+   private long getPixelsTotal() {
+      long sum = 0;
+      for (int i = 0; i < OP_NUM; i++) {
+         sum += pixels.get(i);
+      }
+      return sum;
+   }
+
+   /**
+    * Copy of the counters. Counters of calls running on other threads may be a call apart
+    * @return
+    */
+   public synchronized RenderMetricsSnapshotSwing getSnapshot() {
+      long[] c = new long[OP_NUM];
+      long[] n = new long[OP_NUM];
+      long[] p = new long[OP_NUM];
+      for (int i = 0; i < OP_NUM; i++) {
+         c[i] = calls.get(i);
+         n[i] = nanos.get(i);
+         p[i] = pixels.get(i);
+      }
+      long[] h = new long[OP_NUM * BUCKETS];
+      for (int i = 0; i < h.length; i++) {
+         h[i] = histogram.get(i);
+      }
+      return new RenderMetricsSnapshotSwing(getCDCSwing(), c, n, p, h, frames, frameNanos, framePixels, frameBytes);
+   }
+
+   private CoreDrawSwingCtx getCDCSwing() {
+      return (CoreDrawSwingCtx) cdc;
+   }
+
+   /**
+    * Bytes allocated so far by the current thread. -1 when unknown
+    * @return
+    */
+   private long getThreadBytes() {
+      if (threadBean == null) {
+         return -1;
+      }
+      return threadBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+   }
+
+   /**
+    * Pixels of count lines x1,y1,x2,y2 from index offset * 4
+    */
+   public static long linesPixels(int[] xyxy, int offset, int count) {
+      long sum = 0;
+      for (int i = offset; i < offset + count; i++) {
+         int k = i * 4;
+         sum += Math.max(Math.abs(xyxy[k + 2] - xyxy[k]), Math.abs(xyxy[k + 3] - xyxy[k + 1])) + 1;
+      }
+      return sum;
+   }
+
+   /**
+    * Pixels of count rectangles x,y,w,h from index offset * 4
+    */
+   public static long rectsPixels(int[] xywh, int offset, int count) {
+      long sum = 0;
+      for (int i = offset; i < offset + count; i++) {
+         sum += area(xywh[i * 4 + 2], xywh[i * 4 + 3]);
+      }
+      return sum;
+   }
+
+   /**
+    * Clears all counters
+    */
+   public synchronized void reset() {
+      for (int i = 0; i < OP_NUM; i++) {
+         calls.set(i, 0);
+         nanos.set(i, 0);
+         pixels.set(i, 0);
+      }
+      for (int i = 0; i < histogram.length(); i++) {
+         histogram.set(i, 0);
+      }
+      frames = 0;
+      frameNanos = 0;
+      framePixels = 0;
+      frameBytes = -1;
+      frameStartNanos = 0;
+   }
+
+   /**
+    * Area of the triangle
+    */
+   public static long triangleArea(int x1, int y1, int x2, int y2, int x3, int y3) {
+      long cross = (long) (x2 - x1) * (y3 - y1) - (long) (y2 - y1) * (x3 - x1);
+      return Math.abs(cross) / 2;
+   }
+
+   /**
+    * Pixels of count triangles x1,y1,x2,y2,x3,y3 from index offset * 6
+    */
+   public static long trianglesPixels(int[] xyxyxy, int offset, int count) {
+      long sum = 0;
+      for (int i = offset; i < offset + count; i++) {
+         int k = i * 6;
+         sum += triangleArea(xyxyxy[k], xyxyxy[k + 1], xyxyxy[k + 2], xyxyxy[k + 3], xyxyxy[k + 4], xyxyxy[k + 5]);
+      }
+      return sum;
+   }
+
+   //#mdebug
+   public void toString(Dctx dc) {
+      dc.root(this, RenderMetricsSwing.class, "@line5");
+      toStringPrivate(dc);
+      super.toString(dc.sup());
+      dc.nlLvl(getSnapshot(), "snapshot");
+   }
+
+   private void toStringPrivate(Dctx dc) {
+      dc.appendVarWithSpace("frames", frames);
+      dc.appendVarWithSpace("isThreadBytes", threadBean != null);
+   }
+
+   public void toString1Line(Dctx dc) {
+      dc.root1Line(this, RenderMetricsSwing.class);
+      toStringPrivate(dc);
+      super.toString1Line(dc.sup1Line());
+   }
+
+   //#enddebug
+
+}
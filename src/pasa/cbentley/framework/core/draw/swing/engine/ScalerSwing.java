@@ -77,6 +77,7 @@ public class ScalerSwing extends ScalerAbstract implements IScaler, ITechLayout
     * @return a scaled version of the original {@code BufferedImage}
     */
    public BufferedImage getScaledInstance(BufferedImage img, int targetWidth, int targetHeight, Object hint, boolean higherQuality) {
+      ImagePoolSwing pool = cdsc.getImageFactorySwing().getImagePoolSwing();
       int type = (img.getTransparency() == Transparency.OPAQUE) ? BufferedImage.TYPE_INT_RGB : BufferedImage.TYPE_INT_ARGB;
       BufferedImage ret = (BufferedImage) img;
       int w, h;
@@ -108,12 +109,16 @@ public class ScalerSwing extends ScalerAbstract implements IScaler, ITechLayout
             }
          }
 
-         BufferedImage tmp = new BufferedImage(w, h, type);
+         BufferedImage tmp = pool.acquire(w, h, type, true);
          Graphics2D g2 = tmp.createGraphics();
          g2.setRenderingHint(RenderingHints.KEY_INTERPOLATION, hint);
          g2.drawImage(ret, 0, 0, w, h, null);
          g2.dispose();
 
+         if (ret != img) {
+            //intermediate step of a multi-step scaling
+            pool.release(ret);
+         }
          ret = tmp;
       } while (w != targetWidth || h != targetHeight);
 
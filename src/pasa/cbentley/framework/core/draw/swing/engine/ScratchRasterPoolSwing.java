@@ -0,0 +1,165 @@
+/*
+ * (c) 2018-2020 Charles-Philip Bentley
+ * This code is licensed under MIT license (see LICENSE.txt for details)
+ */
+package pasa.cbentley.framework.core.draw.swing.engine;
+
+import java.awt.image.BufferedImage;
+
+import pasa.cbentley.core.src4.logging.Dctx;
+import pasa.cbentley.framework.core.draw.swing.ctx.CoreDrawSwingCtx;
+import pasa.cbentley.framework.coredraw.src4.ctx.ObjectCDC;
+
+/**
+ * Pool of temporary int {@link BufferedImage} used by draw operations that need an intermediate raster,
+ * such as {@link GraphicsSwing#drawRGB(int[], int, int, int, int, int, int, boolean)}.
+ * <br>
+ * <br>
+ * Rasters are bucketed by size class, a power of 2 for width and height, and by alpha mode.
+ * A raster acquired for w,h is at least that big. Callers only use its top left w,h area.
+ * <br>
+ * <br>
+ * Sizes bigger than {@link ScratchRasterPoolSwing#CLASS_MAX} are not pooled.
+ * <br>
+ * Thread safe. A raster must be released by the thread that acquired it, once it is not used anymore.
+ *
+ * @author Charles-Philip Bentley
+ *
+ */
+public class ScratchRasterPoolSwing extends ObjectCDC {
+
+   /**
+    * Largest pooled size class, 2^11 = 2048 pixels
+    */
+   public static final int       CLASS_MAX   = 11;
+
+   /**
+    * Smallest size class, 2^4 = 16 pixels
+    */
+   public static final int       CLASS_MIN   = 4;
+
+   private static final int      NUM_CLASSES = CLASS_MAX - CLASS_MIN + 1;
+
+   /**
+    * Number of rasters kept for each bucket
+    */
+   public static final int       DEPTH       = 2;
+
+   private final BufferedImage[] pool        = new BufferedImage[NUM_CLASSES * NUM_CLASSES * 2 * DEPTH];
+
+   private int                   countHit;
+
+   private int                   countMiss;
+
+   public ScratchRasterPoolSwing(CoreDrawSwingCtx cdc) {
+      super(cdc);
+   }
+
+   /**
+    * Returns a raster of at least w,h pixels. Content is undefined.
+    * @param w
+    * @param h
+    * @param processAlpha true for {@link BufferedImage#TYPE_INT_ARGB}, false for {@link BufferedImage#TYPE_INT_RGB}
+    * @return
+    */
+   public BufferedImage acquire(int w, int h, boolean processAlpha) {
+      int type = processAlpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB;
+      int cw = getSizeClass(w);
+      int ch = getSizeClass(h);
+      if (cw > CLASS_MAX || ch > CLASS_MAX) {
+         return new BufferedImage(w, h, type);
+      }
+      int index = getBucket(cw, ch, processAlpha);
+      synchronized (this) {
+         for (int i = 0; i < DEPTH; i++) {
+            BufferedImage bi = pool[index + i];
+            if (bi != null) {
+               pool[index + i] = null;
+               countHit++;
+               return bi;
+            }
+         }
+         countMiss++;
+      }
+      return new BufferedImage(1 << cw, 1 << ch, type);
+   }
+
+   /**
+    * Drops all pooled rasters
+    */
+   public synchronized void clear() {
+      for (int i = 0; i < pool.length; i++) {
+         pool[i] = null;
+      }
+   }
+
+   private int getBucket(int cw, int ch, boolean processAlpha) {
+      int bucket = ((cw - CLASS_MIN) * NUM_CLASSES + (ch - CLASS_MIN)) * 2;
+      if (processAlpha) {
+         bucket++;
+      }
+      return bucket * DEPTH;
+   }
+
+   public int getCountHit() {
+      return countHit;
+   }
+
+   public int getCountMiss() {
+      return countMiss;
+   }
+
+   private int getSizeClass(int size) {
+      int c = 32 - Integer.numberOfLeadingZeros(size - 1);
+      if (c < CLASS_MIN) {
+         return CLASS_MIN;
+      }
+      return c;
+   }
+
+   /**
+    * Gives back a raster returned by {@link ScratchRasterPoolSwing#acquire(int, int, boolean)}.
+    * <br>
+    * Rasters that were not pooled are dropped.
+    * @param bi
+    */
+   public void release(BufferedImage bi) {
+      int w = bi.getWidth();
+      int h = bi.getHeight();
+      int cw = getSizeClass(w);
+      int ch = getSizeClass(h);
+      if (w != (1 << cw) || h != (1 << ch) || cw > CLASS_MAX || ch > CLASS_MAX) {
+         return;
+      }
+      int index = getBucket(cw, ch, bi.getType() == BufferedImage.TYPE_INT_ARGB);
+      synchronized (this) {
+         for (int i = 0; i < DEPTH; i++) {
+            if (pool[index + i] == null) {
+               pool[index + i] = bi;
+               return;
+            }
+         }
+      }
+   }
+
+   //#mdebug
+   public void toString(Dctx dc) {
+      dc.root(this, ScratchRasterPoolSwing.class, "@line5");
+      toStringPrivate(dc);
+      super.toString(dc.sup());
+   }
+
+   private void toStringPrivate(Dctx dc) {
+      dc.appendVarWithSpace("countHit", countHit);
+      dc.appendVarWithSpace("countMiss", countMiss);
+   }
+
+   public void toString1Line(Dctx dc) {
+      dc.root1Line(this, ScratchRasterPoolSwing.class);
+      toStringPrivate(dc);
+      super.toString1Line(dc.sup1Line());
+   }
+
+   //#enddebug
+
+}
@@ -0,0 +1,223 @@
+/*
+ * (c) 2018-2020 Charles-Philip Bentley
+ * This code is licensed under MIT license (see LICENSE.txt for details)
+ */
+package pasa.cbentley.framework.core.draw.swing.engine;
+
+import java.awt.BasicStroke;
+import java.util.HashMap;
+
+import pasa.cbentley.core.src4.logging.Dctx;
+import pasa.cbentley.framework.core.draw.swing.ctx.CoreDrawSwingCtx;
+import pasa.cbentley.framework.coredraw.src4.ctx.ObjectCDC;
+import pasa.cbentley.framework.coredraw.src4.interfaces.ITechGraphics;
+
+/**
+ * Shared immutable {@link BasicStroke} instances, identified by the int style given to {@link GraphicsSwing#setStrokeStyle(int)}.
+ * <br>
+ * <br>
+ * {@link ITechGraphics#SOLID} and {@link ITechGraphics#DOTTED} are registered first. Other strokes, with a width, cap, join
+ * and dash pattern, get the next ids. Registering an equal stroke twice returns the same id.
+ * Switching between registered styles allocates nothing.
+ * <br>
+ * <br>
+ * For each stroke, the registry computes
+ * <li> how far outside the shape its pixels may go, see {@link StrokeRegistrySwing#getMargin(int)}
+ * <li> whether Java2D draws horizontal and vertical lines with it as exact pixel runs, see {@link StrokeRegistrySwing#getFlags(int)}.
+ * Such lines are filled by {@link GraphicsSwing} without going through the Java2D stroker.
+ * <br>
+ * Thread safe. Ids are never removed.
+ *
+ * @author Charles-Philip Bentley
+ * @see CoreDrawSwingCtx#getStrokeRegistrySwing()
+ */
+public class StrokeRegistrySwing extends ObjectCDC {
+
+   /**
+    * A registered stroke and what is known about it
+    */
+   private static final class Entry {
+
+      final int         flags;
+
+      final int         margin;
+
+      final BasicStroke stroke;
+
+      Entry(BasicStroke stroke, int flags, int margin) {
+         this.stroke = stroke;
+         this.flags = flags;
+         this.margin = margin;
+      }
+   }
+
+   /**
+    * Without anti alias, horizontal and vertical lines and rectangle outlines cover exactly whole pixels.
+    * <br>
+    * Width 1 or less without dash: Java2D draws them with its thin line loops whatever the cap and join.
+    */
+   public static final int     FLAG_1_PIXELS         = 1 << 0;
+
+   /**
+    * With anti alias, horizontal and vertical lines cover exactly whole pixels.
+    * <br>
+    * Width 1, square cap, without dash.
+    */
+   public static final int     FLAG_2_PIXELS_AA_LINE = 1 << 1;
+
+   /**
+    * With anti alias, rectangle outlines cover exactly whole pixels.
+    * <br>
+    * {@link StrokeRegistrySwing#FLAG_2_PIXELS_AA_LINE} with a miter join. Other joins cut the corners.
+    */
+   public static final int     FLAG_3_PIXELS_AA_RECT = 1 << 2;
+
+   /**
+    * Copied on write. Index is the id
+    */
+   private volatile Entry[]    entries               = new Entry[0];
+
+   /**
+    * {@link BasicStroke} to Integer id. {@link BasicStroke} implements equals
+    */
+   private final HashMap       ids                   = new HashMap();
+
+   public StrokeRegistrySwing(CoreDrawSwingCtx cdc) {
+      super(cdc);
+      BasicStroke solid = new BasicStroke(1.0f, BasicStroke.CAP_SQUARE, BasicStroke.JOIN_BEVEL);
+      BasicStroke dotted = new BasicStroke(1.0f, BasicStroke.CAP_SQUARE, BasicStroke.JOIN_BEVEL, 1.0f, new float[] { 2.0f }, 1.0f);
+      add(solid, ITechGraphics.SOLID);
+      add(dotted, ITechGraphics.DOTTED);
+   }
+
+   /**
+    * Adds stroke with the next id, which must be id
+    * @param stroke
+    * @param id
+    * @throws IllegalStateException when id is not the next id
+    */
+   private void add(BasicStroke stroke, int id) {
+      Entry[] old = entries;
+      if (id != old.length) {
+         throw new IllegalStateException("Stroke id " + id + " is not the next id " + old.length);
+      }
+      float width = stroke.getLineWidth();
+      boolean isSolid = stroke.getDashArray() == null;
+      int flags = 0;
+      if (isSolid && width <= 1.0f) {
+         flags |= FLAG_1_PIXELS;
+      }
+      if (isSolid && width == 1.0f && stroke.getEndCap() == BasicStroke.CAP_SQUARE) {
+         flags |= FLAG_2_PIXELS_AA_LINE;
+         if (stroke.getLineJoin() == BasicStroke.JOIN_MITER) {
+            flags |= FLAG_3_PIXELS_AA_RECT;
+         }
+      }
+      int margin = 1;
+      if (width > 1.0f) {
+         margin = (int) Math.ceil(width * 0.7072f) + 1;
+      }
+      Entry[] e = new Entry[old.length + 1];
+      System.arraycopy(old, 0, e, 0, old.length);
+      e[old.length] = new Entry(stroke, flags, margin);
+      entries = e;
+      ids.put(stroke, Integer.valueOf(id));
+   }
+
+   private Entry getEntry(int id) {
+      Entry[] e = entries;
+      if (id < 0 || id >= e.length) {
+         return e[ITechGraphics.SOLID];
+      }
+      return e[id];
+   }
+
+   /**
+    * FLAG_ bits of the stroke
+    * @param id unknown ids are {@link ITechGraphics#SOLID}
+    * @return
+    */
+   public int getFlags(int id) {
+      return getEntry(id).flags;
+   }
+
+   /**
+    * Pixels around the bounds of a shape that its outline may touch: half the width, times the square root of 2
+    * for miter corners, plus a pixel for anti alias.
+    * @param id unknown ids are {@link ITechGraphics#SOLID}
+    * @return
+    */
+   public int getMargin(int id) {
+      return getEntry(id).margin;
+   }
+
+   /**
+    * @param id unknown ids are {@link ITechGraphics#SOLID}
+    * @return
+    */
+   public BasicStroke getStroke(int id) {
+      return getEntry(id).stroke;
+   }
+
+   /**
+    * Number of registered strokes. Ids go from 0 to size - 1
+    * @return
+    */
+   public int getSize() {
+      return entries.length;
+   }
+
+   /**
+    * Id of stroke, registered if new
+    * @param stroke
+    * @return
+    */
+   public synchronized int register(BasicStroke stroke) {
+      Integer id = (Integer) ids.get(stroke);
+      if (id != null) {
+         return id.intValue();
+      }
+      int next = entries.length;
+      add(stroke, next);
+      return next;
+   }
+
+   /**
+    * Id of a stroke with miter limit 10 and dash phase 0, registered if new
+    * @param width line width in pixels
+    * @param cap {@link BasicStroke#CAP_BUTT}, {@link BasicStroke#CAP_ROUND} or {@link BasicStroke#CAP_SQUARE}
+    * @param join {@link BasicStroke#JOIN_MITER}, {@link BasicStroke#JOIN_ROUND} or {@link BasicStroke#JOIN_BEVEL}
+    * @param dash lengths of opaque and transparent dashes, null for a solid line
+    * @return the style for {@link GraphicsSwing#setStrokeStyle(int)}
+    * @throws IllegalArgumentException if width is negative, cap or join invalid, or dash lengths all zero or negative
+    */
+   public int register(float width, int cap, int join, float[] dash) {
+      return register(new BasicStroke(width, cap, join, 10.0f, dash, 0.0f));
+   }
+
+   //#mdebug
+   public void toString(Dctx dc) {
+      dc.root(this, StrokeRegistrySwing.class, "@line5");
+      toStringPrivate(dc);
+      super.toString(dc.sup());
+      Entry[] e = entries;
+      for (int i = 0; i < e.length; i++) {
+         dc.nl();
+         dc.append(i + " width=" + e[i].stroke.getLineWidth() + " cap=" + e[i].stroke.getEndCap() + " join=" + e[i].stroke.getLineJoin());
+         dc.append(" dashed=" + (e[i].stroke.getDashArray() != null) + " flags=" + e[i].flags + " margin=" + e[i].margin);
+      }
+   }
+
+   private void toStringPrivate(Dctx dc) {
+      dc.appendVarWithSpace("size", getSize());
+   }
+
+   public void toString1Line(Dctx dc) {
+      dc.root1Line(this, StrokeRegistrySwing.class);
+      toStringPrivate(dc);
+      super.toString1Line(dc.sup1Line());
+   }
+
+   //#enddebug
+
+}
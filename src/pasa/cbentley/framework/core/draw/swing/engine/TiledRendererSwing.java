@@ -0,0 +1,207 @@
+/*
+ * (c) 2018-2020 Charles-Philip Bentley
+ * This code is licensed under MIT license (see LICENSE.txt for details)
+ */
+package pasa.cbentley.framework.core.draw.swing.engine;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import pasa.cbentley.core.src4.logging.Dctx;
+import pasa.cbentley.framework.core.draw.swing.ctx.ConfigCoreDrawSwingDef;
+import pasa.cbentley.framework.core.draw.swing.ctx.CoreDrawSwingCtx;
+import pasa.cbentley.framework.coredraw.src4.ctx.ObjectCDC;
+
+/**
+ * Draws a {@link DisplayListSwing} into an {@link ImageSwing} by splitting the image in square tiles drawn in parallel.
+ * <br>
+ * <br>
+ * Each tile gets its own {@link Graphics2D} created on the {@link BufferedImage} of the {@link ImageSwing},
+ * wrapped in a {@link GraphicsSwing} from {@link GraphicsSwing#createTile(Graphics2D, int, int, int, int)} and clipped to the tile.
+ * The whole list is replayed on each tile. Calls whose bounds miss the tile are rejected by the shadow clip
+ * of {@link GraphicsSwing} before reaching Java2D, so each tile only rasterizes what hits it.
+ * <br>
+ * <br>
+ * Tiles write disjoint pixels, so the result is the same as {@link DisplayListSwing#replay(GraphicsSwing)} on {@link ImageSwing#getGraphics()}.
+ * Lists are drawn serially when
+ * <li> they read pixels of the image, see {@link DisplayListSwing#isReadingTarget(pasa.cbentley.framework.coredraw.src4.interfaces.IImage)}
+ * <li> they hold lines, arcs or round rects and shapes are antialiased. Java2D clips paths before antialiasing, so edges would depend on the tile
+ * <br>
+ * <br>
+ * Damage of each tile is merged into the {@link DamageTrackerSwing} of the image graphics, if any.
+ * <br>
+ * Tile size and thread count come from {@link ConfigCoreDrawSwingDef}. Tiles are spread on a {@link ForkJoinPool} created on first use.
+ *
+ * @author Charles-Philip Bentley
+ * @see CoreDrawSwingCtx#getTiledRendererSwingLazy()
+ */
+public class TiledRendererSwing extends ObjectCDC {
+
+   /**
+    * Splits a range of tile indexes until it holds a single tile
+    */
+   private static class TileTask extends RecursiveAction {
+
+      private static final long   serialVersionUID = 1L;
+
+      private final int           cols;
+
+      private final int           end;
+
+      private final GraphicsSwing g;
+
+      private final DisplayListSwing list;
+
+      private final int           start;
+
+      private final int           tileSize;
+
+      TileTask(DisplayListSwing list, GraphicsSwing g, int cols, int tileSize, int start, int end) {
+         this.list = list;
+         this.g = g;
+         this.cols = cols;
+         this.tileSize = tileSize;
+         this.start = start;
+         this.end = end;
+      }
+
+      protected void compute() {
+         if (end - start > 1) {
+            int mid = (start + end) >>> 1;
+            invokeAll(new TileTask(list, g, cols, tileSize, start, mid), new TileTask(list, g, cols, tileSize, mid, end));
+            return;
+         }
+         int x = (start % cols) * tileSize;
+         int y = (start / cols) * tileSize;
+         BufferedImage bi = g.getImageTarget().getImageSwing();
+         Graphics2D g2 = bi.createGraphics();
+         try {
+            GraphicsSwing tile = g.createTile(g2, x, y, tileSize, tileSize);
+            DamageTrackerSwing damage = g.getDamageTracker();
+            DamageTrackerSwing damageTile = null;
+            if (damage != null) {
+               damageTile = new DamageTrackerSwing(g.getCDCSwing(), bi.getWidth(), bi.getHeight(), damage.getMaxRects());
+               tile.setDamageTracker(damageTile);
+            }
+            list.replay(tile);
+            if (damageTile != null) {
+               synchronized (damage) {
+                  damage.add(damageTile);
+               }
+            }
+         } finally {
+            g2.dispose();
+         }
+      }
+   }
+
+   private int          countParallel;
+
+   private int          countSerial;
+
+   private ForkJoinPool pool;
+
+   private final int    threads;
+
+   private final int    tileSize;
+
+   /**
+    *
+    * @param cdc
+    * @param tileSize width and height of tiles in pixels
+    * @param threads 0 for the number of available processors
+    */
+   public TiledRendererSwing(CoreDrawSwingCtx cdc, int tileSize, int threads) {
+      super(cdc);
+      this.tileSize = Math.max(16, tileSize);
+      if (threads <= 0) {
+         threads = Runtime.getRuntime().availableProcessors();
+      }
+      this.threads = threads;
+   }
+
+   public int getCountParallel() {
+      return countParallel;
+   }
+
+   public int getCountSerial() {
+      return countSerial;
+   }
+
+   private synchronized ForkJoinPool getPool() {
+      if (pool == null) {
+         pool = new ForkJoinPool(threads);
+      }
+      return pool;
+   }
+
+   public int getThreads() {
+      return threads;
+   }
+
+   public int getTileSize() {
+      return tileSize;
+   }
+
+   /**
+    * Draws list into img with {@link ImageSwing#getGraphics()}, in parallel tiles when possible.
+    * <br>
+    * Returns when all tiles are drawn. The {@link GraphicsSwing} of img is left as {@link DisplayListSwing#replay(GraphicsSwing)} leaves it.
+    * <br>
+    * Must not be called while something else draws into img.
+    * @param list
+    * @param img
+    */
+   public void render(DisplayListSwing list, ImageSwing img) {
+      GraphicsSwing g = img.getGraphics();
+      int cols = (img.getWidth() + tileSize - 1) / tileSize;
+      int rows = (img.getHeight() + tileSize - 1) / tileSize;
+      int numTiles = cols * rows;
+      boolean isClipSensitive = list.hasPaths() && g.isAntiAliasShapes();
+      if (numTiles <= 1 || threads == 1 || !g.isTileable() || isClipSensitive || list.isReadingTarget(img)) {
+         countSerial++;
+         list.replay(g);
+         return;
+      }
+      countParallel++;
+      //images sharing the raster copy it before any tile writes
+      img.unshare();
+      getPool().invoke(new TileTask(list, g, cols, tileSize, 0, numTiles));
+      list.applyState(g);
+   }
+
+   /**
+    * Stops the threads. A later {@link TiledRendererSwing#render(DisplayListSwing, ImageSwing)} starts new ones
+    */
+   public synchronized void shutdown() {
+      if (pool != null) {
+         pool.shutdown();
+         pool = null;
+      }
+   }
+
+   //#mdebug
+   public void toString(Dctx dc) {
+      dc.root(this, TiledRendererSwing.class, "@line5");
+      toStringPrivate(dc);
+      super.toString(dc.sup());
+   }
+
+   private void toStringPrivate(Dctx dc) {
+      dc.appendVarWithSpace("tileSize", tileSize);
+      dc.appendVarWithSpace("threads", threads);
+      dc.appendVarWithSpace("countParallel", countParallel);
+      dc.appendVarWithSpace("countSerial", countSerial);
+   }
+
+   public void toString1Line(Dctx dc) {
+      dc.root1Line(this, TiledRendererSwing.class);
+      toStringPrivate(dc);
+      super.toString1Line(dc.sup1Line());
+   }
+
+   //#enddebug
+
+}